@@ -0,0 +1,153 @@
+package com.muantech.rollbar.java.jul;
+
+import java.net.MalformedURLException;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+import com.muantech.rollbar.java.AppenderDispatcher;
+import com.muantech.rollbar.java.NotificationEvent;
+import com.muantech.rollbar.java.RollbarAttributes;
+import com.muantech.rollbar.java.RollbarNotifier;
+
+/**
+ * <p>{@code java.util.logging} handler which reports records to rollbar.  Records are converted on
+ * the logging thread and handed off to an {@link AppenderDispatcher}, so logging never waits on
+ * http.  Levels are mapped {@code SEVERE} to error, {@code WARNING} to warning, {@code INFO} and
+ * {@code CONFIG} to info, and anything finer to debug.  The logger and thread names are reported
+ * as custom fields.</p>
+ *
+ * <p>When constructed by the {@code LogManager} it is configured from the logging properties,
+ * prefixed with this class's name:</p>
+ *
+ * <pre>
+ * com.muantech.rollbar.java.jul.RollbarHandler.url = https://api.rollbar.com/api/1/item/
+ * com.muantech.rollbar.java.jul.RollbarHandler.accessToken = ...
+ * com.muantech.rollbar.java.jul.RollbarHandler.environment = production
+ * com.muantech.rollbar.java.jul.RollbarHandler.codePackageRoot = com.example   (optional)
+ * com.muantech.rollbar.java.jul.RollbarHandler.capacity = 1024                 (optional)
+ * com.muantech.rollbar.java.jul.RollbarHandler.includeCallerData = false       (optional)
+ * com.muantech.rollbar.java.jul.RollbarHandler.level = WARNING                 (optional)
+ * </pre>
+ */
+public class RollbarHandler extends Handler {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final RollbarNotifier notifier;
+    private final boolean ownsNotifier;
+    private final AppenderDispatcher dispatcher;
+    private final boolean includeCallerData;
+    private final Formatter messageFormatter = new SimpleFormatter();
+
+    /**
+     * Constructs a new handler configured from the logging properties.
+     *
+     * @throws MalformedURLException Thrown if the configured url can not be parsed
+     */
+    public RollbarHandler() throws MalformedURLException {
+        LogManager manager = LogManager.getLogManager();
+        String prefix = RollbarHandler.class.getName() + '.';
+        String url = manager.getProperty(prefix + "url");
+        String accessToken = manager.getProperty(prefix + "accessToken");
+        String environment = manager.getProperty(prefix + "environment");
+        if (url == null || accessToken == null || environment == null) {
+            throw new IllegalStateException(prefix + "url, accessToken and environment must be configured");
+        }
+        String capacity = manager.getProperty(prefix + "capacity");
+        String level = manager.getProperty(prefix + "level");
+
+        this.notifier = new RollbarNotifier(url.trim(), accessToken.trim(), environment.trim(),
+                                            manager.getProperty(prefix + "codePackageRoot"));
+        this.ownsNotifier = true;
+        this.dispatcher = new AppenderDispatcher(notifier,
+                                                 capacity == null ? DEFAULT_CAPACITY : Integer.parseInt(capacity.trim()));
+        this.includeCallerData = Boolean.parseBoolean(manager.getProperty(prefix + "includeCallerData"));
+        setLevel(level == null ? Level.WARNING : Level.parse(level.trim()));
+    }
+
+    /**
+     * Constructs a new handler reporting through an existing notifier, which is not closed with
+     * the handler.
+     *
+     * @param notifier Notifier to report records through
+     * @param capacity Maximum number of records waiting to be reported
+     * @param includeCallerData {@code true} to report the source class and method of records without a throwable
+     */
+    public RollbarHandler(RollbarNotifier notifier, int capacity, boolean includeCallerData) {
+        this.notifier = notifier;
+        this.ownsNotifier = false;
+        this.dispatcher = new AppenderDispatcher(notifier, capacity);
+        this.includeCallerData = includeCallerData;
+        setLevel(Level.WARNING);
+    }
+
+    /**
+     * Returns the dispatcher records are handed off through, for its counts.
+     *
+     * @return Dispatcher used by this handler
+     */
+    public AppenderDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    static RollbarNotifier.Level toLevel(Level level) {
+        int value = level.intValue();
+        if (value >= Level.SEVERE.intValue()) {
+            return RollbarNotifier.Level.ERROR;
+        } else if (value >= Level.WARNING.intValue()) {
+            return RollbarNotifier.Level.WARNING;
+        } else if (value >= Level.CONFIG.intValue()) {
+            return RollbarNotifier.Level.INFO;
+        } else {
+            return RollbarNotifier.Level.DEBUG;
+        }
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (! isLoggable(record) || ! AppenderDispatcher.enter(record.getLoggerName())) {
+            return;
+        }
+        try {
+            RollbarAttributes.Builder attributes = new RollbarAttributes.Builder();
+            if (record.getLoggerName() != null) {
+                attributes.customField("logger", record.getLoggerName());
+            }
+            attributes.customField("thread", Thread.currentThread().getName());
+
+            StackTraceElement callerFrame = null;
+            if (includeCallerData && record.getThrown() == null && record.getSourceClassName() != null) {
+                callerFrame = new StackTraceElement(record.getSourceClassName(),
+                                                    String.valueOf(record.getSourceMethodName()), null, -1);
+            }
+
+            dispatcher.offer(new NotificationEvent(toLevel(record.getLevel()), messageFormatter.formatMessage(record),
+                                                   record.getThrown(), attributes.build(), callerFrame));
+        } catch (RuntimeException e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        } finally {
+            AppenderDispatcher.exit();
+        }
+    }
+
+    @Override
+    public void flush() {
+        // nothing is buffered here, getDispatcher().flush(timeout) waits for records to be sent
+    }
+
+    /**
+     * Reports the records already handed off (waiting a bounded amount of time), and closes the
+     * notifier if it was created from the logging properties.
+     */
+    @Override
+    public void close() {
+        dispatcher.close();
+        if (ownsNotifier) {
+            notifier.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.muantech.rollbar.java.jul;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+import com.muantech.rollbar.java.RollbarNotifier;
+import com.sun.net.httpserver.HttpServer;
+
+public class RollbarHandlerTest {
+    private HttpServer server;
+    private String url;
+    private List<String> requestBodies;
+
+    @Before
+    public void setup() throws IOException {
+        requestBodies = new CopyOnWriteArrayList<String>();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", (exchange) -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                int b;
+                while ((b = in.read()) != -1) {
+                    body.write(b);
+                }
+            }
+            requestBodies.add(new String(body.toByteArray(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/1/item/";
+    }
+
+    @After
+    public void cleanup() {
+        server.stop(0);
+        server = null;
+    }
+
+    @Test
+    public void recordsReported() throws Exception {
+        Logger logger = Logger.getLogger("com.example.RollbarHandlerTest");
+        logger.setUseParentHandlers(false);
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            RollbarHandler handler = new RollbarHandler(notifier, 16, true);
+            logger.addHandler(handler);
+            try {
+                logger.info("below the handler level");
+                logger.log(Level.WARNING, "disk {0} full", "sda1");
+                logger.log(Level.SEVERE, "failed", new IllegalStateException("boom"));
+
+                assertTrue(handler.getDispatcher().flush(10_000));
+            } finally {
+                logger.removeHandler(handler);
+                handler.close();
+            }
+        }
+
+        assertEquals(2, requestBodies.size());
+        JsonObject warning = Json.parse(requestBodies.get(0)).asObject().get("data").asObject();
+        assertEquals("WARNING", warning.getString("level", null));
+        assertTrue(requestBodies.get(0), requestBodies.get(0).contains("disk sda1 full"));
+        assertEquals("com.example.RollbarHandlerTest",
+                     warning.get("custom").asObject().getString("logger", null));
+        assertTrue(requestBodies.get(0), requestBodies.get(0).contains("recordsReported"));
+        JsonObject error = Json.parse(requestBodies.get(1)).asObject().get("data").asObject();
+        assertEquals("ERROR", error.getString("level", null));
+        assertTrue(requestBodies.get(1), requestBodies.get(1).contains(IllegalStateException.class.getName()));
+    }
+
+    @Test
+    public void levelsMapped() {
+        assertEquals(RollbarNotifier.Level.ERROR, RollbarHandler.toLevel(Level.SEVERE));
+        assertEquals(RollbarNotifier.Level.WARNING, RollbarHandler.toLevel(Level.WARNING));
+        assertEquals(RollbarNotifier.Level.INFO, RollbarHandler.toLevel(Level.CONFIG));
+        assertEquals(RollbarNotifier.Level.DEBUG, RollbarHandler.toLevel(Level.FINEST));
+    }
+}
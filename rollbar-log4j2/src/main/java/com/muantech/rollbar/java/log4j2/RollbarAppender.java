@@ -0,0 +1,138 @@
+package com.muantech.rollbar.java.log4j2;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+
+import com.muantech.rollbar.java.AppenderDispatcher;
+import com.muantech.rollbar.java.NotificationEvent;
+import com.muantech.rollbar.java.RollbarAttributes;
+import com.muantech.rollbar.java.RollbarNotifier;
+
+/**
+ * <p>Log4j 2 appender which reports events to rollbar.  Events are converted on the logging thread
+ * and handed off to an {@link AppenderDispatcher}, so logging never waits on http.  Levels map
+ * directly, with {@code FATAL} reported as error and {@code TRACE} as debug.  The context map
+ * (MDC) is reported as custom fields, along with the logger and thread names.</p>
+ *
+ * <pre>
+ * &lt;Rollbar name="rollbar" url="https://api.rollbar.com/api/1/item/" accessToken="..."
+ *          environment="production"&gt;
+ *   &lt;ThresholdFilter level="WARN"/&gt;
+ * &lt;/Rollbar&gt;
+ * </pre>
+ *
+ * <p>Optional attributes are {@code codePackageRoot}, {@code capacity} (events waiting to be
+ * reported, default 1024) and {@code includeLocation} (reports the location of events without a
+ * throwable, the logger must also be configured with {@code includeLocation="true"}).</p>
+ */
+@Plugin(name = "Rollbar", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
+public class RollbarAppender extends AbstractAppender {
+    private final RollbarNotifier notifier;
+    private final AppenderDispatcher dispatcher;
+    private final boolean includeLocation;
+
+    protected RollbarAppender(String name, Filter filter, RollbarNotifier notifier, int capacity,
+                              boolean includeLocation) {
+        super(name, filter, null, true);
+        this.notifier = notifier;
+        this.dispatcher = new AppenderDispatcher(notifier, capacity);
+        this.includeLocation = includeLocation;
+    }
+
+    @PluginFactory
+    public static RollbarAppender createAppender(@PluginAttribute("name") String name,
+                                                 @PluginAttribute("url") String url,
+                                                 @PluginAttribute("accessToken") String accessToken,
+                                                 @PluginAttribute("environment") String environment,
+                                                 @PluginAttribute("codePackageRoot") String codePackageRoot,
+                                                 @PluginAttribute(value = "capacity", defaultInt = 1024) int capacity,
+                                                 @PluginAttribute("includeLocation") boolean includeLocation,
+                                                 @PluginElement("Filter") Filter filter) {
+        if (name == null || url == null || accessToken == null || environment == null) {
+            LOGGER.error("name, url, accessToken and environment must be set for the Rollbar appender");
+            return null;
+        }
+        RollbarNotifier notifier;
+        try {
+            notifier = new RollbarNotifier(url, accessToken, environment, codePackageRoot);
+        } catch (MalformedURLException e) {
+            LOGGER.error("Invalid url for Rollbar appender " + name, e);
+            return null;
+        }
+        return new RollbarAppender(name, filter, notifier, capacity, includeLocation);
+    }
+
+    /**
+     * Returns the dispatcher events are handed off through, for its counts.
+     *
+     * @return Dispatcher used by this appender
+     */
+    public AppenderDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    static RollbarNotifier.Level toLevel(Level level) {
+        if (level.isMoreSpecificThan(Level.ERROR)) {
+            return RollbarNotifier.Level.ERROR;
+        } else if (level.isMoreSpecificThan(Level.WARN)) {
+            return RollbarNotifier.Level.WARNING;
+        } else if (level.isMoreSpecificThan(Level.INFO)) {
+            return RollbarNotifier.Level.INFO;
+        } else {
+            return RollbarNotifier.Level.DEBUG;
+        }
+    }
+
+    @Override
+    public void append(LogEvent event) {
+        if (! AppenderDispatcher.enter(event.getLoggerName())) {
+            return;
+        }
+        try {
+            // copied now, the event (and its context data) may be reused once this returns
+            RollbarAttributes attributes = new RollbarAttributes.Builder()
+                                               .customFields(event.getContextData().toMap())
+                                               .customField("logger", event.getLoggerName())
+                                               .customField("thread", event.getThreadName())
+                                               .build();
+
+            Throwable throwable = event.getThrown();
+            StackTraceElement callerFrame = null;
+            if (includeLocation && throwable == null) {
+                callerFrame = event.getSource();
+            }
+
+            dispatcher.offer(new NotificationEvent(toLevel(event.getLevel()), event.getMessage().getFormattedMessage(),
+                                                   throwable, attributes, callerFrame));
+        } catch (RuntimeException e) {
+            error("Failed to hand off event", event, e);
+        } finally {
+            AppenderDispatcher.exit();
+        }
+    }
+
+    /**
+     * Reports the events already handed off (waiting a bounded amount of time), and closes the
+     * notifier.
+     */
+    @Override
+    public boolean stop(long timeout, TimeUnit timeUnit) {
+        setStopping();
+        boolean stopped = super.stop(timeout, timeUnit, false);
+        dispatcher.close();
+        notifier.close();
+        setStopped();
+        return stopped;
+    }
+}
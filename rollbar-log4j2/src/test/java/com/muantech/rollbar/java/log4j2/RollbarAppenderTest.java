@@ -0,0 +1,139 @@
+package com.muantech.rollbar.java.log4j2;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+import com.muantech.rollbar.java.AppenderDispatcher;
+import com.muantech.rollbar.java.RollbarNotifier;
+import com.sun.net.httpserver.HttpServer;
+
+public class RollbarAppenderTest {
+    private HttpServer server;
+    private String url;
+    private List<String> requestBodies;
+
+    @Before
+    public void setup() throws IOException {
+        requestBodies = new CopyOnWriteArrayList<String>();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", (exchange) -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                int b;
+                while ((b = in.read()) != -1) {
+                    body.write(b);
+                }
+            }
+            requestBodies.add(new String(body.toByteArray(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/1/item/";
+    }
+
+    @After
+    public void cleanup() {
+        server.stop(0);
+        server = null;
+    }
+
+    private static LogEvent event(String loggerName, Level level, Message message, Throwable thrown) {
+        SortedArrayStringMap contextData = new SortedArrayStringMap();
+        contextData.putValue("requestId", "abc123");
+        return Log4jLogEvent.newBuilder()
+                            .setLoggerName(loggerName)
+                            .setLevel(level)
+                            .setMessage(message)
+                            .setThrown(thrown)
+                            .setContextData(contextData)
+                            .setThreadName("worker-1")
+                            .build();
+    }
+
+    @Test
+    public void eventsReported() throws Exception {
+        RollbarAppender appender =
+            new RollbarAppender("rollbar", null, new RollbarNotifier(url, "tkn", "test"), 16, false);
+        appender.start();
+        try {
+            appender.append(event("com.example.RollbarAppenderTest", Level.WARN,
+                                  new ParameterizedMessage("disk {} full", "sda1"), null));
+            appender.append(event("com.example.RollbarAppenderTest", Level.FATAL,
+                                  new SimpleMessage("failed"), new IllegalStateException("boom")));
+
+            assertTrue(appender.getDispatcher().flush(10_000));
+        } finally {
+            // also closes the notifier
+            appender.stop();
+        }
+
+        assertEquals(2, requestBodies.size());
+        JsonObject warning = Json.parse(requestBodies.get(0)).asObject().get("data").asObject();
+        assertEquals("WARNING", warning.getString("level", null));
+        assertTrue(requestBodies.get(0), requestBodies.get(0).contains("disk sda1 full"));
+        JsonObject custom = warning.get("custom").asObject();
+        assertEquals("com.example.RollbarAppenderTest", custom.getString("logger", null));
+        assertEquals("abc123", custom.getString("requestId", null));
+        assertEquals("worker-1", custom.getString("thread", null));
+        JsonObject error = Json.parse(requestBodies.get(1)).asObject().get("data").asObject();
+        assertEquals("ERROR", error.getString("level", null));
+        assertTrue(requestBodies.get(1), requestBodies.get(1).contains(IllegalStateException.class.getName()));
+    }
+
+    @Test
+    public void recursiveEventsIgnored() throws Exception {
+        RollbarAppender appender =
+            new RollbarAppender("rollbar", null, new RollbarNotifier(url, "tkn", "test"), 16, false);
+        appender.start();
+        try {
+            // logged by the notifier while reporting an event
+            appender.append(event(RollbarNotifier.class.getName(), Level.ERROR, new SimpleMessage("send failed"), null));
+            assertTrue(AppenderDispatcher.enter("com.example.Other"));
+            try {
+                // logged while another event is being converted
+                appender.append(event("com.example.RollbarAppenderTest", Level.ERROR, new SimpleMessage("nested"), null));
+            } finally {
+                AppenderDispatcher.exit();
+            }
+            appender.append(event("com.example.RollbarAppenderTest", Level.ERROR, new SimpleMessage("reported"), null));
+
+            assertTrue(appender.getDispatcher().flush(10_000));
+        } finally {
+            appender.stop();
+        }
+
+        assertEquals(1, requestBodies.size());
+        assertTrue(requestBodies.get(0), requestBodies.get(0).contains("reported"));
+    }
+
+    @Test
+    public void levelsMapped() {
+        assertEquals(RollbarNotifier.Level.ERROR, RollbarAppender.toLevel(Level.FATAL));
+        assertEquals(RollbarNotifier.Level.ERROR, RollbarAppender.toLevel(Level.ERROR));
+        assertEquals(RollbarNotifier.Level.WARNING, RollbarAppender.toLevel(Level.WARN));
+        assertEquals(RollbarNotifier.Level.INFO, RollbarAppender.toLevel(Level.INFO));
+        assertEquals(RollbarNotifier.Level.DEBUG, RollbarAppender.toLevel(Level.DEBUG));
+        assertEquals(RollbarNotifier.Level.DEBUG, RollbarAppender.toLevel(Level.TRACE));
+    }
+}
@@ -0,0 +1,174 @@
+package com.muantech.rollbar.java.logback;
+
+import java.net.MalformedURLException;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+import com.muantech.rollbar.java.AppenderDispatcher;
+import com.muantech.rollbar.java.NotificationEvent;
+import com.muantech.rollbar.java.RollbarAttributes;
+import com.muantech.rollbar.java.RollbarNotifier;
+
+/**
+ * <p>Logback appender which reports events to rollbar.  Events are converted on the logging thread
+ * and handed off to an {@link AppenderDispatcher}, so logging never waits on http (or on a lock,
+ * the appender is not synchronized).  Levels map directly, with {@code TRACE} reported as debug.
+ * The MDC is reported as custom fields, along with the logger and thread names.</p>
+ *
+ * <pre>
+ * &lt;appender name="ROLLBAR" class="com.muantech.rollbar.java.logback.RollbarAppender"&gt;
+ *   &lt;url&gt;https://api.rollbar.com/api/1/item/&lt;/url&gt;
+ *   &lt;accessToken&gt;...&lt;/accessToken&gt;
+ *   &lt;environment&gt;production&lt;/environment&gt;
+ *   &lt;filter class="ch.qos.logback.classic.filter.ThresholdFilter"&gt;
+ *     &lt;level&gt;WARN&lt;/level&gt;
+ *   &lt;/filter&gt;
+ * &lt;/appender&gt;
+ * </pre>
+ *
+ * <p>Optional properties are {@code codePackageRoot}, {@code capacity} (events waiting to be
+ * reported, default 1024) and {@code includeCallerData} (reports the location of events without a
+ * throwable, at the cost of logback capturing caller data on the logging thread).</p>
+ */
+public class RollbarAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+    private String url = null;
+    private String accessToken = null;
+    private String environment = null;
+    private String codePackageRoot = null;
+    private int capacity = 1024;
+    private boolean includeCallerData = false;
+    private RollbarNotifier notifier = null;
+    private boolean ownsNotifier = false;
+    private AppenderDispatcher dispatcher = null;
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public void setAccessToken(String accessToken) {
+        this.accessToken = accessToken;
+    }
+
+    public void setEnvironment(String environment) {
+        this.environment = environment;
+    }
+
+    public void setCodePackageRoot(String codePackageRoot) {
+        this.codePackageRoot = codePackageRoot;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void setIncludeCallerData(boolean includeCallerData) {
+        this.includeCallerData = includeCallerData;
+    }
+
+    /**
+     * Sets an existing notifier to report through instead of one created from the {@code url},
+     * {@code accessToken} and {@code environment}.  The notifier is not closed with the appender.
+     *
+     * @param notifier Notifier to report events through
+     */
+    public void setNotifier(RollbarNotifier notifier) {
+        this.notifier = notifier;
+    }
+
+    /**
+     * Returns the dispatcher events are handed off through, for its counts.
+     *
+     * @return Dispatcher used by this appender, or {@code null} if not started
+     */
+    public AppenderDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    @Override
+    public void start() {
+        if (notifier == null) {
+            if (url == null || accessToken == null || environment == null) {
+                addError("url, accessToken and environment must be set for appender " + getName());
+                return;
+            }
+            try {
+                notifier = new RollbarNotifier(url, accessToken, environment, codePackageRoot);
+            } catch (MalformedURLException e) {
+                addError("Invalid url for appender " + getName(), e);
+                return;
+            }
+            ownsNotifier = true;
+        }
+        dispatcher = new AppenderDispatcher(notifier, capacity);
+        super.start();
+    }
+
+    /**
+     * Reports the events already handed off (waiting a bounded amount of time), and closes the
+     * notifier if it was created by the appender.
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        if (dispatcher != null) {
+            dispatcher.close();
+            dispatcher = null;
+        }
+        if (ownsNotifier) {
+            notifier.close();
+            notifier = null;
+            ownsNotifier = false;
+        }
+    }
+
+    static RollbarNotifier.Level toLevel(Level level) {
+        switch (level.toInt()) {
+            case Level.ERROR_INT:
+                return RollbarNotifier.Level.ERROR;
+            case Level.WARN_INT:
+                return RollbarNotifier.Level.WARNING;
+            case Level.INFO_INT:
+                return RollbarNotifier.Level.INFO;
+            default:
+                return RollbarNotifier.Level.DEBUG;
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (! AppenderDispatcher.enter(event.getLoggerName())) {
+            return;
+        }
+        try {
+            RollbarAttributes attributes = new RollbarAttributes.Builder()
+                                               .customFields(event.getMDCPropertyMap())
+                                               .customField("logger", event.getLoggerName())
+                                               .customField("thread", event.getThreadName())
+                                               .build();
+
+            Throwable throwable = null;
+            IThrowableProxy throwableProxy = event.getThrowableProxy();
+            if (throwableProxy instanceof ThrowableProxy) {
+                throwable = ((ThrowableProxy) throwableProxy).getThrowable();
+            }
+            StackTraceElement callerFrame = null;
+            if (includeCallerData && throwable == null) {
+                StackTraceElement[] callerData = event.getCallerData();
+                if (callerData != null && callerData.length > 0) {
+                    callerFrame = callerData[0];
+                }
+            }
+
+            dispatcher.offer(new NotificationEvent(toLevel(event.getLevel()), event.getFormattedMessage(),
+                                                   throwable, attributes, callerFrame));
+        } catch (RuntimeException e) {
+            addError("Failed to hand off event", e);
+        } finally {
+            AppenderDispatcher.exit();
+        }
+    }
+}
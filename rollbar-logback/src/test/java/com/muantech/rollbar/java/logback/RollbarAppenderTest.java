@@ -0,0 +1,137 @@
+package com.muantech.rollbar.java.logback;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+import com.muantech.rollbar.java.AppenderDispatcher;
+import com.muantech.rollbar.java.RollbarNotifier;
+import com.sun.net.httpserver.HttpServer;
+
+public class RollbarAppenderTest {
+    private HttpServer server;
+    private String url;
+    private List<String> requestBodies;
+
+    @Before
+    public void setup() throws IOException {
+        requestBodies = new CopyOnWriteArrayList<String>();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", (exchange) -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                int b;
+                while ((b = in.read()) != -1) {
+                    body.write(b);
+                }
+            }
+            requestBodies.add(new String(body.toByteArray(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/1/item/";
+    }
+
+    @After
+    public void cleanup() {
+        server.stop(0);
+        server = null;
+    }
+
+    @Test
+    public void eventsReported() throws Exception {
+        LoggerContext context = new LoggerContext();
+        Logger logger = context.getLogger("com.example.RollbarAppenderTest");
+        logger.setAdditive(false);
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            RollbarAppender appender = new RollbarAppender();
+            appender.setContext(context);
+            appender.setNotifier(notifier);
+            appender.start();
+            logger.addAppender(appender);
+            MDC.put("requestId", "abc123");
+            try {
+                logger.warn("disk {} full", "sda1");
+                logger.error("failed", new IllegalStateException("boom"));
+
+                assertTrue(appender.getDispatcher().flush(10_000));
+            } finally {
+                MDC.remove("requestId");
+                logger.detachAppender(appender);
+                appender.stop();
+            }
+        }
+
+        assertEquals(2, requestBodies.size());
+        JsonObject warning = Json.parse(requestBodies.get(0)).asObject().get("data").asObject();
+        assertEquals("WARNING", warning.getString("level", null));
+        assertTrue(requestBodies.get(0), requestBodies.get(0).contains("disk sda1 full"));
+        JsonObject custom = warning.get("custom").asObject();
+        assertEquals("com.example.RollbarAppenderTest", custom.getString("logger", null));
+        assertEquals("abc123", custom.getString("requestId", null));
+        assertEquals(Thread.currentThread().getName(), custom.getString("thread", null));
+        JsonObject error = Json.parse(requestBodies.get(1)).asObject().get("data").asObject();
+        assertEquals("ERROR", error.getString("level", null));
+        assertTrue(requestBodies.get(1), requestBodies.get(1).contains(IllegalStateException.class.getName()));
+    }
+
+    @Test
+    public void recursiveEventsIgnored() throws Exception {
+        LoggerContext context = new LoggerContext();
+        Logger logger = context.getLogger("com.example.RollbarAppenderTest");
+        Logger notifierLogger = context.getLogger(RollbarNotifier.class);
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            RollbarAppender appender = new RollbarAppender();
+            appender.setContext(context);
+            appender.setNotifier(notifier);
+            appender.start();
+            context.getLogger(Logger.ROOT_LOGGER_NAME).addAppender(appender);
+            try {
+                // logged by the notifier while reporting an event
+                notifierLogger.error("send failed");
+                assertTrue(AppenderDispatcher.enter("com.example.Other"));
+                try {
+                    // logged while another event is being converted
+                    logger.error("nested");
+                } finally {
+                    AppenderDispatcher.exit();
+                }
+                logger.error("reported");
+
+                assertTrue(appender.getDispatcher().flush(10_000));
+            } finally {
+                appender.stop();
+            }
+        }
+
+        assertEquals(1, requestBodies.size());
+        assertTrue(requestBodies.get(0), requestBodies.get(0).contains("reported"));
+    }
+
+    @Test
+    public void levelsMapped() {
+        assertEquals(RollbarNotifier.Level.ERROR, RollbarAppender.toLevel(Level.ERROR));
+        assertEquals(RollbarNotifier.Level.WARNING, RollbarAppender.toLevel(Level.WARN));
+        assertEquals(RollbarNotifier.Level.INFO, RollbarAppender.toLevel(Level.INFO));
+        assertEquals(RollbarNotifier.Level.DEBUG, RollbarAppender.toLevel(Level.DEBUG));
+        assertEquals(RollbarNotifier.Level.DEBUG, RollbarAppender.toLevel(Level.TRACE));
+    }
+}
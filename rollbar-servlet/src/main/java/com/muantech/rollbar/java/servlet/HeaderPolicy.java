@@ -0,0 +1,89 @@
+package com.muantech.rollbar.java.servlet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * <p>Decides which request headers are reported, applied while headers are read from the request
+ * so that excluded headers are never copied.  Header names are matched case insensitively.</p>
+ */
+public final class HeaderPolicy {
+    /**
+     * Reports every header except those carrying credentials.
+     */
+    public static final HeaderPolicy DEFAULT = deny("Authorization", "Proxy-Authorization", "Cookie",
+                                                    "Set-Cookie", "X-Api-Key", "X-Auth-Token");
+
+    /**
+     * Reports no headers.
+     */
+    public static final HeaderPolicy NONE = allowOnly();
+
+    private final Set<String> names;
+    private final boolean allowList;
+
+    private HeaderPolicy(Set<String> names, boolean allowList) {
+        this.names = names;
+        this.allowList = allowList;
+    }
+
+    /**
+     * Returns a policy which reports only the provided headers.
+     *
+     * @param headerNames Names of the headers to report
+     * @return New allow list policy
+     */
+    public static HeaderPolicy allowOnly(String ... headerNames) {
+        return new HeaderPolicy(lowerCase(headerNames), true);
+    }
+
+    /**
+     * Returns a policy which reports every header except the provided ones.
+     *
+     * @param headerNames Names of the headers not to report
+     * @return New deny list policy
+     */
+    public static HeaderPolicy deny(String ... headerNames) {
+        return new HeaderPolicy(lowerCase(headerNames), false);
+    }
+
+    private static Set<String> lowerCase(String[] headerNames) {
+        Set<String> result = new HashSet<String>(headerNames.length * 2);
+        for (String name : headerNames) {
+            if (null == name)
+                throw new NullPointerException("headerNames");
+
+            result.add(name.trim().toLowerCase(Locale.ROOT));
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Parses a comma separated list of header names, as used by the filter's init parameters.
+     *
+     * @param headerNames Comma separated header names
+     * @return Header names, empty entries removed
+     */
+    static String[] parseList(String headerNames) {
+        return Arrays.stream(headerNames.split(","))
+                     .map(String::trim)
+                     .filter((name) -> ! name.isEmpty())
+                     .toArray(String[]::new);
+    }
+
+    /**
+     * Checks if a header should be reported.
+     *
+     * @param headerName Name of the header
+     * @return {@code true} to report the header
+     */
+    public boolean isAllowed(String headerName) {
+        if (names.isEmpty()) {
+            return ! allowList;
+        }
+        return names.contains(headerName.toLowerCase(Locale.ROOT)) == allowList;
+    }
+}
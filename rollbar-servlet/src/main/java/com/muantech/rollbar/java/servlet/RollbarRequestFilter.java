@@ -0,0 +1,113 @@
+package com.muantech.rollbar.java.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import com.muantech.rollbar.java.RollbarNotifier;
+
+/**
+ * <p>Makes a {@link ServletRollbarAttributeProvider} for the current request available through
+ * {@link #currentAttributes()}, for code (or logging appenders) which report notifications while
+ * a request is handled.  Creating the provider reads nothing from the request.</p>
+ *
+ * <p>When constructed with a notifier, exceptions thrown out of the filter chain are also reported
+ * (and then re-thrown).  An exception from a nested dispatch (forward or include) is reported once,
+ * by the outermost invocation with the original request's attributes.  When declared in {@code web.xml} the {@code allowHeaders} or
+ * {@code denyHeaders} init parameters (comma separated header names) replace the default
+ * {@link HeaderPolicy}.</p>
+ */
+public class RollbarRequestFilter implements Filter {
+    private static final ThreadLocal<ServletRollbarAttributeProvider> CURRENT =
+        new ThreadLocal<ServletRollbarAttributeProvider>();
+
+    private final RollbarNotifier notifier;
+    private volatile HeaderPolicy headerPolicy;
+
+    /**
+     * Constructs a new filter which does not report exceptions, as used when declared in
+     * {@code web.xml}.
+     */
+    public RollbarRequestFilter() {
+        this(null, HeaderPolicy.DEFAULT);
+    }
+
+    /**
+     * Constructs a new filter.
+     *
+     * @param notifier Notifier to report exceptions thrown out of the filter chain, or {@code null} to not report them
+     * @param headerPolicy Policy deciding which headers are reported
+     */
+    public RollbarRequestFilter(RollbarNotifier notifier, HeaderPolicy headerPolicy) {
+        if (null == headerPolicy)
+            throw new NullPointerException("headerPolicy");
+
+        this.notifier = notifier;
+        this.headerPolicy = headerPolicy;
+    }
+
+    /**
+     * Returns the attributes of the request being handled on this thread.
+     *
+     * @return Attributes of the current request, or {@code null} if not inside the filter
+     */
+    public static ServletRollbarAttributeProvider currentAttributes() {
+        return CURRENT.get();
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        String allowHeaders = filterConfig.getInitParameter("allowHeaders");
+        String denyHeaders = filterConfig.getInitParameter("denyHeaders");
+        if (allowHeaders != null && denyHeaders != null) {
+            throw new ServletException("Only one of allowHeaders and denyHeaders may be set");
+        } else if (allowHeaders != null) {
+            headerPolicy = HeaderPolicy.allowOnly(HeaderPolicy.parseList(allowHeaders));
+        } else if (denyHeaders != null) {
+            headerPolicy = HeaderPolicy.deny(HeaderPolicy.parseList(denyHeaders));
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response,
+                         FilterChain chain) throws IOException, ServletException {
+        if (! (request instanceof HttpServletRequest)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        ServletRollbarAttributeProvider attributes =
+            new ServletRollbarAttributeProvider((HttpServletRequest) request, headerPolicy);
+        // restored after, in case of a nested dispatch
+        ServletRollbarAttributeProvider previous = CURRENT.get();
+        CURRENT.set(attributes);
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException | Error e) {
+            RollbarNotifier notifier = this.notifier;
+            // a nested dispatch leaves reporting to the outer invocation the exception propagates to
+            if (notifier != null && previous == null) {
+                notifier.notify(e instanceof ServletException && ((ServletException) e).getRootCause() != null ?
+                                  ((ServletException) e).getRootCause() : e, attributes);
+            }
+            throw e;
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // the notifier belongs to whoever constructed the filter
+    }
+}
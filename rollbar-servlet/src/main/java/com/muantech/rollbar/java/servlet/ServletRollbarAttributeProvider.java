@@ -0,0 +1,233 @@
+package com.muantech.rollbar.java.servlet;
+
+import java.util.Enumeration;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import com.muantech.rollbar.java.CompactStringMap;
+import com.muantech.rollbar.java.RollbarAttributeAdapter;
+
+/**
+ * <p>Provides the details of a servlet request.  Nothing is read from the request until a
+ * notification is actually built (or captured for async delivery), so requests which never
+ * report anything cost only this object.  Headers and parameters are read at most once, into
+ * immutable {@link CompactStringMap}s which the notifier neither copies again when capturing nor
+ * iterates through entry objects when writing.</p>
+ *
+ * <p>Values are only valid while the request is being handled.  Before handing the provider to
+ * another thread which may use it after the request completes, call {@link #capture()}.  The
+ * notifier's own async delivery does not need this, it copies the values on the notifying
+ * thread.</p>
+ *
+ * <p>The request id is taken from the {@value #REQUEST_ID_HEADER} header, and the username from
+ * {@link HttpServletRequest#getRemoteUser()}.  Multiple values of a header or parameter are
+ * reported joined by commas.</p>
+ */
+public class ServletRollbarAttributeProvider extends RollbarAttributeAdapter {
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+
+    private final HeaderPolicy headerPolicy;
+    // cleared once captured
+    private HttpServletRequest request;
+    private String url = null;
+    private CompactStringMap headers = null;
+    private CompactStringMap params = null;
+    private String sessionId = null;
+    private boolean sessionRead = false;
+    // values which are cheap to read and so are only stored when captured
+    private String httpMethod;
+    private String query;
+    private String userIp;
+    private String protocol;
+    private String requestId;
+    private String userAgent;
+    private String username;
+
+    /**
+     * Constructs a new provider reporting every header except those carrying credentials.
+     *
+     * @param request Request being handled
+     */
+    public ServletRollbarAttributeProvider(HttpServletRequest request) {
+        this(request, HeaderPolicy.DEFAULT);
+    }
+
+    /**
+     * Constructs a new provider.
+     *
+     * @param request Request being handled
+     * @param headerPolicy Policy deciding which headers are reported
+     */
+    public ServletRollbarAttributeProvider(HttpServletRequest request, HeaderPolicy headerPolicy) {
+        if (null == request)
+            throw new NullPointerException("request");
+        if (null == headerPolicy)
+            throw new NullPointerException("headerPolicy");
+
+        this.request = request;
+        this.headerPolicy = headerPolicy;
+    }
+
+    /**
+     * Reads every value from the request and releases it, so this provider can be used after the
+     * request has completed.  Only the first call reads anything.
+     *
+     * @return This provider
+     */
+    public ServletRollbarAttributeProvider capture() {
+        HttpServletRequest request = this.request;
+        if (request != null) {
+            getUrl();
+            getHeaders();
+            getParams();
+            getSessionId();
+            httpMethod = request.getMethod();
+            query = request.getQueryString();
+            userIp = request.getRemoteAddr();
+            protocol = request.getProtocol();
+            requestId = request.getHeader(REQUEST_ID_HEADER);
+            userAgent = request.getHeader("User-Agent");
+            username = request.getRemoteUser();
+            this.request = null;
+        }
+        return this;
+    }
+
+    /**
+     * Checks if the values have been captured, and the request released.
+     *
+     * @return {@code true} if {@link #capture()} has been invoked
+     */
+    public boolean isCaptured() {
+        return request == null;
+    }
+
+    @Override
+    public String getUrl() {
+        HttpServletRequest request = this.request;
+        if (url == null && request != null) {
+            url = request.getRequestURL().toString();
+        }
+        return url;
+    }
+
+    @Override
+    public String getHttpMethod() {
+        HttpServletRequest request = this.request;
+        return request == null ? httpMethod : request.getMethod();
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        HttpServletRequest request = this.request;
+        if (headers == null && request != null) {
+            headers = readHeaders(request);
+        }
+        return headers;
+    }
+
+    private CompactStringMap readHeaders(HttpServletRequest request) {
+        Enumeration<?> names = request.getHeaderNames();
+        if (names == null) {
+            return CompactStringMap.EMPTY;
+        }
+        CompactStringMap.Builder builder = new CompactStringMap.Builder(16);
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            // filtered before the values are read
+            if (headerPolicy.isAllowed(name)) {
+                // header names are unique, the container merges differently cased duplicates
+                builder.append(name, join(request.getHeaders(name)));
+            }
+        }
+        return builder.build();
+    }
+
+    private static String join(Enumeration<?> values) {
+        if (values == null || ! values.hasMoreElements()) {
+            return null;
+        }
+        String first = (String) values.nextElement();
+        if (! values.hasMoreElements()) {
+            return first;
+        }
+        StringBuilder sb = new StringBuilder(first);
+        while (values.hasMoreElements()) {
+            sb.append(',').append(values.nextElement());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public Map<String, String> getParams() {
+        HttpServletRequest request = this.request;
+        if (params == null && request != null) {
+            params = readParams(request);
+        }
+        return params;
+    }
+
+    private static CompactStringMap readParams(HttpServletRequest request) {
+        Map<?, ?> parameterMap = request.getParameterMap();
+        if (parameterMap == null || parameterMap.isEmpty()) {
+            return CompactStringMap.EMPTY;
+        }
+        CompactStringMap.Builder builder = new CompactStringMap.Builder(parameterMap.size());
+        for (Map.Entry<?, ?> entry : parameterMap.entrySet()) {
+            String[] values = (String[]) entry.getValue();
+            builder.append((String) entry.getKey(),
+                           values == null || values.length == 0 ? null : String.join(",", values));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String getQuery() {
+        HttpServletRequest request = this.request;
+        return request == null ? query : request.getQueryString();
+    }
+
+    @Override
+    public String getUserIp() {
+        HttpServletRequest request = this.request;
+        return request == null ? userIp : request.getRemoteAddr();
+    }
+
+    @Override
+    public String getSessionId() {
+        HttpServletRequest request = this.request;
+        if (! sessionRead && request != null) {
+            // never creates a session
+            HttpSession session = request.getSession(false);
+            sessionId = session == null ? null : session.getId();
+            sessionRead = true;
+        }
+        return sessionId;
+    }
+
+    @Override
+    public String getProtocol() {
+        HttpServletRequest request = this.request;
+        return request == null ? protocol : request.getProtocol();
+    }
+
+    @Override
+    public String getRequestId() {
+        HttpServletRequest request = this.request;
+        return request == null ? requestId : request.getHeader(REQUEST_ID_HEADER);
+    }
+
+    @Override
+    public String getUserAgent() {
+        HttpServletRequest request = this.request;
+        return request == null ? userAgent : request.getHeader("User-Agent");
+    }
+
+    @Override
+    public String getUsername() {
+        HttpServletRequest request = this.request;
+        return request == null ? username : request.getRemoteUser();
+    }
+}
@@ -0,0 +1,169 @@
+package com.muantech.rollbar.java.servlet;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.muantech.rollbar.java.CompactStringMap;
+import com.muantech.rollbar.java.RollbarAttributeProvider;
+import com.muantech.rollbar.java.RollbarNotifier;
+
+public class ServletRollbarAttributeProviderTest {
+    private Map<String, List<String>> headers;
+    private Map<String, String[]> params;
+    private AtomicInteger requestCalls;
+    private AtomicBoolean requestCompleted;
+    private HttpServletRequest request;
+
+    @Before
+    public void setup() {
+        headers = new LinkedHashMap<String, List<String>>();
+        headers.put("Accept", Collections.singletonList("text/html"));
+        headers.put("Authorization", Collections.singletonList("Bearer secret"));
+        headers.put("X-Forwarded-For", Arrays.asList("10.0.0.1", "10.0.0.2"));
+        headers.put("X-Request-Id", Collections.singletonList("req-1"));
+        params = new LinkedHashMap<String, String[]>();
+        params.put("q", new String[] { "rollbar" });
+        params.put("tag", new String[] { "a", "b" });
+        requestCalls = new AtomicInteger();
+        requestCompleted = new AtomicBoolean();
+        request = (HttpServletRequest) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+                if (requestCompleted.get()) {
+                    throw new IllegalStateException("request already completed");
+                }
+                requestCalls.incrementAndGet();
+                switch (method.getName()) {
+                    case "getHeaderNames":
+                        return Collections.enumeration(headers.keySet());
+                    case "getHeaders":
+                        return Collections.enumeration(headers.getOrDefault(args[0], Collections.<String>emptyList()));
+                    case "getHeader":
+                        List<String> values = headers.get(args[0]);
+                        return values == null ? null : values.get(0);
+                    case "getParameterMap":
+                        return params;
+                    case "getRequestURL":
+                        return new StringBuffer("http://example.com/search");
+                    case "getMethod":
+                        return "GET";
+                    case "getQueryString":
+                        return "q=rollbar&tag=a&tag=b";
+                    case "getRemoteAddr":
+                        return "10.0.0.3";
+                    case "getProtocol":
+                        return "HTTP/1.1";
+                    case "getRemoteUser":
+                        return "alice";
+                    default:
+                        return null;
+                }
+            });
+    }
+
+    @Test
+    public void readsLazilyAndFiltersHeaders() {
+        ServletRollbarAttributeProvider attributes = new ServletRollbarAttributeProvider(request);
+        assertEquals(0, requestCalls.get());
+
+        Map<String, String> reportedHeaders = attributes.getHeaders();
+        assertTrue(reportedHeaders instanceof CompactStringMap);
+        assertEquals("text/html", reportedHeaders.get("Accept"));
+        assertEquals("10.0.0.1,10.0.0.2", reportedHeaders.get("X-Forwarded-For"));
+        assertFalse(reportedHeaders.containsKey("Authorization"));
+        assertSame(reportedHeaders, attributes.getHeaders());
+
+        assertEquals("a,b", attributes.getParams().get("tag"));
+        assertEquals("req-1", attributes.getRequestId());
+        assertEquals("alice", attributes.getUsername());
+    }
+
+    @Test
+    public void allowListPolicy() {
+        ServletRollbarAttributeProvider attributes =
+            new ServletRollbarAttributeProvider(request, HeaderPolicy.allowOnly("accept"));
+        assertEquals(Collections.singletonMap("Accept", "text/html"), attributes.getHeaders());
+        assertTrue(new ServletRollbarAttributeProvider(request, HeaderPolicy.NONE).getHeaders().isEmpty());
+    }
+
+    @Test
+    public void capturedValuesOutliveRequest() {
+        ServletRollbarAttributeProvider attributes = new ServletRollbarAttributeProvider(request).capture();
+        requestCompleted.set(true);
+
+        assertTrue(attributes.isCaptured());
+        assertEquals("http://example.com/search", attributes.getUrl());
+        assertEquals("GET", attributes.getHttpMethod());
+        assertEquals("rollbar", attributes.getParams().get("q"));
+        assertEquals("10.0.0.3", attributes.getUserIp());
+        assertEquals("HTTP/1.1", attributes.getProtocol());
+        assertNull(attributes.getSessionId());
+        assertEquals(3, attributes.getHeaders().size());
+    }
+
+    @Test
+    public void filterExposesCurrentRequest() throws Exception {
+        RollbarRequestFilter filter = new RollbarRequestFilter();
+        AtomicBoolean chainInvoked = new AtomicBoolean();
+        filter.doFilter(request, null, (req, resp) -> {
+            chainInvoked.set(true);
+            assertEquals("GET", RollbarRequestFilter.currentAttributes().getHttpMethod());
+        });
+        assertTrue(chainInvoked.get());
+        assertNull(RollbarRequestFilter.currentAttributes());
+
+        try {
+            filter.doFilter(request, null, (req, resp) -> {
+                throw new ServletException("failed");
+            });
+            fail("Exception should have been re-thrown");
+        } catch (ServletException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertNull(RollbarRequestFilter.currentAttributes());
+    }
+
+    @Test
+    public void nestedDispatchReportedOnce() throws Exception {
+        List<RollbarAttributeProvider> reported = new CopyOnWriteArrayList<RollbarAttributeProvider>();
+        RollbarNotifier notifier = new RollbarNotifier("http://127.0.0.1:1/api/1/item/", "tkn", "test") {
+            @Override
+            public void notify(Throwable throwable, RollbarAttributeProvider attributeProvider) {
+                reported.add(attributeProvider);
+            }
+        };
+        RollbarRequestFilter filter = new RollbarRequestFilter(notifier, HeaderPolicy.DEFAULT);
+        AtomicReference<ServletRollbarAttributeProvider> outer = new AtomicReference<ServletRollbarAttributeProvider>();
+        try {
+            filter.doFilter(request, null, (req, resp) -> {
+                outer.set(RollbarRequestFilter.currentAttributes());
+                // forwarded to another resource behind the same filter
+                filter.doFilter(req, resp, (nestedReq, nestedResp) -> {
+                    throw new IllegalStateException("failed");
+                });
+            });
+            fail("Exception should have been re-thrown");
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+
+        assertEquals(1, reported.size());
+        assertSame(outer.get(), reported.get(0));
+        assertNull(RollbarRequestFilter.currentAttributes());
+    }
+}
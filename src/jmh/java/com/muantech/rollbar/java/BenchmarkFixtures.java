@@ -0,0 +1,128 @@
+package com.muantech.rollbar.java;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Helpers to construct notification inputs of a known shape for the benchmarks.
+ */
+class BenchmarkFixtures {
+    private BenchmarkFixtures() {
+        // utility class
+    }
+
+    /**
+     * Constructs a throwable with at least {@code stackDepth} frames, wrapped in
+     * {@code causeDepth} additional exceptions.
+     *
+     * @param stackDepth Number of frames to add to each throwable in the chain
+     * @param causeDepth Number of wrapping exceptions, {@code 0} for no cause
+     * @return Outermost throwable
+     */
+    static Throwable throwable(int stackDepth, int causeDepth) {
+        Throwable result = recurse(stackDepth, null, "root cause");
+        for (int i = 0; i < causeDepth; i++) {
+            result = recurse(stackDepth, result, "wrapper " + i);
+        }
+        return result;
+    }
+
+    private static Throwable recurse(int remaining, Throwable cause, String message) {
+        if (remaining <= 0) {
+            return new IllegalStateException(message, cause);
+        }
+        return recurse(remaining - 1, cause, message);
+    }
+
+    /**
+     * Constructs an attribute provider with every field populated, similar to what a web request
+     * would provide.
+     *
+     * @return Populated attribute provider
+     */
+    static RollbarAttributeProvider populatedAttributes() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Accept", "application/json");
+        headers.put("Accept-Encoding", "gzip, deflate");
+        headers.put("Host", "api.example.com");
+        headers.put("X-Forwarded-For", "10.1.2.3");
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("page", "2");
+        params.put("filter", "active");
+        Map<String, String> custom = new HashMap<String, String>();
+        custom.put("tenant", "acme");
+        custom.put("build", "1.2.3-4567");
+
+        return new RollbarAttributeAdapter() {
+            @Override
+            public String getUrl() {
+                return "https://api.example.com/v1/widgets";
+            }
+
+            @Override
+            public String getHttpMethod() {
+                return "GET";
+            }
+
+            @Override
+            public Map<String, String> getHeaders() {
+                return headers;
+            }
+
+            @Override
+            public Map<String, String> getParams() {
+                return params;
+            }
+
+            @Override
+            public String getQuery() {
+                return "page=2&filter=active";
+            }
+
+            @Override
+            public String getUserIp() {
+                return "10.1.2.3";
+            }
+
+            @Override
+            public String getSessionId() {
+                return "8f14e45fceea167a5a36dedd4bea2543";
+            }
+
+            @Override
+            public String getProtocol() {
+                return "HTTP/1.1";
+            }
+
+            @Override
+            public String getRequestId() {
+                return "c9f0f895fb98ab9159f51fd0297e236d";
+            }
+
+            @Override
+            public Map<String, String> getCustomFields() {
+                return custom;
+            }
+
+            @Override
+            public String getUserAgent() {
+                return "Mozilla/5.0 (X11; Linux x86_64)";
+            }
+
+            @Override
+            public String getUserId() {
+                return "42";
+            }
+
+            @Override
+            public String getUsername() {
+                return "jdoe";
+            }
+
+            @Override
+            public String getUserEmail() {
+                return "jdoe@example.com";
+            }
+        };
+    }
+}
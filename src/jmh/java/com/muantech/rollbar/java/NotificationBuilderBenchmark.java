@@ -0,0 +1,87 @@
+package com.muantech.rollbar.java;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.eclipsesource.json.JsonObject;
+
+/**
+ * <p>Measures building and serializing a notification payload across stack depths, cause chain
+ * lengths, without attributes, with a provider whose getters are called on every write, and with
+ * reused {@link RollbarAttributes}, and with the trace cache on and off.</p>
+ *
+ * <p>{@code build} produces the {@link JsonObject} tree returned by the public api,
+ * {@code buildToString} additionally serializes that tree, and {@code write} is the streaming
+ * serialization the notifier actually sends.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotificationBuilderBenchmark {
+    @Param({"10", "100", "1000"})
+    public int stackDepth;
+
+    @Param({"0", "3"})
+    public int causeDepth;
+
+    @Param({"none", "provider", "reused"})
+    public String attributeKind;
+
+    @Param({"false", "true"})
+    public boolean traceCache;
+
+    private NotificationBuilder builder;
+    private Throwable throwable;
+    private RollbarAttributeProvider attributes;
+    private Utf8JsonWriter writer;
+
+    @Setup
+    public void setup() {
+        builder = new NotificationBuilder("benchmark-token", "benchmark", "com.muantech");
+        if (! traceCache) {
+            builder.setTraceCacheLimits(0, 0);
+        }
+        throwable = BenchmarkFixtures.throwable(stackDepth, causeDepth);
+        if ("provider".equals(attributeKind)) {
+            attributes = BenchmarkFixtures.populatedAttributes();
+        } else if ("reused".equals(attributeKind)) {
+            attributes = RollbarAttributes.copyOf(BenchmarkFixtures.populatedAttributes());
+        } else {
+            attributes = null;
+        }
+        writer = new Utf8JsonWriter();
+    }
+
+    @Benchmark
+    public JsonObject build() {
+        return builder.build("error", "benchmark failure", throwable, attributes);
+    }
+
+    @Benchmark
+    public String buildToString() {
+        return builder.build("error", "benchmark failure", throwable, attributes).toString();
+    }
+
+    @Benchmark
+    public void write(Blackhole bh) {
+        writer.reset();
+        builder.write(writer, "error", "benchmark failure", throwable, attributes);
+        bh.consume(writer.getBuffer());
+        bh.consume(writer.size());
+    }
+}
@@ -0,0 +1,83 @@
+package com.muantech.rollbar.java;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.muantech.rollbar.java.RollbarNotifier.OverflowPolicy;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>Measures {@link RollbarNotifier#notify(Throwable, RollbarAttributeProvider)} end to end
+ * against an in-process stub http server which accepts every item.  In sync mode this includes
+ * the http round trip, in async mode it is the cost seen by the notifying thread (sends happen
+ * on the sender threads, with the queue blocking the caller if it falls behind).</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotifyBenchmark {
+    @Param({"false", "true"})
+    public boolean async;
+
+    @Param({"10", "100"})
+    public int stackDepth;
+
+    private HttpServer server;
+    private RollbarNotifier notifier;
+    private Throwable throwable;
+    private RollbarAttributeProvider attributes;
+
+    @Setup
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", (exchange) -> {
+            byte[] buffer = new byte[8192];
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read(buffer) != -1) {
+                    // discard
+                }
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+
+        notifier = new RollbarNotifier("http://127.0.0.1:" + server.getAddress().getPort() + "/api/1/item/",
+                                       "benchmark-token", "benchmark");
+        if (async) {
+            notifier.enableAsyncDelivery(1024, 2, OverflowPolicy.BLOCK, 10_000);
+        }
+        throwable = BenchmarkFixtures.throwable(stackDepth, 1);
+        attributes = BenchmarkFixtures.populatedAttributes();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        notifier.flush(10_000);
+        notifier.close();
+        server.stop(0);
+    }
+
+    @Benchmark
+    public void notifyThrowable() {
+        notifier.notify(throwable, attributes);
+    }
+}
@@ -0,0 +1,248 @@
+package com.muantech.rollbar.java;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.threadly.concurrent.ConfigurableThreadFactory;
+import org.threadly.util.Clock;
+
+/**
+ * <p>Hands events off from logging threads to a single dispatcher thread which reports them
+ * through a notifier.  Logging threads only place the event into a lock-free ring buffer, they
+ * never wait on a lock, on room in the buffer (a full buffer drops the event) or on http.  This is
+ * the shared core of the logging framework appenders, and can be used to write one for any other
+ * framework.</p>
+ *
+ * <p>Appenders must guard each event with {@link #enter(String)} and {@link #exit()}, which
+ * stops any logging done while an event is being converted (or by the notifier, its transport and
+ * the dispatcher thread) from being reported and recursing back into the appender:</p>
+ *
+ * <pre>
+ * if (! AppenderDispatcher.enter(loggerName)) {
+ *     return;
+ * }
+ * try {
+ *     dispatcher.offer(new NotificationEvent(...));
+ * } finally {
+ *     AppenderDispatcher.exit();
+ * }
+ * </pre>
+ *
+ * <p>The notifier is used as configured, with no async delivery the dispatcher thread sends each
+ * notification itself (which is usually enough, as logging threads are already decoupled).</p>
+ */
+public class AppenderDispatcher implements AutoCloseable {
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // events from these loggers may be caused by reporting an event, and would recurse
+    private static final String[] IGNORED_LOGGER_PREFIXES = { "com.muantech.rollbar.", "org.threadly.",
+                                                              "sun.net.www.", "javax.net.ssl" };
+    // set while a thread is appending, and permanently on dispatcher threads
+    private static final ThreadLocal<boolean[]> GUARD = ThreadLocal.withInitial(() -> new boolean[1]);
+
+    private final RollbarNotifier notifier;
+    private final RingBuffer<NotificationEvent> buffer;
+    private final Thread dispatcherThread;
+    private final LongAdder acceptedCount = new LongAdder();
+    private final LongAdder dispatchedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    // threads between checking closed and publishing their event, the dispatcher drains until none are left
+    private final AtomicInteger offering = new AtomicInteger();
+    // flush waits on this, and is notified after each event once something is waiting
+    private final Object flushLock = new Object();
+    private volatile int flushWaiters = 0;
+    private volatile boolean waiting = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs a new dispatcher and starts its thread.
+     *
+     * @param notifier Notifier to report events through
+     * @param capacity Maximum number of events waiting to be reported (rounded up to a power of two)
+     */
+    public AppenderDispatcher(RollbarNotifier notifier, int capacity) {
+        if (null == notifier)
+            throw new NullPointerException("notifier");
+
+        this.notifier = notifier;
+        this.buffer = new RingBuffer<NotificationEvent>(capacity);
+        this.dispatcherThread =
+            new ConfigurableThreadFactory("rollbar-appender-", false, true, Thread.NORM_PRIORITY, null, null)
+                .newThread(this::dispatch);
+        dispatcherThread.start();
+    }
+
+    /**
+     * Marks the current thread as appending, unless it already is (the event was logged while
+     * handling another one), it is a dispatcher thread, or the logger belongs to the notifier or
+     * its transport.  Each {@code true} return must be paired with a call to {@link #exit()}.
+     *
+     * @param loggerName Name of the logger the event was logged to, or {@code null}
+     * @return {@code true} if the event should be handled, {@code false} to ignore it
+     */
+    public static boolean enter(String loggerName) {
+        boolean[] guard = GUARD.get();
+        if (guard[0]) {
+            return false;
+        }
+        if (loggerName != null) {
+            for (String prefix : IGNORED_LOGGER_PREFIXES) {
+                if (loggerName.startsWith(prefix)) {
+                    return false;
+                }
+            }
+        }
+        guard[0] = true;
+        return true;
+    }
+
+    /**
+     * Marks the current thread as no longer appending.
+     */
+    public static void exit() {
+        GUARD.get()[0] = false;
+    }
+
+    /**
+     * Hands an event off to be reported, never blocking.
+     *
+     * @param event Event to report
+     * @return {@code true} if accepted, {@code false} if dropped because the buffer is full or the dispatcher is closed
+     */
+    public boolean offer(NotificationEvent event) {
+        if (null == event)
+            throw new NullPointerException("event");
+
+        offering.incrementAndGet();
+        try {
+            // closed is checked after announcing the offer, so a closing dispatcher either waits
+            // for this event or it is dropped here, it is never left behind in the buffer
+            if (closed || ! buffer.offer(event)) {
+                droppedCount.increment();
+                return false;
+            }
+            acceptedCount.increment();
+        } finally {
+            offering.decrementAndGet();
+        }
+        if (waiting) {
+            LockSupport.unpark(dispatcherThread);
+        }
+        return true;
+    }
+
+    private void dispatch() {
+        GUARD.get()[0] = true;
+        while (true) {
+            NotificationEvent event = buffer.poll();
+            if (event == null) {
+                if (closed) {
+                    if (offering.get() == 0 && buffer.isEmpty()) {
+                        return;
+                    }
+                    // an offer racing the close is still publishing its event
+                    Thread.yield();
+                    continue;
+                }
+                waiting = true;
+                // checked again after announcing the wait, so an offer can not be missed
+                if (buffer.isEmpty() && ! closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                waiting = false;
+                continue;
+            }
+
+            try {
+                notifier.notify(event);
+            } catch (Throwable t) {
+                // anything the handler logs is ignored by the guard on this thread, rather than coming back here
+                try {
+                    notifier.handleException(t);
+                } catch (Throwable ignored) {
+                    // nothing left to report it to
+                }
+            }
+            dispatchedCount.increment();
+            if (flushWaiters > 0) {
+                synchronized (flushLock) {
+                    flushLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events accepted but not yet reported.
+     *
+     * @return Number of events waiting
+     */
+    public long getPendingCount() {
+        return acceptedCount.sum() - dispatchedCount.sum();
+    }
+
+    /**
+     * Returns the number of events which have been passed to the notifier.
+     *
+     * @return Number of events reported
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.sum();
+    }
+
+    /**
+     * Returns the number of events dropped because the buffer was full (or the dispatcher closed).
+     *
+     * @return Number of events dropped
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Waits for every accepted event to be reported, and for the notifier to send them.
+     *
+     * @param timeoutMillis Maximum time to wait in milliseconds
+     * @return {@code true} if everything was sent, {@code false} if the timeout was reached first
+     * @throws InterruptedException Thrown if interrupted while waiting
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = Clock.accurateForwardProgressingMillis() + timeoutMillis;
+        synchronized (flushLock) {
+            flushWaiters++;
+            try {
+                // the dispatcher checks for waiters after counting each event, so none can be missed
+                while (getPendingCount() > 0) {
+                    long remaining = deadline - Clock.accurateForwardProgressingMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    flushLock.wait(remaining);
+                }
+            } finally {
+                flushWaiters--;
+            }
+        }
+        return notifier.flush(Math.max(0, deadline - Clock.accurateForwardProgressingMillis()));
+    }
+
+    /**
+     * Stops accepting events and waits a bounded amount of time for the dispatcher thread to
+     * report the events already accepted.  The notifier is not closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(dispatcherThread);
+        try {
+            dispatcherThread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dispatcherThread.isAlive()) {
+            dispatcherThread.interrupt();
+        }
+    }
+}
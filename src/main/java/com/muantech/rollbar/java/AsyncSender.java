@@ -0,0 +1,446 @@
+package com.muantech.rollbar.java;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.threadly.concurrent.BlockingQueueConsumer;
+import org.threadly.concurrent.ConfigurableThreadFactory;
+import org.threadly.concurrent.SingleThreadScheduler;
+import org.threadly.util.Clock;
+
+import com.muantech.rollbar.java.RollbarNotifier.OverflowPolicy;
+
+/**
+ * <p>Bounded queue of pending deliveries which is drained by a small set of daemon sender threads.
+ * This allows {@link RollbarNotifier} to hand off a notification and return immediately, rather
+ * than blocking the caller for the duration of the http request (and any retries).</p>
+ *
+ * <p>Alternatively each delivery can run on its own virtual thread (Java 21+), in which case a
+ * single thread drains the queue and a semaphore limits how many deliveries are in flight at
+ * once.  A virtual thread blocked on a slow endpoint only holds a small heap allocated stack, so
+ * a high limit does not cost a platform thread per send.</p>
+ */
+class AsyncSender {
+    private final BlockingQueue<Runnable> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMillis;
+    private final List<BlockingQueueConsumer<Runnable>> consumers;
+    private final SingleThreadScheduler retryScheduler;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final LongAdder droppedCount = new LongAdder();
+    private final Runnable dropListener;
+    private final ThreadFactory virtualThreadFactory;
+    private final Semaphore sendPermits;
+    private final Object idleLock = new Object();
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs and starts a new async sender.
+     *
+     * @param queueSize Maximum number of deliveries which may be waiting to be sent
+     * @param senderThreads Number of threads to drain the queue with
+     * @param overflowPolicy Policy to apply when the queue is full
+     * @param blockTimeoutMillis Maximum time to wait for queue space when using {@link OverflowPolicy#BLOCK}
+     * @param dropListener Invoked each time a delivery is dropped
+     */
+    AsyncSender(int queueSize, int senderThreads, OverflowPolicy overflowPolicy, long blockTimeoutMillis,
+                Runnable dropListener) {
+        this(queueSize, senderThreads, overflowPolicy, blockTimeoutMillis, dropListener, null);
+    }
+
+    /**
+     * Constructs and starts a new async sender.
+     *
+     * @param queueSize Maximum number of deliveries which may be waiting to be sent
+     * @param senderThreads Number of threads to drain the queue with, or with virtual threads the maximum number of deliveries in flight
+     * @param overflowPolicy Policy to apply when the queue is full
+     * @param blockTimeoutMillis Maximum time to wait for queue space when using {@link OverflowPolicy#BLOCK}
+     * @param dropListener Invoked each time a delivery is dropped
+     * @param virtualThreadFactory Factory to run each delivery on a new thread from, or {@code null} to use sender threads
+     */
+    AsyncSender(int queueSize, int senderThreads, OverflowPolicy overflowPolicy, long blockTimeoutMillis,
+                Runnable dropListener, ThreadFactory virtualThreadFactory) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queueSize must be >= 1");
+        } else if (senderThreads < 1) {
+            throw new IllegalArgumentException("senderThreads must be >= 1");
+        } else if (overflowPolicy == null) {
+            throw new NullPointerException("overflowPolicy");
+        }
+        this.queue = new ArrayBlockingQueue<Runnable>(queueSize);
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.dropListener = dropListener;
+        this.virtualThreadFactory = virtualThreadFactory;
+
+        ConfigurableThreadFactory threadFactory =
+            new ConfigurableThreadFactory("rollbar-sender-", false, true, Thread.NORM_PRIORITY, null, null);
+        consumers = new ArrayList<BlockingQueueConsumer<Runnable>>(senderThreads);
+        if (virtualThreadFactory != null) {
+            sendPermits = new Semaphore(senderThreads);
+            BlockingQueueConsumer<Runnable> dispatcher =
+                new BlockingQueueConsumer<Runnable>(threadFactory, queue, this::dispatch);
+            dispatcher.start();
+            consumers.add(dispatcher);
+        } else {
+            sendPermits = null;
+            for (int i = 0; i < senderThreads; i++) {
+                BlockingQueueConsumer<Runnable> consumer =
+                    new BlockingQueueConsumer<Runnable>(threadFactory, queue, this::runDelivery);
+                consumer.start();
+                consumers.add(consumer);
+            }
+        }
+        retryScheduler = new SingleThreadScheduler(
+            new ConfigurableThreadFactory("rollbar-retry-", false, true, Thread.NORM_PRIORITY, null, null));
+    }
+
+    /**
+     * Adds a delivery to the queue, applying the overflow policy if the queue is full.
+     *
+     * @param delivery Task which will send the notification
+     * @return {@code true} if queued, {@code false} if the delivery was dropped
+     */
+    public boolean submit(Runnable delivery) {
+        if (closed) {
+            rejected(delivery);
+            return false;
+        }
+
+        pendingCount.incrementAndGet();
+        boolean queued;
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                queued = queue.offer(delivery);
+                while (! queued) {
+                    Runnable oldest = queue.poll();
+                    if (oldest != null) {
+                        discard(oldest);
+                    }
+                    queued = queue.offer(delivery);
+                }
+                break;
+            case BLOCK:
+                try {
+                    queued = queue.offer(delivery, blockTimeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    queued = false;
+                }
+                break;
+            case DROP_NEWEST:
+            default:
+                queued = queue.offer(delivery);
+                break;
+        }
+
+        if (! queued) {
+            discard(delivery);
+        } else if (withdrawIfClosed(delivery)) {
+            // closed while queueing, the drain in close may already have run
+            queued = false;
+        }
+        return queued;
+    }
+
+    /**
+     * Adds a delivery to the queue on behalf of a notifier sharing this sender, dropping it if
+     * that notifier already has its quota of deliveries waiting.  The overflow policy applies as
+     * usual if the queue itself is full.
+     *
+     * @param delivery Task which will send the notification
+     * @param quota Quota of the notifier submitting the delivery
+     * @return {@code true} if queued, {@code false} if the delivery was dropped
+     */
+    public boolean submit(Runnable delivery, Quota quota) {
+        if (quota.queued.incrementAndGet() > quota.maxQueued) {
+            quota.queued.decrementAndGet();
+            rejected(delivery);
+            return false;
+        }
+        // the quota is given back when the delivery runs or is discarded
+        return submit(new QuotaDelivery(delivery, quota));
+    }
+
+    /**
+     * Schedules a delivery to be placed back on the queue after a delay, without holding a sender
+     * thread while waiting.  The delivery counts as pending (for {@link #flush(long)}) until it
+     * has run again.  If the queue is full when the delay expires the retry is dropped.
+     *
+     * @param delivery Task which will send the notification
+     * @param delayMillis Delay before the delivery is queued again
+     */
+    public void scheduleRetry(Runnable delivery, long delayMillis) {
+        if (closed) {
+            rejected(delivery);
+            return;
+        }
+
+        pendingCount.incrementAndGet();
+        try {
+            retryScheduler.schedule(new RetryTask(delivery), delayMillis);
+        } catch (RejectedExecutionException e) {
+            // shutdown concurrently
+            discard(delivery);
+        }
+    }
+
+    /**
+     * Returns a factory for virtual threads, if this JVM supports them (Java 21+).  Looked up
+     * reflectively since this library targets Java 8.
+     *
+     * @param namePrefix Prefix for the thread names
+     * @return Virtual thread factory, or {@code null} if virtual threads are not available
+     */
+    static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // older JVM, or a preview release without preview features enabled
+            return null;
+        }
+    }
+
+    /**
+     * Starts a queued delivery on its own virtual thread, waiting for a permit first so the
+     * number in flight stays bounded (while waiting, deliveries back up in the queue).
+     */
+    private void dispatch(Runnable delivery) {
+        try {
+            sendPermits.acquire();
+        } catch (InterruptedException e) {
+            // stopping
+            Thread.currentThread().interrupt();
+            discard(delivery);
+            return;
+        }
+        try {
+            virtualThreadFactory.newThread(() -> {
+                try {
+                    runDelivery(delivery);
+                } finally {
+                    sendPermits.release();
+                }
+            }).start();
+        } catch (Throwable t) {
+            sendPermits.release();
+            discard(delivery);
+        }
+    }
+
+    /**
+     * Takes a just queued delivery back off the queue if the sender has since been closed, as
+     * the sender threads may already have stopped and {@link #close(long)} finished draining.
+     * Whoever removes the delivery from the queue (this, a sender thread, or the drain) accounts
+     * for it, so it is still run or discarded exactly once.
+     *
+     * @return {@code true} if the delivery was withdrawn and discarded
+     */
+    private boolean withdrawIfClosed(Runnable delivery) {
+        if (closed && queue.remove(delivery)) {
+            discard(delivery);
+            return true;
+        }
+        return false;
+    }
+
+    private void runDelivery(Runnable delivery) {
+        try {
+            delivery.run();
+        } finally {
+            deliveryDone();
+        }
+    }
+
+    /**
+     * Accounts for a pending delivery which will not be run.
+     */
+    private void discard(Runnable delivery) {
+        rejected(delivery);
+        deliveryDone();
+    }
+
+    /**
+     * Drops a delivery which will not be run, informing it if it is {@link Discardable}.
+     */
+    private void rejected(Runnable delivery) {
+        if (delivery instanceof Discardable) {
+            ((Discardable) delivery).discarded();
+        }
+        dropped();
+    }
+
+    private void dropped() {
+        droppedCount.increment();
+        dropListener.run();
+    }
+
+    private void deliveryDone() {
+        if (pendingCount.decrementAndGet() == 0) {
+            synchronized (idleLock) {
+                idleLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Blocks until every queued or in-flight delivery has completed.
+     *
+     * @param timeoutMillis Maximum time to wait in milliseconds
+     * @return {@code true} if all deliveries completed, {@code false} if the timeout was reached first
+     * @throws InterruptedException Thrown if interrupted while waiting
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = Clock.accurateForwardProgressingMillis() + timeoutMillis;
+        synchronized (idleLock) {
+            while (pendingCount.get() > 0) {
+                long remaining = deadline - Clock.accurateForwardProgressingMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                idleLock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting new deliveries, waits up to the provided timeout for queued deliveries to
+     * be sent, and then stops the sender threads.  Anything still queued after the timeout is
+     * discarded.
+     *
+     * @param timeoutMillis Maximum time to wait for the queue to drain
+     */
+    public void close(long timeoutMillis) {
+        closed = true;
+        try {
+            flush(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            consumers.forEach(BlockingQueueConsumer::stopIfRunning);
+            for (Runnable task : retryScheduler.shutdownNow()) {
+                discard(task instanceof RetryTask ? ((RetryTask) task).delivery : task);
+            }
+            Runnable delivery;
+            while ((delivery = queue.poll()) != null) {
+                discard(delivery);
+            }
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreadFactory != null;
+    }
+
+    /**
+     * Limit on how many deliveries one notifier may have waiting in a shared queue, so that a
+     * single noisy notifier can not starve the others sharing it.
+     */
+    static class Quota {
+        private final int maxQueued;
+        private final AtomicInteger queued = new AtomicInteger();
+
+        /**
+         * Constructs a new quota.
+         *
+         * @param maxQueued Maximum number of deliveries which may be waiting at once
+         */
+        Quota(int maxQueued) {
+            if (maxQueued < 1) {
+                throw new IllegalArgumentException("maxQueued must be >= 1");
+            }
+            this.maxQueued = maxQueued;
+        }
+
+        public int getQueuedCount() {
+            return queued.get();
+        }
+    }
+
+    /**
+     * Delivery which needs to know if it will never be run, for example to report the
+     * notification as dropped to whoever is waiting on it.
+     */
+    interface Discardable extends Runnable {
+        /**
+         * Invoked instead of {@link #run()} when the delivery is dropped.
+         */
+        public void discarded();
+    }
+
+    /**
+     * Places a delivery back on the queue once its retry delay has passed.
+     */
+    private class RetryTask implements Runnable {
+        private final Runnable delivery;
+
+        private RetryTask(Runnable delivery) {
+            this.delivery = delivery;
+        }
+
+        @Override
+        public void run() {
+            if (closed || ! queue.offer(delivery)) {
+                discard(delivery);
+            } else {
+                withdrawIfClosed(delivery);
+            }
+        }
+    }
+
+    /**
+     * Delivery which gives back its quota once it has run (or been discarded).
+     */
+    private static class QuotaDelivery implements Discardable {
+        private final Runnable delivery;
+        private final Quota quota;
+
+        private QuotaDelivery(Runnable delivery, Quota quota) {
+            this.delivery = delivery;
+            this.quota = quota;
+        }
+
+        @Override
+        public void run() {
+            // released first, retries the delivery schedules do not count against the quota
+            release();
+            delivery.run();
+        }
+
+        @Override
+        public void discarded() {
+            release();
+            if (delivery instanceof Discardable) {
+                ((Discardable) delivery).discarded();
+            }
+        }
+
+        /**
+         * Gives back the quota.  Invoked exactly once, by whichever thread took the delivery off
+         * the queue (or failed to queue it).
+         */
+        private void release() {
+            quota.queued.decrementAndGet();
+        }
+    }
+}
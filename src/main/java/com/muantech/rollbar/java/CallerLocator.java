@@ -0,0 +1,171 @@
+package com.muantech.rollbar.java;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * <p>Finds the first stack frame outside of the notifier (and any other ignored classes), so that
+ * notifications without a throwable can still report where they came from.</p>
+ *
+ * <p>On Java 9+ {@code java.lang.StackWalker} is used (through method handles, since this library
+ * targets Java 8), which only materializes the few frames walked rather than the whole stack.  On
+ * Java 8 the JDK internal {@code JavaLangAccess} is used to read single frames out of a
+ * {@link Throwable}, falling back to {@link Throwable#getStackTrace()} if it is not accessible.</p>
+ */
+class CallerLocator {
+    private static final String[] NOTIFIER_CLASSES = { RollbarNotifier.class.getName(),
+                                                       CallerLocator.class.getName() };
+    private static final MethodHandle STACK_WALK;
+    private static final MethodHandle FRAME_CLASS_NAME;
+    private static final MethodHandle FRAME_METHOD_NAME;
+    private static final MethodHandle FRAME_FILE_NAME;
+    private static final MethodHandle FRAME_LINE_NUMBER;
+    private static final Object JAVA_LANG_ACCESS;
+    private static final Method STACK_TRACE_DEPTH;
+    private static final Method STACK_TRACE_ELEMENT;
+
+    static {
+        MethodHandle walk = null;
+        MethodHandle className = null;
+        MethodHandle methodName = null;
+        MethodHandle fileName = null;
+        MethodHandle lineNumber = null;
+        try {
+            // walk is caller sensitive, so it can not be looked up with the public lookup
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+            Object walker = walkerClass.getMethod("getInstance").invoke(null);
+            walk = lookup.findVirtual(walkerClass, "walk", MethodType.methodType(Object.class, Function.class))
+                         .bindTo(walker)
+                         .asType(MethodType.methodType(StackTraceElement.class, Function.class));
+            className = frameGetter(lookup, frameClass, "getClassName", String.class);
+            methodName = frameGetter(lookup, frameClass, "getMethodName", String.class);
+            fileName = frameGetter(lookup, frameClass, "getFileName", String.class);
+            lineNumber = frameGetter(lookup, frameClass, "getLineNumber", int.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8, fall back below
+            walk = null;
+        }
+        STACK_WALK = walk;
+        FRAME_CLASS_NAME = className;
+        FRAME_METHOD_NAME = methodName;
+        FRAME_FILE_NAME = fileName;
+        FRAME_LINE_NUMBER = lineNumber;
+
+        Object javaLangAccess = null;
+        Method depth = null;
+        Method element = null;
+        if (walk == null) {
+            try {
+                Object access = Class.forName("sun.misc.SharedSecrets").getMethod("getJavaLangAccess").invoke(null);
+                Class<?> accessClass = Class.forName("sun.misc.JavaLangAccess");
+                depth = accessClass.getMethod("getStackTraceDepth", Throwable.class);
+                element = accessClass.getMethod("getStackTraceElement", Throwable.class, int.class);
+                javaLangAccess = access;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // not accessible, full stack trace will be used
+                depth = null;
+                element = null;
+            }
+        }
+        JAVA_LANG_ACCESS = javaLangAccess;
+        STACK_TRACE_DEPTH = depth;
+        STACK_TRACE_ELEMENT = element;
+    }
+
+    private static MethodHandle frameGetter(MethodHandles.Lookup lookup, Class<?> frameClass,
+                                            String name, Class<?> type) throws ReflectiveOperationException {
+        return lookup.findVirtual(frameClass, name, MethodType.methodType(type))
+                     .asType(MethodType.methodType(type, Object.class));
+    }
+
+    private final String[] ignoredClassPrefixes;
+    private final Function<Stream<?>, StackTraceElement> walkFunction = this::firstCallerFrame;
+
+    /**
+     * Constructs a new locator.
+     *
+     * @param ignoredClassPrefixes Additional class name prefixes to skip, for example logging framework packages
+     */
+    CallerLocator(String... ignoredClassPrefixes) {
+        this.ignoredClassPrefixes = ignoredClassPrefixes.clone();
+    }
+
+    /**
+     * Returns the frame which called into the notifier.
+     *
+     * @return Caller frame, or {@code null} if it could not be determined
+     */
+    public StackTraceElement locate() {
+        if (STACK_WALK != null) {
+            try {
+                return (StackTraceElement) STACK_WALK.invokeExact(walkFunction);
+            } catch (Throwable t) {
+                return null;
+            }
+        }
+
+        Throwable throwable = new Throwable();
+        if (JAVA_LANG_ACCESS != null) {
+            try {
+                int depth = (Integer) STACK_TRACE_DEPTH.invoke(JAVA_LANG_ACCESS, throwable);
+                for (int i = 0; i < depth; i++) {
+                    StackTraceElement element =
+                        (StackTraceElement) STACK_TRACE_ELEMENT.invoke(JAVA_LANG_ACCESS, throwable, i);
+                    if (! isIgnored(element.getClassName())) {
+                        return element;
+                    }
+                }
+                return null;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // fall through to the full stack trace
+            }
+        }
+        for (StackTraceElement element : throwable.getStackTrace()) {
+            if (! isIgnored(element.getClassName())) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private StackTraceElement firstCallerFrame(Stream<?> frames) {
+        Iterator<?> it = frames.iterator();
+        try {
+            while (it.hasNext()) {
+                Object frame = it.next();
+                String className = (String) FRAME_CLASS_NAME.invokeExact(frame);
+                if (! isIgnored(className)) {
+                    return new StackTraceElement(className,
+                                                 (String) FRAME_METHOD_NAME.invokeExact(frame),
+                                                 (String) FRAME_FILE_NAME.invokeExact(frame),
+                                                 (int) FRAME_LINE_NUMBER.invokeExact(frame));
+                }
+            }
+        } catch (Throwable t) {
+            // unable to read the frame, report no location
+        }
+        return null;
+    }
+
+    private boolean isIgnored(String className) {
+        for (String notifierClass : NOTIFIER_CLASSES) {
+            if (className.startsWith(notifierClass) &&
+                (className.length() == notifierClass.length() || className.charAt(notifierClass.length()) == '$')) {
+                return true;
+            }
+        }
+        for (String prefix : ignoredClassPrefixes) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,67 @@
+package com.muantech.rollbar.java;
+
+import com.muantech.rollbar.java.RollbarNotifier.Level;
+
+/**
+ * <p>The inputs of a notification, captured on the notifying thread so that the expensive part
+ * (walking stack frames, rendering the raw stack trace, serializing json) can happen later on a
+ * sender thread.  Capturing only copies the attribute values and takes the timestamp.</p>
+ *
+ * <p>The throwable is kept by reference, its stack trace was already filled in when it was
+ * constructed.  Code which modifies a throwable after reporting it (for example adding suppressed
+ * exceptions) may see those changes included in the notification.</p>
+ */
+class CapturedNotification {
+    private final Level level;
+    private final String message;
+    private final Throwable throwable;
+    private final RollbarAttributeProvider attributes;
+    private final long timestampMillis;
+    private final StackTraceElement callerFrame;
+    private final double sampleRate;
+    private final PendingResult result;
+
+    /**
+     * Captures a notification.
+     *
+     * @param level Level of the notification
+     * @param message Message to report, or {@code null}
+     * @param throwable Throwable to report, or {@code null}
+     * @param attributeProvider Provider for additional attributes, or {@code null}
+     * @param callerFrame Location the notification was reported from, or {@code null}
+     * @param sampleRate Rate the notification was sampled at
+     * @param result Result to complete once the notification's outcome is known, or {@code null}
+     */
+    CapturedNotification(Level level, String message, Throwable throwable,
+                         RollbarAttributeProvider attributeProvider, StackTraceElement callerFrame,
+                         double sampleRate, PendingResult result) {
+        this.level = level;
+        this.message = message;
+        this.throwable = throwable;
+        this.attributes = attributeProvider == null ? null : RollbarAttributes.copyOf(attributeProvider);
+        this.timestampMillis = NotificationBuilder.currentTimeMillis();
+        this.callerFrame = callerFrame;
+        this.sampleRate = sampleRate;
+        this.result = result;
+    }
+
+    /**
+     * Returns the result someone is waiting on for this notification.
+     *
+     * @return Pending result, or {@code null} if the notification was not made with {@code notifyAsync}
+     */
+    public PendingResult getResult() {
+        return result;
+    }
+
+    /**
+     * Streams the payload for this notification into the provided writer.
+     *
+     * @param builder Builder to produce the payload with
+     * @param writer Writer to append the payload to
+     */
+    public void writeTo(NotificationBuilder builder, Utf8JsonWriter writer) {
+        builder.write(writer, level.toString(), message, throwable, attributes, timestampMillis, callerFrame,
+                      sampleRate);
+    }
+}
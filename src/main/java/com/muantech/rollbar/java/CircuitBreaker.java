@@ -0,0 +1,168 @@
+package com.muantech.rollbar.java;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Circuit breaker shared by every thread sending through a {@link RollbarNotifier}.  After
+ * {@code failureThreshold} consecutive failed requests the breaker opens, and for
+ * {@code openMillis} every send fails fast instead of each thread retrying against an endpoint
+ * which is already known to be unhealthy.  Once that time passes a single trial request is
+ * allowed through (half-open); its success closes the breaker, its failure opens it again.  A
+ * trial which reports no outcome within {@code openMillis} is counted as failed, and the next
+ * request becomes a new trial.</p>
+ *
+ * <p>Only the trial request decides the trial, outcomes reported meanwhile by requests allowed
+ * through before the breaker opened are ignored.  The trial is recognised by the thread which
+ * called {@link #allowRequest()}, so each request must report its outcome on that thread.</p>
+ */
+public class CircuitBreaker {
+    public enum State {
+        /** Requests flow normally */
+        CLOSED,
+        /** Requests fail fast */
+        OPEN,
+        /** A single trial request is in flight to decide if the breaker should close */
+        HALF_OPEN
+    }
+
+    /**
+     * Listener informed of breaker state transitions.
+     */
+    public interface Listener {
+        /**
+         * Invoked on the thread which caused the transition.
+         *
+         * @param from Previous state
+         * @param to New state
+         */
+        public void stateChanged(State from, State to);
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final AtomicReference<Status> status = new AtomicReference<Status>(Status.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final LongAdder rejectedCount = new LongAdder();
+    private volatile Listener listener = null;
+
+    /**
+     * Constructs a new closed circuit breaker.
+     *
+     * @param failureThreshold Number of consecutive failures which opens the breaker
+     * @param openMillis Time the breaker stays open before allowing a trial request
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be >= 1");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * Sets the listener for state transitions.
+     *
+     * @param listener Listener to invoke, or {@code null} to remove
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Checks if a request may be sent.  When this returns {@code true} the caller must report the
+     * outcome with {@link #recordSuccess()} or {@link #recordFailure()}, on the same thread and
+     * including when the request throws (which counts as a failure).
+     *
+     * @return {@code true} if the request may proceed, {@code false} if it should fail fast
+     */
+    public boolean allowRequest() {
+        Status current = status.get();
+        if (current.state == State.CLOSED) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (current.state == State.HALF_OPEN && now - current.sinceNanos >= openNanos) {
+            // the trial never reported back, count it as failed with its wait already served
+            Status opened = new Status(State.OPEN, current.sinceNanos, null);
+            current = transition(current, opened) ? opened : status.get();
+        }
+        if (current.state == State.OPEN && now - current.sinceNanos >= openNanos
+                && transition(current, new Status(State.HALF_OPEN, now, Thread.currentThread()))) {
+            // this caller gets to make the trial request
+            return true;
+        }
+        rejectedCount.increment();
+        return false;
+    }
+
+    public void recordSuccess() {
+        Status current = status.get();
+        if (current.state == State.CLOSED) {
+            consecutiveFailures.set(0);
+        } else if (current.isTrial()) {
+            consecutiveFailures.set(0);
+            transition(current, Status.CLOSED);
+        }
+    }
+
+    public void recordFailure() {
+        Status current = status.get();
+        if (current.isTrial()
+                || (current.state == State.CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold)) {
+            transition(current, new Status(State.OPEN, System.nanoTime(), null));
+        }
+    }
+
+    private boolean transition(Status from, Status to) {
+        if (! status.compareAndSet(from, to)) {
+            return false;
+        }
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.stateChanged(from.state, to.state);
+        }
+        return true;
+    }
+
+    public State getState() {
+        return status.get().state;
+    }
+
+    /**
+     * Returns the number of requests which failed fast because the breaker was open.
+     *
+     * @return Number of rejected requests
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * State along with when it was entered, swapped as one so a trial's start and owner are
+     * never seen apart from the transition which started it.
+     */
+    private static class Status {
+        private static final Status CLOSED = new Status(State.CLOSED, 0, null);
+
+        private final State state;
+        // when opened, or when the trial started
+        private final long sinceNanos;
+        private final Thread trialThread;
+
+        private Status(State state, long sinceNanos, Thread trialThread) {
+            this.state = state;
+            this.sinceNanos = sinceNanos;
+            this.trialThread = trialThread;
+        }
+
+        /**
+         * Checks if the current thread is making this status's trial request.
+         */
+        private boolean isTrial() {
+            return state == State.HALF_OPEN && trialThread == Thread.currentThread();
+        }
+    }
+}
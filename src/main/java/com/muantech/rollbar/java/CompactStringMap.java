@@ -0,0 +1,222 @@
+package com.muantech.rollbar.java;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>Immutable string map stored as one flat array of alternating keys and values, in insertion
+ * order.  Attribute maps are small (a few dozen headers at most) and are written far more often
+ * than they are looked up in, so a linear scan for {@link #get(Object)} is cheap and the map costs
+ * a single array instead of a {@code HashMap}'s table and entry per mapping.</p>
+ *
+ * <p>Since it is immutable, attribute providers returning it are not copied again when a
+ * notification is captured for async delivery, and the payload is written from it without
+ * allocating entries.</p>
+ */
+public final class CompactStringMap extends AbstractMap<String, String> {
+    public static final CompactStringMap EMPTY = new CompactStringMap(new String[0], 0);
+
+    // key at 2 * i, value at 2 * i + 1
+    private final String[] entries;
+    private final int size;
+    private Set<Entry<String, String>> entrySet = null;
+
+    private CompactStringMap(String[] entries, int size) {
+        this.entries = entries;
+        this.size = size;
+    }
+
+    /**
+     * Returns an immutable copy of a map, or the map itself if it already is one.
+     *
+     * @param map Map to copy, mappings with a {@code null} key are skipped (they can not be written as json)
+     * @return Compact copy, or {@code null} if {@code map} is {@code null}
+     */
+    public static CompactStringMap copyOf(Map<String, String> map) {
+        if (map == null) {
+            return null;
+        } else if (map instanceof CompactStringMap) {
+            return (CompactStringMap) map;
+        } else if (map.isEmpty()) {
+            return EMPTY;
+        }
+        Builder builder = new Builder(map.size());
+        for (Entry<String, String> entry : map.entrySet()) {
+            builder.append(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the key at a position, for iterating without allocating entries.
+     *
+     * @param index Position from {@code 0} to {@code size() - 1}
+     * @return Key at the position
+     */
+    public String keyAt(int index) {
+        return entries[index << 1];
+    }
+
+    /**
+     * Returns the value at a position, for iterating without allocating entries.
+     *
+     * @param index Position from {@code 0} to {@code size() - 1}
+     * @return Value at the position
+     */
+    public String valueAt(int index) {
+        return entries[(index << 1) + 1];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    private int indexOf(Object key) {
+        if (key != null) {
+            for (int i = 0; i < size; i++) {
+                if (key.equals(entries[i << 1])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(keyAt(i), valueAt(i));
+        }
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        private int index = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < size;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (index >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, String> entry =
+                                new SimpleImmutableEntry<String, String>(keyAt(index), valueAt(index));
+                            index++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Builds a {@link CompactStringMap}.  Not thread safe, and not usable once built.
+     */
+    public static class Builder {
+        private String[] entries;
+        private int size = 0;
+
+        /**
+         * Constructs a new builder.
+         *
+         * @param expectedSize Number of mappings expected, the builder grows if more are added
+         */
+        public Builder(int expectedSize) {
+            entries = new String[Math.max(1, expectedSize) * 2];
+        }
+
+        /**
+         * Adds a mapping, replacing the value of an existing mapping for the key.
+         *
+         * @param key Key to add, ignored if {@code null}
+         * @param value Value for the key, may be {@code null}
+         * @return This builder
+         */
+        public Builder put(String key, String value) {
+            if (key == null) {
+                return this;
+            }
+            for (int i = 0; i < size; i++) {
+                if (key.equals(entries[i << 1])) {
+                    entries[(i << 1) + 1] = value;
+                    return this;
+                }
+            }
+            return append(key, value);
+        }
+
+        /**
+         * Adds a mapping without checking for an existing mapping of the key, for keys which are
+         * known to be unique.
+         *
+         * @param key Key to add, ignored if {@code null}
+         * @param value Value for the key, may be {@code null}
+         * @return This builder
+         */
+        public Builder append(String key, String value) {
+            if (key == null) {
+                return this;
+            }
+            if (size * 2 == entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[size * 2] = key;
+            entries[size * 2 + 1] = value;
+            size++;
+            return this;
+        }
+
+        /**
+         * Builds the map.
+         *
+         * @return Immutable map of the added mappings
+         */
+        public CompactStringMap build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            String[] result = entries.length == size * 2 ? entries : Arrays.copyOf(entries, size * 2);
+            entries = null;
+            return new CompactStringMap(result, size);
+        }
+    }
+}
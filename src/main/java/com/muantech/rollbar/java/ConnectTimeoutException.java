@@ -0,0 +1,24 @@
+package com.muantech.rollbar.java;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * <p>Thrown by a {@link Transport} when a connection could not be established within the timeout.
+ * Unlike a timeout waiting for the response, nothing was sent, so the request is safe to retry.</p>
+ */
+public class ConnectTimeoutException extends SocketTimeoutException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a new exception.
+     *
+     * @param message Detail message
+     * @param cause Underlying timeout, or {@code null}
+     */
+    public ConnectTimeoutException(String message, Throwable cause) {
+        super(message);
+        if (cause != null) {
+            initCause(cause);
+        }
+    }
+}
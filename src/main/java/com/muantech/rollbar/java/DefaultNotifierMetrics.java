@@ -0,0 +1,122 @@
+package com.muantech.rollbar.java;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Lock-free {@link NotifierMetrics} implementation kept by every {@link RollbarNotifier}.  Events
+ * are recorded into {@link LongAdder} counters and {@link LatencyHistogram}s, and then forwarded to
+ * an optional delegate (for example an adapter to an application's metrics library).</p>
+ */
+class DefaultNotifierMetrics implements NotifierMetrics {
+    private static final int MAX_STATUS_CODE = 599;
+
+    private final LongAdder notificationCount = new LongAdder();
+    private final LongAdder payloadBytes = new LongAdder();
+    private final LatencyHistogram buildLatency = new LatencyHistogram();
+    private final LongAdder failedRequestCount = new LongAdder();
+    private final AtomicLongArray statusCodeCounts = new AtomicLongArray(MAX_STATUS_CODE + 1);
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder[] droppedCounts;
+    private volatile NotifierMetrics delegate = null;
+
+    DefaultNotifierMetrics() {
+        droppedCounts = new LongAdder[DropReason.values().length];
+        for (int i = 0; i < droppedCounts.length; i++) {
+            droppedCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Sets the metrics implementation to forward every event to.
+     *
+     * @param delegate Metrics to forward to, or {@code null} to only record locally
+     */
+    public void setDelegate(NotifierMetrics delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void payloadBuilt(long buildNanos, int payloadBytes) {
+        notificationCount.increment();
+        this.payloadBytes.add(payloadBytes);
+        buildLatency.record(buildNanos);
+
+        NotifierMetrics delegate = this.delegate;
+        if (delegate != null) {
+            delegate.payloadBuilt(buildNanos, payloadBytes);
+        }
+    }
+
+    @Override
+    public void requestCompleted(int statusCode, long latencyNanos) {
+        if (statusCode < 0) {
+            failedRequestCount.increment();
+        } else {
+            // anything outside of the valid range is counted as 0
+            statusCodeCounts.incrementAndGet(statusCode > MAX_STATUS_CODE ? 0 : statusCode);
+        }
+        sendLatency.record(latencyNanos);
+
+        NotifierMetrics delegate = this.delegate;
+        if (delegate != null) {
+            delegate.requestCompleted(statusCode, latencyNanos);
+        }
+    }
+
+    @Override
+    public void retryScheduled() {
+        retryCount.increment();
+
+        NotifierMetrics delegate = this.delegate;
+        if (delegate != null) {
+            delegate.retryScheduled();
+        }
+    }
+
+    @Override
+    public void notificationDropped(DropReason reason) {
+        droppedCounts[reason.ordinal()].increment();
+
+        NotifierMetrics delegate = this.delegate;
+        if (delegate != null) {
+            delegate.notificationDropped(reason);
+        }
+    }
+
+    /**
+     * Captures the recorded metrics along with the provided gauges.
+     *
+     * @param queueDepth Current async queue depth
+     * @param traceCacheHitCount Current trace cache hit count
+     * @param traceCacheMissCount Current trace cache miss count
+     * @param transport Transport in use, whose connection counts are included if it is a {@link PooledHttpTransport}
+     * @return New snapshot
+     */
+    public MetricsSnapshot snapshot(int queueDepth, long traceCacheHitCount, long traceCacheMissCount,
+                                    Transport transport) {
+        Map<Integer, Long> statusCodes = new TreeMap<Integer, Long>();
+        long requestCount = failedRequestCount.sum();
+        for (int i = 0; i <= MAX_STATUS_CODE; i++) {
+            long count = statusCodeCounts.get(i);
+            if (count > 0) {
+                statusCodes.put(i, count);
+                requestCount += count;
+            }
+        }
+        Map<DropReason, Long> dropped = new EnumMap<DropReason, Long>(DropReason.class);
+        for (DropReason reason : DropReason.values()) {
+            dropped.put(reason, droppedCounts[reason.ordinal()].sum());
+        }
+
+        return new MetricsSnapshot(notificationCount.sum(), payloadBytes.sum(), buildLatency.snapshot(),
+                                   requestCount, failedRequestCount.sum(), statusCodes,
+                                   sendLatency.snapshot(), retryCount.sum(), dropped,
+                                   queueDepth, traceCacheHitCount, traceCacheMissCount,
+                                   transport instanceof PooledHttpTransport ? (PooledHttpTransport) transport : null);
+    }
+}
@@ -0,0 +1,105 @@
+package com.muantech.rollbar.java;
+
+import com.muantech.rollbar.java.NotifierMetrics.DropReason;
+
+/**
+ * <p>Outcome of a single notification, as completed by the future returned from
+ * {@code RollbarNotifier.notifyAsync(...)}.</p>
+ */
+public class DeliveryResult {
+    public enum Outcome {
+        /** Accepted by rollbar */
+        DELIVERED,
+        /** Rejected by rollbar with a response which retrying would not change (for example a 4xx) */
+        REJECTED,
+        /** Could not be delivered and was written to the spool, to be replayed later */
+        SPOOLED,
+        /** Could not be delivered after any retries, and was not spooled */
+        FAILED,
+        /** Dropped by the notifier before being sent, see {@link DeliveryResult#getDropReason()} */
+        DROPPED
+    }
+
+    private final Outcome outcome;
+    private final DropReason dropReason;
+    private final int statusCode;
+    private final String itemUuid;
+    private final int attemptCount;
+    private final long latencyNanos;
+
+    DeliveryResult(Outcome outcome, DropReason dropReason, int statusCode, String itemUuid,
+                   int attemptCount, long latencyNanos) {
+        this.outcome = outcome;
+        this.dropReason = dropReason;
+        this.statusCode = statusCode;
+        this.itemUuid = itemUuid;
+        this.attemptCount = attemptCount;
+        this.latencyNanos = latencyNanos;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Checks if the notification was accepted by rollbar.
+     *
+     * @return {@code true} if the outcome is {@link Outcome#DELIVERED}
+     */
+    public boolean isDelivered() {
+        return outcome == Outcome.DELIVERED;
+    }
+
+    /**
+     * Returns why the notification was dropped.
+     *
+     * @return Drop reason, or {@code null} unless the outcome is {@link Outcome#DROPPED}
+     */
+    public DropReason getDropReason() {
+        return dropReason;
+    }
+
+    /**
+     * Returns the http status of the last attempt.
+     *
+     * @return Status code, or {@code -1} if no response was received
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns the uuid rollbar assigned to the item, which can be used to link to it.
+     *
+     * @return Item uuid, or {@code null} if not delivered (or sent as part of a bulk request)
+     */
+    public String getItemUuid() {
+        return itemUuid;
+    }
+
+    /**
+     * Returns the number of http requests made for the notification.
+     *
+     * @return Number of attempts, {@code 0} if it was never sent
+     */
+    public int getAttemptCount() {
+        return attemptCount;
+    }
+
+    /**
+     * Returns the time from the notify call until this result was known, including time spent
+     * queued and any retries.
+     *
+     * @return End to end latency in nanoseconds
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "DeliveryResult{outcome=" + outcome + (dropReason == null ? "" : ", dropReason=" + dropReason) +
+                 ", status=" + statusCode + ", uuid=" + itemUuid + ", attempts=" + attemptCount +
+                 ", latencyNanos=" + latencyNanos + '}';
+    }
+}
@@ -0,0 +1,125 @@
+package com.muantech.rollbar.java;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>{@link RetryPolicy} using exponential backoff with full jitter.  Before attempt {@code n + 1}
+ * a random delay between zero and {@code min(maxDelayMillis, baseDelayMillis * 2^(n - 1))} is
+ * chosen, so that many clients failing at the same moment do not retry in lock step.</p>
+ *
+ * <p>Retried failures are 5xx responses, 429 responses, and failures to connect (which are known
+ * to have not delivered the item).  For a 429 the {@code Retry-After} header is honored, if it
+ * asks for a longer wait than {@code maxDelayMillis} the item is not retried.</p>
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 500;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 30_000;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * Constructs a new policy with the default attempts and delays.
+     */
+    public ExponentialBackoffRetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Constructs a new policy.
+     *
+     * @param maxAttempts Maximum total number of attempts (including the first)
+     * @param baseDelayMillis Upper bound of the delay before the first retry
+     * @param maxDelayMillis Maximum delay before any retry
+     */
+    public ExponentialBackoffRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be >= 1");
+        } else if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Invalid delays");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    @Override
+    public long getRetryDelayMillis(int attemptNumber, Transport.Response response, IOException failure) {
+        if (attemptNumber >= maxAttempts) {
+            return -1;
+        }
+
+        if (response == null) {
+            if (! isConnectFailure(failure)) {
+                // the item may have been received, don't risk sending it twice
+                return -1;
+            }
+            return backoffDelay(attemptNumber);
+        }
+
+        int statusCode = response.getStatusCode();
+        if (statusCode == 429) {
+            long retryAfter = parseRetryAfterMillis(response.getHeader("Retry-After"));
+            if (retryAfter > maxDelayMillis) {
+                return -1;
+            }
+            return Math.max(retryAfter, backoffDelay(attemptNumber));
+        } else if (statusCode >= 500) {
+            return backoffDelay(attemptNumber);
+        }
+        return -1;
+    }
+
+    private long backoffDelay(int attemptNumber) {
+        int shift = Math.min(attemptNumber - 1, 30);
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << shift);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static boolean isConnectFailure(IOException failure) {
+        if (failure instanceof ConnectException || failure instanceof NoRouteToHostException) {
+            return true;
+        } else if (failure instanceof ConnectTimeoutException) {
+            return true;
+        } else if (failure instanceof SocketTimeoutException) {
+            // from a transport of our own, the JDK reports "Connect timed out" (lower case before JDK 13)
+            String message = failure.getMessage();
+            return message != null && message.toLowerCase(Locale.ROOT).contains("connect timed out");
+        }
+        return false;
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, which may be in delta seconds or an http date.
+     *
+     * @param retryAfter Header value, or {@code null}
+     * @return Delay in milliseconds, {@code 0} if the header is missing or can't be parsed
+     */
+    static long parseRetryAfterMillis(String retryAfter) {
+        if (retryAfter == null || retryAfter.isEmpty()) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            // fall through to http date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+}
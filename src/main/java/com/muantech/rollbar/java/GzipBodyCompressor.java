@@ -0,0 +1,200 @@
+package com.muantech.rollbar.java;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>Gzip compresses request bodies, sent with {@code Content-Encoding: gzip}.  Rollbar payloads
+ * (raw stack traces and frame arrays especially) are very repetitive text and typically compress
+ * to a fraction of their size.  Bodies smaller than the configured threshold are sent as is, since
+ * the savings there would not be worth the cpu.</p>
+ *
+ * <p>{@link Deflater}s are reused from a small pool rather than allocating (and later freeing
+ * native memory for) one per request.  A pool rather than one per thread, since with virtual thread
+ * delivery every request runs on a new thread.  The achieved compression ratio and the cpu time
+ * spent compressing are tracked so it can be judged if the egress savings are worth it.</p>
+ */
+public class GzipBodyCompressor {
+    public static final int DEFAULT_MIN_BYTES = 1024;
+    private static final int GZIP_HEADER_BYTES = 10;
+    private static final int GZIP_TRAILER_BYTES = 8;
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final int minBytes;
+    private final int level;
+    private final ScratchPool<DeflaterScratch> scratchPool;
+    private final LongAdder compressedCount = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+
+    /**
+     * Constructs a compressor for bodies of at least {@value #DEFAULT_MIN_BYTES} bytes using the
+     * default compression level.
+     */
+    public GzipBodyCompressor() {
+        this(DEFAULT_MIN_BYTES, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructs a new compressor.
+     *
+     * @param minBytes Minimum body size to compress, smaller bodies are sent uncompressed
+     * @param level Compression level from {@code 1} (fastest) to {@code 9} (smallest), or {@code -1} for the default
+     */
+    public GzipBodyCompressor(int minBytes, int level) {
+        if (minBytes < 0) {
+            throw new IllegalArgumentException("minBytes must be >= 0");
+        } else if ((level < 1 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("level must be between 1 and 9, or -1");
+        }
+        this.minBytes = minBytes;
+        this.level = level;
+        // native memory is freed as soon as a deflater is dropped, rather than left to gc
+        this.scratchPool = new ScratchPool<DeflaterScratch>(ScratchPool.DEFAULT_SIZE,
+                                                            () -> new DeflaterScratch(this.level),
+                                                            (scratch) -> scratch.deflater.end());
+    }
+
+    /**
+     * Compresses a body if it is at least the minimum size.
+     *
+     * @param body Array containing the body
+     * @param offset Offset the body starts at
+     * @param length Length of the body
+     * @return Gzip encoded body, or {@code null} if the body is below the threshold
+     */
+    public byte[] compress(byte[] body, int offset, int length) {
+        if (length < minBytes) {
+            return null;
+        }
+
+        long startCpu = currentThreadCpuNanos();
+        long startWall = System.nanoTime();
+        DeflaterScratch scratch = scratchPool.acquire();
+        byte[] result;
+        try {
+            Deflater deflater = scratch.deflater;
+            byte[] out = scratch.out;
+            int size = GZIP_HEADER_BYTES;
+            try {
+                deflater.setInput(body, offset, length);
+                deflater.finish();
+                while (! deflater.finished()) {
+                    if (size == out.length) {
+                        out = Arrays.copyOf(out, out.length * 2);
+                    }
+                    size += deflater.deflate(out, size, out.length - size);
+                }
+            } finally {
+                deflater.reset();
+            }
+            if (out.length - size < GZIP_TRAILER_BYTES) {
+                out = Arrays.copyOf(out, size + GZIP_TRAILER_BYTES);
+            }
+            scratch.out = out;
+
+            // fixed header: magic, deflate, no flags, no mtime, unknown os
+            out[0] = (byte) 0x1f;
+            out[1] = (byte) 0x8b;
+            out[2] = Deflater.DEFLATED;
+            Arrays.fill(out, 3, 9, (byte) 0);
+            out[9] = (byte) 0xff;
+
+            CRC32 crc = new CRC32();
+            crc.update(body, offset, length);
+            size = writeIntLE(out, size, (int) crc.getValue());
+            size = writeIntLE(out, size, length);
+
+            result = Arrays.copyOf(out, size);
+        } finally {
+            scratchPool.release(scratch);
+        }
+        long endCpu = startCpu < 0 ? -1 : currentThreadCpuNanos();
+        cpuNanos.add(endCpu < 0 ? System.nanoTime() - startWall : endCpu - startCpu);
+        compressedCount.increment();
+        uncompressedBytes.add(length);
+        compressedBytes.add(result.length);
+        return result;
+    }
+
+    private static int writeIntLE(byte[] out, int position, int value) {
+        out[position] = (byte) value;
+        out[position + 1] = (byte) (value >>> 8);
+        out[position + 2] = (byte) (value >>> 16);
+        out[position + 3] = (byte) (value >>> 24);
+        return position + 4;
+    }
+
+    /**
+     * Returns the cpu time of the current thread, or {@code -1} if it can not be measured (such as
+     * on a virtual thread, or a JVM without support for it).
+     */
+    private static long currentThreadCpuNanos() {
+        try {
+            if (THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()) {
+                return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+            }
+        } catch (UnsupportedOperationException e) {
+            // not supported for this thread
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of bodies which were compressed.
+     *
+     * @return Number of compressed bodies
+     */
+    public long getCompressedCount() {
+        return compressedCount.sum();
+    }
+
+    public long getUncompressedBytes() {
+        return uncompressedBytes.sum();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * Returns the total cpu time spent compressing, in nanoseconds.  Where the JVM can not measure
+     * thread cpu time, which includes compression on virtual threads, wall time is counted instead.
+     *
+     * @return Time spent compressing in nanoseconds
+     */
+    public long getCpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    /**
+     * Returns the ratio of compressed to uncompressed bytes over every compressed body, for
+     * example {@code 0.2} when bodies are sent at a fifth of their size.
+     *
+     * @return Compression ratio, or {@code 1.0} if nothing has been compressed yet
+     */
+    public double getCompressionRatio() {
+        long uncompressed = uncompressedBytes.sum();
+        if (uncompressed == 0) {
+            return 1.0;
+        }
+        return (double) compressedBytes.sum() / uncompressed;
+    }
+
+    /**
+     * Deflater and output buffer used together for one compression at a time.
+     */
+    private static class DeflaterScratch {
+        private final Deflater deflater;
+        private byte[] out = new byte[8 * 1024];
+
+        private DeflaterScratch(int level) {
+            deflater = new Deflater(level, true);
+        }
+    }
+}
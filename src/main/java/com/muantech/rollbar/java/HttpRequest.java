@@ -1,28 +1,35 @@
 package com.muantech.rollbar.java;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Map.Entry;
 
 public class HttpRequest {
     private static final int REQUEST_TIMEOUT = 5000;
 
+    private final Transport transport;
     private final URL url;
 
-    private HttpURLConnection connection;
     private final HashMap<String, String> requestProperties;
 
     private String method;
     private byte[] body;
+    private int bodyOffset;
+    private int bodyLength;
+    private boolean bodyOwned;
 
     private int attemptNumber;
+    private Transport.Response lastResponse;
+    private IOException lastException;
 
     public HttpRequest(URL url, String method) {
+        this(new HttpURLConnectionTransport(REQUEST_TIMEOUT), url, method);
+    }
+
+    public HttpRequest(Transport transport, URL url, String method) {
+        this.transport = transport;
         this.url = url;
         this.method = method;
 
@@ -41,63 +48,105 @@ public class HttpRequest {
 
     public void setBody(String body) {
         try {
-            this.body = body.getBytes("UTF-8");
+            setBody(body.getBytes("UTF-8"));
         } catch (UnsupportedEncodingException e) {
-            this.body = body.getBytes();
+            setBody(body.getBytes());
         }
     }
 
-    public boolean execute() {
-        attemptNumber++;
-
-        try {
-            connection = (HttpURLConnection) url.openConnection();
-        } catch (IOException e) {
-            // don't retry
-            return true;
-        }
-
-        try {
-            connection.setRequestMethod(this.method);
-            connection.setConnectTimeout(REQUEST_TIMEOUT);
-            connection.setReadTimeout(REQUEST_TIMEOUT);
-
-            for (Entry<String, String> pair : requestProperties.entrySet()) {
-                connection.setRequestProperty(pair.getKey(), pair.getValue());
-            }
-
-            if (body != null) {
-                connection.setDoOutput(true);
-                writeBody(body, connection);
-            }
+    public void setBody(byte[] body) {
+        setBody(body, 0, body.length);
+    }
 
-            if (connection.getResponseCode() >= 500) {
-                return false;
-            }
+    /**
+     * Sets the request body to a range of an array.  The array is not copied, so it must not be
+     * modified until the request has finished executing (or {@link #detachBody()} is invoked).
+     *
+     * @param body Array containing the body
+     * @param offset Offset the body starts at
+     * @param length Length of the body
+     */
+    public void setBody(byte[] body, int offset, int length) {
+        this.body = body;
+        this.bodyOffset = offset;
+        this.bodyLength = length;
+        this.bodyOwned = false;
+    }
 
-        } catch (IOException e) {
-            // don't retry
-            return true;
-        } finally {
-            connection.disconnect();
+    /**
+     * Copies the body into an array owned by this request, so that the array provided to
+     * {@code setBody} can be reused while the request is still pending, for example while waiting
+     * to retry.  Does nothing if the body is already owned (such as after compression).
+     */
+    public void detachBody() {
+        if (body != null && ! bodyOwned) {
+            body = Arrays.copyOfRange(body, bodyOffset, bodyOffset + bodyLength);
+            bodyOffset = 0;
+            bodyOwned = true;
         }
+    }
 
+    /**
+     * Gzip compresses the body set with {@code setBody}, if it is large enough for the compressor,
+     * and sets the {@code Content-Encoding} header.  Compression happens once, retries reuse the
+     * compressed body.
+     *
+     * @param compressor Compressor to use
+     * @return {@code true} if the body was compressed
+     */
+    public boolean compressBody(GzipBodyCompressor compressor) {
+        if (body == null) {
+            return false;
+        }
+        byte[] compressed = compressor.compress(body, bodyOffset, bodyLength);
+        if (compressed == null) {
+            return false;
+        }
+        setBody(compressed);
+        bodyOwned = true;
+        setRequestProperty("Content-Encoding", "gzip");
         return true;
     }
 
-    private void writeBody(byte[] body, HttpURLConnection connection) throws IOException {
-        OutputStream out = null;
+    /**
+     * Performs one attempt of the request.  The outcome is available from {@link #getLastResponse()}
+     * or {@link #getLastException()}, whether to retry is left to the {@link RetryPolicy}.
+     */
+    public void execute() {
+        attemptNumber++;
+        lastResponse = null;
+        lastException = null;
+
         try {
-            out = new BufferedOutputStream(connection.getOutputStream());
-            out.write(this.body);
-        } finally {
-            if (out != null) {
-                out.close();
-            }
+            lastResponse = transport.send(method, url, requestProperties, body, bodyOffset, bodyLength);
+        } catch (IOException e) {
+            lastException = e;
         }
     }
 
+    public int getBodyLength() {
+        return bodyLength;
+    }
+
     public int getAttemptNumber() {
         return attemptNumber;
     }
+
+    /**
+     * Returns the response from the most recent attempt.
+     *
+     * @return Last response or {@code null} if no attempt has received a response
+     */
+    public Transport.Response getLastResponse() {
+        return lastResponse;
+    }
+
+    /**
+     * Returns the failure from the most recent attempt.
+     *
+     * @return Exception thrown by the last attempt or {@code null} if it received a response
+     */
+    public IOException getLastException() {
+        return lastException;
+    }
 }
@@ -0,0 +1,94 @@
+package com.muantech.rollbar.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * <p>{@link Transport} implementation using {@link HttpURLConnection}.  The response is always
+ * fully read and the connection is not explicitly disconnected, which allows the JDK's own
+ * keep-alive cache to reuse the underlying socket (sized by the {@code http.maxConnections}
+ * system property).</p>
+ */
+public class HttpURLConnectionTransport implements Transport {
+    private final int timeoutMillis;
+
+    /**
+     * Constructs a new transport.
+     *
+     * @param timeoutMillis Connect and read timeout in milliseconds
+     */
+    public HttpURLConnectionTransport(int timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public Response send(String method, URL url, Map<String, String> headers,
+                         byte[] body, int offset, int length) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+
+        for (Entry<String, String> pair : headers.entrySet()) {
+            connection.setRequestProperty(pair.getKey(), pair.getValue());
+        }
+
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(length);
+        }
+        try {
+            // connected explicitly so a connect timeout can be told apart from a read timeout
+            connection.connect();
+        } catch (SocketTimeoutException e) {
+            throw new ConnectTimeoutException("Connect timed out: " + url.getHost(), e);
+        }
+        if (body != null) {
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body, offset, length);
+            }
+        }
+
+        int statusCode = connection.getResponseCode();
+        Map<String, String> responseHeaders = new HashMap<String, String>();
+        for (Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() != null && ! header.getValue().isEmpty()) {
+                responseHeaders.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue().get(0));
+            }
+        }
+
+        InputStream in = statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        String responseBody = null;
+        if (in != null) {
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    baos.write(buffer, 0, read);
+                }
+                responseBody = new String(baos.toByteArray(), StandardCharsets.UTF_8);
+            } finally {
+                in.close();
+            }
+        }
+
+        return new Response(statusCode, responseHeaders, responseBody);
+    }
+
+    @Override
+    public void close() {
+        // connections are owned by the JDK keep-alive cache
+    }
+}
@@ -0,0 +1,236 @@
+package com.muantech.rollbar.java;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * <p>{@link Transport} using the JDK's {@code java.net.http.HttpClient} (Java 11+), which keeps
+ * persistent connections open between notifications (and uses HTTP/2 where the server offers
+ * it).  This is the default transport where it is available, see {@link #createDefault()}.</p>
+ *
+ * <p>The library targets Java 8, so the client is used through method handles looked up once
+ * when this class is loaded.  Requests are routed through {@link ProxySelector#getDefault()}.
+ * Connection keep-alive is managed by the client, its idle timeout is set with the
+ * {@code jdk.httpclient.keepalive.timeout} system property.</p>
+ */
+public class JdkHttpClientTransport implements Transport {
+    public static final int DEFAULT_TIMEOUT_MILLIS = 5_000;
+    // set by the client itself, it refuses requests which try to set them
+    private static final Set<String> RESTRICTED_HEADERS =
+        new HashSet<String>(Arrays.asList("connection", "content-length", "expect", "host", "upgrade"));
+    private static final ClientApi API = ClientApi.load();
+
+    private final Object client;
+    private final Duration timeout;
+
+    /**
+     * Constructs a new transport with a {@value #DEFAULT_TIMEOUT_MILLIS} millisecond timeout.
+     */
+    public JdkHttpClientTransport() {
+        this(DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructs a new transport.
+     *
+     * @param timeoutMillis Connect timeout, and timeout waiting for each response, in milliseconds
+     * @throws UnsupportedOperationException Thrown if {@code java.net.http.HttpClient} is not available
+     */
+    public JdkHttpClientTransport(int timeoutMillis) {
+        if (API == null) {
+            throw new UnsupportedOperationException("java.net.http.HttpClient requires Java 11 or newer");
+        }
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        try {
+            Object builder = API.newClientBuilder.invoke();
+            builder = API.connectTimeout.invoke(builder, timeout);
+            ProxySelector proxySelector = ProxySelector.getDefault();
+            if (proxySelector != null) {
+                builder = API.proxy.invoke(builder, proxySelector);
+            }
+            this.client = API.buildClient.invoke(builder);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not create http client", t);
+        }
+    }
+
+    /**
+     * Checks if {@code java.net.http.HttpClient} is available on this JVM.
+     *
+     * @return {@code true} if this transport can be constructed
+     */
+    public static boolean isAvailable() {
+        return API != null;
+    }
+
+    /**
+     * Constructs the default transport, using {@code java.net.http.HttpClient} if it is available
+     * and {@link HttpURLConnectionTransport} on Java 8.
+     *
+     * @return New transport
+     */
+    public static Transport createDefault() {
+        if (API != null) {
+            return new JdkHttpClientTransport(DEFAULT_TIMEOUT_MILLIS);
+        }
+        return new HttpURLConnectionTransport(DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    @Override
+    public Response send(String method, URL url, Map<String, String> headers,
+                         byte[] body, int offset, int length) throws IOException {
+        URI uri;
+        try {
+            uri = url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid url: " + url, e);
+        }
+
+        try {
+            Object builder = API.newRequestBuilder.invoke(uri);
+            builder = API.requestTimeout.invoke(builder, timeout);
+            for (Entry<String, String> header : headers.entrySet()) {
+                if (! RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                    builder = API.header.invoke(builder, header.getKey(), header.getValue());
+                }
+            }
+            Object publisher = body == null ? API.noBody.invoke() : API.ofByteArray.invoke(body, offset, length);
+            builder = API.method.invoke(builder, method, publisher);
+            Object request = API.buildRequest.invoke(builder);
+
+            Object response = API.send.invoke(client, request, API.stringBodyHandler);
+
+            Map<String, String> responseHeaders = new HashMap<String, String>();
+            @SuppressWarnings("unchecked")
+            Map<String, List<String>> headerMap =
+                (Map<String, List<String>>) API.headerMap.invoke(API.headers.invoke(response));
+            for (Entry<String, List<String>> header : headerMap.entrySet()) {
+                if (! header.getValue().isEmpty()) {
+                    responseHeaders.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue().get(0));
+                }
+            }
+            int statusCode = (int) API.statusCode.invoke(response);
+            return new Response(statusCode, responseHeaders, (String) API.body.invoke(response));
+        } catch (IOException e) {
+            if (API.connectTimeoutClass.isInstance(e)) {
+                throw new ConnectTimeoutException("Connect timed out: " + url.getHost(), e);
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted waiting for response");
+            interrupted.initCause(e);
+            throw interrupted;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException(t);
+        }
+    }
+
+    @Override
+    public void close() {
+        // the client only became closeable in Java 21, before that it is released once unreachable
+        if (client instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) client).close();
+            } catch (Exception e) {
+                // ignored, nothing more we can do
+            }
+        }
+    }
+
+    /**
+     * Method handles for the parts of the {@code java.net.http} api used.
+     */
+    private static class ClientApi {
+        private MethodHandle newClientBuilder;
+        private MethodHandle connectTimeout;
+        private MethodHandle proxy;
+        private MethodHandle buildClient;
+        private MethodHandle newRequestBuilder;
+        private MethodHandle requestTimeout;
+        private MethodHandle header;
+        private MethodHandle method;
+        private MethodHandle buildRequest;
+        private MethodHandle noBody;
+        private MethodHandle ofByteArray;
+        private MethodHandle send;
+        private MethodHandle statusCode;
+        private MethodHandle headers;
+        private MethodHandle headerMap;
+        private MethodHandle body;
+        private Object stringBodyHandler;
+        private Class<?> connectTimeoutClass;
+
+        private static ClientApi load() {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                Class<?> client = Class.forName("java.net.http.HttpClient");
+                Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+                Class<?> request = Class.forName("java.net.http.HttpRequest");
+                Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+                Class<?> bodyPublisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+                Class<?> bodyPublishers = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+                Class<?> response = Class.forName("java.net.http.HttpResponse");
+                Class<?> bodyHandler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+                Class<?> bodyHandlers = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+                Class<?> httpHeaders = Class.forName("java.net.http.HttpHeaders");
+
+                ClientApi api = new ClientApi();
+                api.newClientBuilder = lookup.findStatic(client, "newBuilder", MethodType.methodType(clientBuilder));
+                api.connectTimeout = lookup.findVirtual(clientBuilder, "connectTimeout",
+                                                        MethodType.methodType(clientBuilder, Duration.class));
+                api.proxy = lookup.findVirtual(clientBuilder, "proxy",
+                                               MethodType.methodType(clientBuilder, ProxySelector.class));
+                api.buildClient = lookup.findVirtual(clientBuilder, "build", MethodType.methodType(client));
+                api.newRequestBuilder = lookup.findStatic(request, "newBuilder",
+                                                          MethodType.methodType(requestBuilder, URI.class));
+                api.requestTimeout = lookup.findVirtual(requestBuilder, "timeout",
+                                                        MethodType.methodType(requestBuilder, Duration.class));
+                api.header = lookup.findVirtual(requestBuilder, "header",
+                                                MethodType.methodType(requestBuilder, String.class, String.class));
+                api.method = lookup.findVirtual(requestBuilder, "method",
+                                                MethodType.methodType(requestBuilder, String.class, bodyPublisher));
+                api.buildRequest = lookup.findVirtual(requestBuilder, "build", MethodType.methodType(request));
+                api.noBody = lookup.findStatic(bodyPublishers, "noBody", MethodType.methodType(bodyPublisher));
+                api.ofByteArray = lookup.findStatic(bodyPublishers, "ofByteArray",
+                                                    MethodType.methodType(bodyPublisher, byte[].class,
+                                                                          int.class, int.class));
+                api.send = lookup.findVirtual(client, "send", MethodType.methodType(response, request, bodyHandler));
+                api.statusCode = lookup.findVirtual(response, "statusCode", MethodType.methodType(int.class));
+                api.headers = lookup.findVirtual(response, "headers", MethodType.methodType(httpHeaders));
+                api.headerMap = lookup.findVirtual(httpHeaders, "map", MethodType.methodType(Map.class));
+                api.body = lookup.findVirtual(response, "body", MethodType.methodType(Object.class));
+                api.stringBodyHandler = lookup.findStatic(bodyHandlers, "ofString",
+                                                          MethodType.methodType(bodyHandler, Charset.class))
+                                              .invoke(StandardCharsets.UTF_8);
+                api.connectTimeoutClass = Class.forName("java.net.http.HttpConnectTimeoutException");
+                return api;
+            } catch (Throwable t) {
+                // before Java 11, or the java.net.http module is not present
+                return null;
+            }
+        }
+    }
+}
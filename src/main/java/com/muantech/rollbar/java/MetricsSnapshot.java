@@ -0,0 +1,244 @@
+package com.muantech.rollbar.java;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.muantech.rollbar.java.NotifierMetrics.DropReason;
+
+/**
+ * <p>Point in time view of a notifier's metrics, as returned from
+ * {@link RollbarNotifier#getMetricsSnapshot()}.  All counts are totals since the notifier was
+ * constructed.</p>
+ */
+public class MetricsSnapshot {
+    private final long notificationCount;
+    private final long payloadBytes;
+    private final LatencySnapshot buildLatency;
+    private final long requestCount;
+    private final long failedRequestCount;
+    private final Map<Integer, Long> statusCodeCounts;
+    private final LatencySnapshot sendLatency;
+    private final long retryCount;
+    private final Map<DropReason, Long> droppedCounts;
+    private final int queueDepth;
+    private final long traceCacheHitCount;
+    private final long traceCacheMissCount;
+    private final long connectionsOpened;
+    private final long connectionsReused;
+    private final long connectionsEvicted;
+    private final int idleConnectionCount;
+
+    MetricsSnapshot(long notificationCount, long payloadBytes, LatencySnapshot buildLatency,
+                    long requestCount, long failedRequestCount, Map<Integer, Long> statusCodeCounts,
+                    LatencySnapshot sendLatency, long retryCount, Map<DropReason, Long> droppedCounts,
+                    int queueDepth, long traceCacheHitCount, long traceCacheMissCount,
+                    PooledHttpTransport pool) {
+        this.notificationCount = notificationCount;
+        this.payloadBytes = payloadBytes;
+        this.buildLatency = buildLatency;
+        this.requestCount = requestCount;
+        this.failedRequestCount = failedRequestCount;
+        this.statusCodeCounts = Collections.unmodifiableMap(statusCodeCounts);
+        this.sendLatency = sendLatency;
+        this.retryCount = retryCount;
+        this.droppedCounts = Collections.unmodifiableMap(droppedCounts);
+        this.queueDepth = queueDepth;
+        this.traceCacheHitCount = traceCacheHitCount;
+        this.traceCacheMissCount = traceCacheMissCount;
+        if (pool == null) {
+            this.connectionsOpened = 0;
+            this.connectionsReused = 0;
+            this.connectionsEvicted = 0;
+            this.idleConnectionCount = 0;
+        } else {
+            this.connectionsOpened = pool.getConnectionsOpened();
+            this.connectionsReused = pool.getConnectionsReused();
+            this.connectionsEvicted = pool.getConnectionsEvicted();
+            this.idleConnectionCount = pool.getIdleConnectionCount();
+        }
+    }
+
+    /**
+     * Returns the number of notification payloads built.
+     *
+     * @return Number of payloads built
+     */
+    public long getNotificationCount() {
+        return notificationCount;
+    }
+
+    /**
+     * Returns the total size of all serialized payloads (before any compression).
+     *
+     * @return Total payload bytes
+     */
+    public long getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    public LatencySnapshot getBuildLatency() {
+        return buildLatency;
+    }
+
+    /**
+     * Returns the number of http request attempts, including retries and failed attempts.
+     *
+     * @return Number of requests
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Returns the number of http request attempts which received no response (I/O failure).
+     *
+     * @return Number of failed requests
+     */
+    public long getFailedRequestCount() {
+        return failedRequestCount;
+    }
+
+    /**
+     * Returns the number of responses received for each http status code.
+     *
+     * @return Map of status code to response count, sorted by status code
+     */
+    public Map<Integer, Long> getStatusCodeCounts() {
+        return statusCodeCounts;
+    }
+
+    public LatencySnapshot getSendLatency() {
+        return sendLatency;
+    }
+
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * Returns the number of notifications dropped for each reason.
+     *
+     * @return Map of reason to dropped count, every reason is present
+     */
+    public Map<DropReason, Long> getDroppedCounts() {
+        return droppedCounts;
+    }
+
+    /**
+     * Returns the number of notifications waiting in the async queue at the time of the snapshot.
+     *
+     * @return Queue depth, always {@code 0} if async delivery is not enabled
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getTraceCacheHitCount() {
+        return traceCacheHitCount;
+    }
+
+    public long getTraceCacheMissCount() {
+        return traceCacheMissCount;
+    }
+
+    /**
+     * Returns the number of connections opened by a {@link PooledHttpTransport}.  Other transports
+     * manage their connections internally, for them this and the other connection counts are
+     * always {@code 0}.
+     *
+     * @return Number of connections opened
+     */
+    public long getConnectionsOpened() {
+        return connectionsOpened;
+    }
+
+    /**
+     * Returns the number of requests sent on a reused pooled connection.
+     *
+     * @return Number of connection reuses
+     */
+    public long getConnectionsReused() {
+        return connectionsReused;
+    }
+
+    /**
+     * Returns the number of pooled connections closed after being idle for the idle timeout.
+     *
+     * @return Number of evicted connections
+     */
+    public long getConnectionsEvicted() {
+        return connectionsEvicted;
+    }
+
+    /**
+     * Returns the number of connections idle in the pool at the time of the snapshot.
+     *
+     * @return Number of idle connections
+     */
+    public int getIdleConnectionCount() {
+        return idleConnectionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "notifications=" + notificationCount + ", payloadBytes=" + payloadBytes +
+                 ", build={" + buildLatency + "}, requests=" + requestCount +
+                 ", failedRequests=" + failedRequestCount + ", statusCodes=" + statusCodeCounts +
+                 ", send={" + sendLatency + "}, retries=" + retryCount + ", dropped=" + droppedCounts +
+                 ", queueDepth=" + queueDepth + ", traceCacheHits=" + traceCacheHitCount +
+                 ", traceCacheMisses=" + traceCacheMissCount + ", connectionsOpened=" + connectionsOpened +
+                 ", connectionsReused=" + connectionsReused + ", connectionsEvicted=" + connectionsEvicted +
+                 ", idleConnections=" + idleConnectionCount;
+    }
+
+    /**
+     * Distribution of recorded latencies.  Percentiles are accurate to within 12.5%.
+     */
+    public static class LatencySnapshot {
+        private final long count;
+        private final long meanNanos;
+        private final long p50Nanos;
+        private final long p90Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        LatencySnapshot(long count, long meanNanos, long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos) {
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanNanos() {
+            return meanNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP90Nanos() {
+            return p90Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", meanNanos=" + meanNanos + ", p50Nanos=" + p50Nanos +
+                     ", p90Nanos=" + p90Nanos + ", p99Nanos=" + p99Nanos + ", maxNanos=" + maxNanos;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.muantech.rollbar.java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.threadly.concurrent.ConfigurableThreadFactory;
+import org.threadly.concurrent.SingleThreadScheduler;
+import org.threadly.util.Clock;
+
+/**
+ * <p>Collects notifications into batches, handing a batch off once it reaches a maximum size or
+ * once the oldest notification in it has waited a maximum delay (whichever comes first).</p>
+ *
+ * <p>A batch taken out of the batcher is counted as in flight until the handler has accepted it,
+ * so that {@link #flush(long)} does not return while a batch is in neither the batcher nor
+ * wherever the handler passes it on to.</p>
+ *
+ * @param <T> Type of item being batched
+ */
+class NotificationBatcher<T> {
+    private final int maxBatchSize;
+    private final long maxBatchDelayMillis;
+    private final Consumer<List<T>> batchHandler;
+    private final SingleThreadScheduler scheduler;
+    private final Object batchLock = new Object();
+    private List<T> currentBatch = null;
+    private int handoffsInFlight = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructs a new batcher.
+     *
+     * @param maxBatchSize Maximum number of items in a batch
+     * @param maxBatchDelayMillis Maximum time the first item in a batch will wait before the batch is handed off
+     * @param batchHandler Consumer to hand completed batches to, expected to not block
+     */
+    NotificationBatcher(int maxBatchSize, long maxBatchDelayMillis, Consumer<List<T>> batchHandler) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be >= 1");
+        } else if (maxBatchDelayMillis < 0) {
+            throw new IllegalArgumentException("maxBatchDelayMillis must be >= 0");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayMillis = maxBatchDelayMillis;
+        this.batchHandler = batchHandler;
+        this.scheduler = new SingleThreadScheduler(
+            new ConfigurableThreadFactory("rollbar-batcher-", false, true, Thread.NORM_PRIORITY, null, null));
+    }
+
+    public void add(T item) {
+        List<T> fullBatch = null;
+        synchronized (batchLock) {
+            if (closed) {
+                // no more batching, let the handler decide what to do with it
+                fullBatch = Collections.singletonList(item);
+            } else {
+                if (currentBatch == null) {
+                    List<T> newBatch = new ArrayList<T>(Math.min(maxBatchSize, 64));
+                    currentBatch = newBatch;
+                    scheduler.schedule(() -> batchExpired(newBatch), maxBatchDelayMillis);
+                }
+                currentBatch.add(item);
+                if (currentBatch.size() >= maxBatchSize) {
+                    fullBatch = currentBatch;
+                    currentBatch = null;
+                }
+            }
+            if (fullBatch != null) {
+                handoffsInFlight++;
+            }
+        }
+        if (fullBatch != null) {
+            handOff(fullBatch);
+        }
+    }
+
+    private void batchExpired(List<T> batch) {
+        synchronized (batchLock) {
+            if (currentBatch != batch) {
+                // already handed off due to size or flush
+                return;
+            }
+            currentBatch = null;
+            handoffsInFlight++;
+        }
+        handOff(batch);
+    }
+
+    /**
+     * Passes a batch taken out of the batcher (and counted in {@code handoffsInFlight}) to the
+     * handler, waking any flush waiting on it once done.
+     */
+    private void handOff(List<T> batch) {
+        try {
+            batchHandler.accept(batch);
+        } finally {
+            synchronized (batchLock) {
+                if (--handoffsInFlight == 0) {
+                    batchLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands off the current partial batch (if any) immediately, and waits for batches already
+     * being handed off by other threads to reach the handler.
+     *
+     * @param timeoutMillis Maximum time to wait in milliseconds
+     * @return {@code true} if every batch has been handed off, {@code false} if the timeout was reached first
+     * @throws InterruptedException Thrown if interrupted while waiting
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = Clock.accurateForwardProgressingMillis() + timeoutMillis;
+        List<T> batch;
+        synchronized (batchLock) {
+            batch = currentBatch;
+            currentBatch = null;
+            if (batch != null) {
+                handoffsInFlight++;
+            }
+        }
+        if (batch != null) {
+            handOff(batch);
+        }
+        synchronized (batchLock) {
+            while (handoffsInFlight > 0) {
+                long remaining = deadline - Clock.accurateForwardProgressingMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                batchLock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hands off the current partial batch and stops the batch timer.
+     */
+    public void close() {
+        List<T> batch;
+        synchronized (batchLock) {
+            closed = true;
+            batch = currentBatch;
+            currentBatch = null;
+            if (batch != null) {
+                handoffsInFlight++;
+            }
+        }
+        if (batch != null) {
+            handOff(batch);
+        }
+        scheduler.shutdownNow();
+    }
+}
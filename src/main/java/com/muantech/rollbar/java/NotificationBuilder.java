@@ -1,23 +1,30 @@
 package com.muantech.rollbar.java;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.PrintStream;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.Consumer;
 
 import org.threadly.util.Clock;
 
-import com.eclipsesource.json.JsonArray;
+import com.eclipsesource.json.Json;
 import com.eclipsesource.json.JsonObject;
 
 public class NotificationBuilder {
     private static final String NOTIFIER_VERSION = "0.2.2";
     private static final boolean USE_THREADLY_CLOCK;
+    private static final ScratchPool<TraceScratch> TRACE_SCRATCH =
+        new ScratchPool<TraceScratch>(ScratchPool.DEFAULT_SIZE, TraceScratch::new, null);
+    private static final RollbarAttributeProvider DEFAULT_ATTRIBUTES = new RollbarAttributeAdapter();
+    private static final byte[] DEFAULT_PLATFORM_FIELDS = encodeFields((writer) -> {
+        writer.name("platform").value(RollbarAttributeAdapter.DEFAULT_PLATFORM);
+        writer.name("framework").value(RollbarAttributeAdapter.DEFAULT_FRAMEWORK);
+    });
 
     static {
         boolean useThreadlyClock;
@@ -31,11 +38,17 @@ public class NotificationBuilder {
         USE_THREADLY_CLOCK = useThreadlyClock;
     }
 
-    private final String accessToken;
-    private final String environment;
+    // values which are the same in every payload, encoded once
+    private final byte[] accessTokenFields;
+    private final byte[] environmentFields;
+    private final String serverRoot;
+    private volatile byte[] serverFields;
+    // set once the server identity will no longer change
+    private volatile boolean serverSettled = false;
 
-    private final JsonObject notifierData;
-    private final JsonObject serverData;
+    private volatile TraceCache traceCache = new TraceCache(TraceCache.DEFAULT_MAX_ENTRIES,
+                                                            TraceCache.DEFAULT_MAX_BYTES);
+    private volatile TraceBudget traceBudget = null;
 
     /**
      * Constructs a new rollbar notification builder.
@@ -45,290 +58,586 @@ public class NotificationBuilder {
      * @param codePackageRoot Optional String to represent the root package, for example "com.fullcontact"
      */
     protected NotificationBuilder(String apiKey, String environment, String codePackageRoot) {
-        this.accessToken = apiKey;
-        this.environment = environment;
+        serverRoot = codePackageRoot != null && ! codePackageRoot.isEmpty() ? codePackageRoot : null;
+
+        accessTokenFields = encodeFields((writer) -> writer.name("access_token").value(apiKey));
+        environmentFields = encodeFields((writer) -> {
+            writer.name("environment").value(environment);
+            writer.name("language").value("java");
+        });
+
+        // the local host is resolved in the background, this never waits for it
+        ServerIdentity server = ServerIdentity.fromEnvironment();
+        if (server != null) {
+            serverSettled = true;
+        } else {
+            server = ServerIdentity.settledLocalHost();
+            if (server != null) {
+                serverSettled = true;
+            } else {
+                server = ServerIdentity.fallback();
+            }
+        }
+        serverFields = encodeServerFields(server);
+    }
 
-        notifierData = getNotifierData();
-        serverData = getServerData(codePackageRoot);
+    /**
+     * Sets the host name and address reported for the server, instead of the resolved local host.
+     *
+     * @param host Host name, or {@code null} to omit it
+     * @param ip Host address, or {@code null} to omit it
+     */
+    void setServerIdentity(String host, String ip) {
+        synchronized (this) {
+            serverFields = encodeServerFields(new ServerIdentity(host, ip));
+            serverSettled = true;
+        }
+    }
+
+    /**
+     * Switches to the resolved local host identity once its resolution has settled.
+     */
+    private void refreshServerFields() {
+        ServerIdentity server = ServerIdentity.settledLocalHost();
+        if (server != null) {
+            synchronized (this) {
+                if (! serverSettled) {
+                    serverFields = encodeServerFields(server);
+                    serverSettled = true;
+                }
+            }
+        }
+    }
+
+    private byte[] encodeServerFields(ServerIdentity server) {
+        return encodeFields((writer) -> {
+            writer.name("server").beginObject();
+            writer.fieldIfNotNull("host", server.getHost());
+            writer.fieldIfNotNull("ip", server.getIp());
+            writer.fieldIfNotNull("root", serverRoot);
+            writer.endObject();
+
+            writer.name("notifier").beginObject();
+            writer.name("name").value("rollbar-java");
+            writer.name("version").value(NOTIFIER_VERSION);
+            writer.endObject();
+        });
+    }
+
+    /**
+     * Encodes object members once, so they can be spliced into payloads with
+     * {@link Utf8JsonWriter#rawFields(byte[], int, int)}.
+     *
+     * @param fieldWriter Writes the members into an open object
+     * @return Encoded members, without the enclosing braces
+     */
+    static byte[] encodeFields(Consumer<Utf8JsonWriter> fieldWriter) {
+        Utf8JsonWriter writer = new Utf8JsonWriter(256);
+        writer.beginObject();
+        fieldWriter.accept(writer);
+        writer.endObject();
+        return Arrays.copyOfRange(writer.getBuffer(), 1, writer.size() - 1);
     }
 
+    /**
+     * Replaces the cache used to avoid re-encoding frequently reported stack traces.
+     *
+     * @param maxEntries Maximum number of traces to cache, or {@code 0} to disable caching
+     * @param maxBytes Maximum estimated memory the cache may retain
+     */
+    void setTraceCacheLimits(int maxEntries, long maxBytes) {
+        traceCache = maxEntries > 0 ? new TraceCache(maxEntries, maxBytes) : null;
+    }
+
+    /**
+     * Sets the budget for the encoded size of each notification's traces.
+     *
+     * @param maxBytes Maximum encoded size of the trace chain, or {@code 0} for no limit
+     * @param maxFramesPerTrace Maximum number of frames to keep for each throwable in the chain
+     */
+    void setTraceBudget(int maxBytes, int maxFramesPerTrace) {
+        traceBudget = maxBytes > 0 ? new TraceBudget(maxBytes, maxFramesPerTrace) : null;
+        // cached traces were encoded under the previous budget
+        TraceCache cache = traceCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Returns the current trace cache.
+     *
+     * @return Trace cache or {@code null} if caching is disabled
+     */
+    TraceCache getTraceCache() {
+        return traceCache;
+    }
+
+    /**
+     * Builds the notification payload as a json object.  This is kept for compatibility, the
+     * notifier itself uses {@link #write(Utf8JsonWriter, String, String, Throwable, RollbarAttributeProvider)}
+     * to avoid building an object tree.
+     *
+     * @param level Level of the notification
+     * @param message Message to report, or {@code null}
+     * @param throwable Throwable to report, or {@code null}
+     * @param attributeProvider Provider for additional attributes, or {@code null}
+     * @return Json payload to send to rollbar
+     */
     public JsonObject build(String level, String message, Throwable throwable,
                             RollbarAttributeProvider attributeProvider) {
+        Utf8JsonWriter writer = new Utf8JsonWriter();
+        write(writer, level, message, throwable, attributeProvider);
+        return Json.parse(new String(writer.getBuffer(), 0, writer.size(), StandardCharsets.UTF_8)).asObject();
+    }
+
+    /**
+     * Returns the current time as used for notification timestamps.
+     *
+     * @return Current time in milliseconds since the epoch
+     */
+    static long currentTimeMillis() {
+        return USE_THREADLY_CLOCK ? Clock.lastKnownTimeMillis() : System.currentTimeMillis();
+    }
+
+    /**
+     * Streams the notification payload directly as UTF-8 json into the provided writer, timestamped
+     * with the current time.
+     *
+     * @param writer Writer to append the payload to
+     * @param level Level of the notification
+     * @param message Message to report, or {@code null}
+     * @param throwable Throwable to report, or {@code null}
+     * @param attributeProvider Provider for additional attributes, or {@code null}
+     */
+    void write(Utf8JsonWriter writer, String level, String message, Throwable throwable,
+               RollbarAttributeProvider attributeProvider) {
+        write(writer, level, message, throwable, attributeProvider, currentTimeMillis(), null, 1);
+    }
+
+    /**
+     * Streams the notification payload directly as UTF-8 json into the provided writer.
+     *
+     * @param writer Writer to append the payload to
+     * @param level Level of the notification
+     * @param message Message to report, or {@code null}
+     * @param throwable Throwable to report, or {@code null}
+     * @param attributeProvider Provider for additional attributes, or {@code null}
+     * @param timestampMillis Time the notification occurred in milliseconds since the epoch
+     * @param callerFrame Location a message without a throwable was reported from, or {@code null}
+     * @param sampleRate Rate the notification was sampled at, reported as {@code custom.sample_rate} if below {@code 1}
+     */
+    void write(Utf8JsonWriter writer, String level, String message, Throwable throwable,
+               RollbarAttributeProvider attributeProvider, long timestampMillis,
+               StackTraceElement callerFrame, double sampleRate) {
         if (attributeProvider == null) {
-            attributeProvider = new RollbarAttributeAdapter();
+            attributeProvider = DEFAULT_ATTRIBUTES;
         }
-        JsonObject payload = new JsonObject();
+        writer.beginObject();
 
         // access token
-        payload.add("access_token", this.accessToken);
+        writer.rawFields(accessTokenFields, 0, accessTokenFields.length);
 
         // data
-        JsonObject data = new JsonObject();
+        writer.name("data").beginObject();
 
         // general values
-        data.add("environment", this.environment);
-        data.add("level", level);
-        data.add("platform", attributeProvider.getPlatform());
-        data.add("framework", attributeProvider.getFramework());
-        data.add("language", "java");
-        data.add("timestamp", (USE_THREADLY_CLOCK ? Clock.lastKnownTimeMillis() : System.currentTimeMillis()) / 1000);
+        writer.rawFields(environmentFields, 0, environmentFields.length);
+        RollbarAttributes.Encoded encoded = attributeProvider instanceof RollbarAttributes ?
+                                              ((RollbarAttributes) attributeProvider).encodedForWrite() : null;
+        if (encoded != null) {
+            writeEncoded(writer, encoded, level, message, throwable, timestampMillis, callerFrame, sampleRate);
+            return;
+        }
+        String platform = attributeProvider.getPlatform();
+        String framework = attributeProvider.getFramework();
+        if (RollbarAttributeAdapter.DEFAULT_PLATFORM.equals(platform) &&
+            RollbarAttributeAdapter.DEFAULT_FRAMEWORK.equals(framework)) {
+            writer.rawFields(DEFAULT_PLATFORM_FIELDS, 0, DEFAULT_PLATFORM_FIELDS.length);
+        } else {
+            writer.name("platform").value(platform);
+            writer.name("framework").value(framework);
+        }
+        writer.name("level").value(level);
+        writer.name("timestamp").value(timestampMillis / 1000);
 
         // message data
-        data.add("body", getBody(message, throwable));
+        writer.name("body");
+        writeBody(writer, message, throwable, callerFrame);
 
         // request data
-        JsonObject requestData = getRequestData(attributeProvider);
-        if (requestData != null) {
-            data.add("request", requestData);
-        }
+        writeRequestData(writer, attributeProvider);
 
         // custom data
-        JsonObject customData = new JsonObject();
         Map<String, String> customFields = attributeProvider.getCustomFields();
-        if (customFields != null) {
-            for (Entry<String, String> entry : customFields.entrySet()) {
-                customData.add(entry.getKey(), entry.getValue());
+        boolean hasCustomFields = customFields != null && ! customFields.isEmpty();
+        boolean sampled = sampleRate < 1;
+        if (hasCustomFields || message != null || sampled) {
+            writer.name("custom").beginObject();
+            if (hasCustomFields) {
+                writeMap(writer, customFields);
             }
-        }
 
-        // log message
-        if (message != null) {
-            customData.add("message", message);
-        }
+            // log message
+            writer.fieldIfNotNull("message", message);
 
-        if (! customData.isEmpty()) {
-            data.add("custom", customData);
+            // allows counts to be extrapolated from the sampled notifications
+            if (sampled) {
+                writer.name("sample_rate").value(sampleRate);
+            }
+            writer.endObject();
         }
 
         // person data
-        JsonObject personData = getPersonData(attributeProvider);
-        if (personData != null) {
-            data.add("person", personData);
-        }
+        writePersonData(writer, attributeProvider);
 
         // client data
-        JsonObject clientData = getClientData(attributeProvider);
-        if (clientData != null) {
-            data.add("client", clientData);
+        writeClientData(writer, attributeProvider);
+
+        writeServerFields(writer);
+    }
+
+    /**
+     * Finishes a payload from the attributes' encoded members, after the general values which
+     * do not depend on them.
+     */
+    private void writeEncoded(Utf8JsonWriter writer, RollbarAttributes.Encoded encoded, String level,
+                              String message, Throwable throwable, long timestampMillis,
+                              StackTraceElement callerFrame, double sampleRate) {
+        writer.rawFields(encoded.platformFields, 0, encoded.platformFields.length);
+        writer.name("level").value(level);
+        writer.name("timestamp").value(timestampMillis / 1000);
+
+        writer.name("body");
+        writeBody(writer, message, throwable, callerFrame);
+
+        writeRawFields(writer, encoded.requestFields);
+
+        boolean hasCustomFields = encoded.customFields.length > 0;
+        boolean sampled = sampleRate < 1;
+        if (hasCustomFields || message != null || sampled) {
+            writer.name("custom").beginObject();
+            writeRawFields(writer, encoded.customFields);
+            writer.fieldIfNotNull("message", message);
+            if (sampled) {
+                writer.name("sample_rate").value(sampleRate);
+            }
+            writer.endObject();
         }
 
-        // server data
-        data.add("server", serverData);
+        writeRawFields(writer, encoded.personFields);
+        writeRawFields(writer, encoded.clientFields);
+
+        writeServerFields(writer);
+    }
 
-        // notifier data
-        data.add("notifier", notifierData);
+    private static void writeRawFields(Utf8JsonWriter writer, byte[] encodedFields) {
+        // nothing encoded means nothing to write, not even a separator
+        if (encodedFields.length > 0) {
+            writer.rawFields(encodedFields, 0, encodedFields.length);
+        }
+    }
 
-        payload.add("data", data);
+    /**
+     * Writes the server and notifier data and closes the payload.
+     */
+    private void writeServerFields(Utf8JsonWriter writer) {
+        if (! serverSettled) {
+            refreshServerFields();
+        }
+        byte[] serverFields = this.serverFields;
+        writer.rawFields(serverFields, 0, serverFields.length);
 
-        return payload;
+        writer.endObject(); // data
+        writer.endObject(); // payload
     }
 
-    private JsonObject getBody(String message, Throwable original) {
-        JsonObject body = new JsonObject();
+    private void writeBody(Utf8JsonWriter writer, String message, Throwable original,
+                           StackTraceElement callerFrame) {
+        writer.beginObject();
+
+        if (original != null) {
+            writer.name("trace_chain").beginArray();
+            writeTraceChain(writer, original);
+            writer.endArray();
+        }
+
+        if (original == null && message != null) {
+            writer.name("message").beginObject();
+            writer.name("body").value(message);
+            if (callerFrame != null) {
+                writer.name("frame");
+                writeFrame(writer, callerFrame);
+            }
+            writer.endObject();
+        }
 
-        Throwable throwable = original;
+        writer.endObject();
+    }
 
-        if (throwable != null) {
-            List<JsonObject> traces = new ArrayList<JsonObject>(8);
+    private void writeTraceChain(Utf8JsonWriter writer, Throwable throwable) {
+        // a throwable notified from within a getMessage or toString of the one being written gets its own
+        TraceScratch scratch = TRACE_SCRATCH.acquire();
+        try {
+            List<Throwable> chain = scratch.chain;
             do {
-                traces.add(0, createTrace(throwable));
+                chain.add(throwable);
                 throwable = throwable.getCause();
             } while (throwable != null);
-            JsonArray traceChain = new JsonArray();
-            traces.forEach((t) -> traceChain.add(t));
-            body.add("trace_chain", traceChain);
-        }
 
-        if (original == null && message != null) {
-            JsonObject messageBody = new JsonObject();
-            messageBody.add("body", message);
-            body.add("message", messageBody);
+            TraceBudget budget = traceBudget;
+            if (budget != null) {
+                writeBudgetedTraceChain(writer, chain, budget, scratch.traceWriter);
+            } else {
+                writeTraceChain(writer, chain, scratch);
+            }
+        } finally {
+            scratch.clear();
+            TRACE_SCRATCH.release(scratch);
         }
+    }
+
+    private void writeTraceChain(Utf8JsonWriter writer, List<Throwable> chain, TraceScratch scratch) {
+
+        // rollbar expects the root cause first
+        TraceCache cache = traceCache;
+        TraceCache.TraceKey causeKey = null;
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            Throwable current = chain.get(i);
+            StackTraceElement[] elements = current.getStackTrace();
+            if (cache == null) {
+                writeTrace(writer, current, elements, scratch);
+                continue;
+            }
 
-        return body;
+            // raw text includes suppressed exceptions and every cause, so neither this nor any
+            // enclosing throwable can be keyed once suppressed exceptions are involved
+            TraceCache.TraceKey key = null;
+            if ((i == chain.size() - 1 || causeKey != null) && current.getSuppressed().length == 0) {
+                key = new TraceCache.TraceKey(current, elements, causeKey);
+            }
+            causeKey = key;
+
+            byte[] encodedTrace = key == null ? null : cache.get(key);
+            if (encodedTrace == null) {
+                Utf8JsonWriter traceWriter = scratch.traceWriter;
+                traceWriter.reset();
+                writeTrace(traceWriter, current, elements, scratch);
+                encodedTrace = traceWriter.toByteArray();
+                if (key != null) {
+                    cache.put(key, encodedTrace);
+                }
+            }
+            writer.rawValue(encodedTrace, 0, encodedTrace.length);
+        }
     }
 
-    private JsonObject getRequestData(RollbarAttributeProvider attributeProvider) {
-        JsonObject requestData = new JsonObject();
+    /**
+     * Writes the trace chain within the budget.  Since how each trace is reduced depends on the
+     * whole chain, the chain is cached as a single entry under the key of the outermost throwable
+     * (which covers all of its causes).
+     */
+    private void writeBudgetedTraceChain(Utf8JsonWriter writer, List<Throwable> chain, TraceBudget budget,
+                                         Utf8JsonWriter chainWriter) {
+        TraceCache cache = traceCache;
+        TraceCache.TraceKey key = null;
+        if (cache != null) {
+            for (int i = chain.size() - 1; i >= 0; i--) {
+                Throwable current = chain.get(i);
+                if (current.getSuppressed().length > 0) {
+                    key = null;
+                    break;
+                }
+                key = new TraceCache.TraceKey(current, current.getStackTrace(), key);
+            }
+        }
 
-        // url: full URL where this event occurred
-        String url = attributeProvider.getUrl();
-        if (url != null) {
-            requestData.add("url", url);
+        byte[] encodedChain = key == null ? null : cache.get(key);
+        if (encodedChain == null) {
+            chainWriter.reset();
+            budget.writeTraces(chainWriter, chain);
+            encodedChain = chainWriter.toByteArray();
+            if (key != null) {
+                cache.put(key, encodedChain);
+            }
         }
+        writer.rawValue(encodedChain, 0, encodedChain.length);
+    }
 
-        // method: the request method
+    static void writeRequestData(Utf8JsonWriter writer, RollbarAttributeProvider attributeProvider) {
+        String url = attributeProvider.getUrl();
         String method = attributeProvider.getHttpMethod();
-        if (method != null) {
-            requestData.add("method", method);
+        Map<String, String> headers = attributeProvider.getHeaders();
+        Map<String, String> params = attributeProvider.getParams();
+        String query = attributeProvider.getQuery();
+        String userIP = attributeProvider.getUserIp();
+        String sessionId = attributeProvider.getSessionId();
+        String protocol = attributeProvider.getProtocol();
+        String requestId = attributeProvider.getRequestId();
+
+        boolean hasHeaders = headers != null && ! headers.isEmpty();
+        boolean hasParams = params != null && ! params.isEmpty();
+        if (url == null && method == null && ! hasHeaders && ! hasParams && query == null &&
+            userIP == null && sessionId == null && protocol == null && requestId == null) {
+            return;
         }
 
+        writer.name("request").beginObject();
+
+        // url: full URL where this event occurred
+        writer.fieldIfNotNull("url", url);
+
+        // method: the request method
+        writer.fieldIfNotNull("method", method);
+
         // headers
-        Map<String, String> headers = attributeProvider.getHeaders();
-        if (headers != null && ! headers.isEmpty()) {
-            JsonObject headersData = new JsonObject();
-            for (Entry<String, String> entry : headers.entrySet()) {
-                headersData.add(entry.getKey(), entry.getValue());
-            }
-            requestData.add("headers", headersData);
+        if (hasHeaders) {
+            writer.name("headers").beginObject();
+            writeMap(writer, headers);
+            writer.endObject();
         }
 
         // params
-        Map<String, String> params = attributeProvider.getParams();
-        if (params != null && ! params.isEmpty()) {
-            JsonObject paramsData = new JsonObject();
-            for (Entry<String, String> entry : params.entrySet()) {
-                paramsData.add(entry.getKey(), entry.getValue());
-            }
+        if (hasParams) {
             String key = method != null ? (method.equalsIgnoreCase("post") ? "POST" : "GET")
                                         : "parameters";
-            requestData.add(key, paramsData);
+            writer.name(key).beginObject();
+            writeMap(writer, params);
+            writer.endObject();
         }
 
         // query string
-        String query = attributeProvider.getQuery();
-        if (query != null) {
-            requestData.add("query_string", query);
-        }
+        writer.fieldIfNotNull("query_string", query);
 
         // user ip
-        String userIP = attributeProvider.getUserIp();
-        if (userIP != null) {
-            requestData.add("user_ip", userIP);
-        }
+        writer.fieldIfNotNull("user_ip", userIP);
 
         // sessionId
-        String sessionId = attributeProvider.getSessionId();
-        if (sessionId != null) {
-            requestData.add("session", sessionId);
-        }
+        writer.fieldIfNotNull("session", sessionId);
 
         // protocol
-        String protocol = attributeProvider.getProtocol();
-        if (protocol != null) {
-            requestData.add("protocol", protocol);
-        }
+        writer.fieldIfNotNull("protocol", protocol);
 
         // requestId
-        String requestId = attributeProvider.getRequestId();
-        if (requestId != null) {
-            requestData.add("id", requestId);
-        }
+        writer.fieldIfNotNull("id", requestId);
 
-        if (requestData.isEmpty()) {
-            return null;
-        } else {
-            return requestData;
-        }
+        writer.endObject();
     }
 
-    private JsonObject getClientData(RollbarAttributeProvider attributeProvider) {
-        JsonObject clientData = null;
-
+    static void writeClientData(Utf8JsonWriter writer, RollbarAttributeProvider attributeProvider) {
         String userAgent = attributeProvider.getUserAgent();
         if (userAgent != null) {
-            clientData = new JsonObject();
-
-            JsonObject javascript = new JsonObject();
-            javascript.add("browser", userAgent);
-
-            clientData.add("javascript", javascript);
+            writer.name("client").beginObject();
+            writer.name("javascript").beginObject();
+            writer.name("browser").value(userAgent);
+            writer.endObject();
+            writer.endObject();
         }
-
-        return clientData;
     }
 
-    private JsonObject getPersonData(RollbarAttributeProvider attributeProvider) {
-        JsonObject personData = null;
-
+    static void writePersonData(Utf8JsonWriter writer, RollbarAttributeProvider attributeProvider) {
         String id = attributeProvider.getUserId();
         String username = attributeProvider.getUsername();
         String email = attributeProvider.getUserEmail();
         if (id != null || username != null || email != null) {
-            personData = new JsonObject();
-
-            setIfNotNull("id", personData, id);
-            setIfNotNull("username", personData, username);
-            setIfNotNull("email", personData, email);
+            writer.name("person").beginObject();
+            writer.fieldIfNotNull("id", id);
+            writer.fieldIfNotNull("username", username);
+            writer.fieldIfNotNull("email", email);
+            writer.endObject();
         }
-        return personData;
-    }
-
-    private JsonObject getNotifierData() {
-        JsonObject notifier = new JsonObject();
-        notifier.add("name", "rollbar-java");
-        notifier.add("version", NOTIFIER_VERSION);
-        return notifier;
     }
 
-    private JsonObject getServerData(String codePackageRoot) {
-        InetAddress localhost;
-        try {
-            localhost = InetAddress.getLocalHost();
-        } catch (UnknownHostException e) {
-            throw new RuntimeException(e);
+    static void writeMap(Utf8JsonWriter writer, Map<String, String> map) {
+        if (map instanceof CompactStringMap) {
+            // no entry objects needed
+            CompactStringMap compactMap = (CompactStringMap) map;
+            for (int i = 0; i < compactMap.size(); i++) {
+                writer.name(compactMap.keyAt(i)).value(compactMap.valueAt(i));
+            }
+            return;
         }
-
-        String host = localhost.getHostName();
-        String ip = localhost.getHostAddress();
-
-        JsonObject notifier = new JsonObject();
-        notifier.add("host", host);
-        notifier.add("ip", ip);
-        if (codePackageRoot != null && ! codePackageRoot.isEmpty()) {
-            notifier.add("root", codePackageRoot);
+        for (Entry<String, String> entry : map.entrySet()) {
+            // a null key can not be written as a json name, compact maps (async capture) skip it too
+            if (entry.getKey() != null) {
+                writer.name(entry.getKey()).value(entry.getValue());
+            }
         }
-        return notifier;
     }
 
-    private void setIfNotNull(String jsonKey, JsonObject object, String value) {
-        if (value != null) {
-            object.add(jsonKey, value);
-        }
-    }
+    private void writeTrace(Utf8JsonWriter writer, Throwable throwable, StackTraceElement[] elements,
+                            TraceScratch scratch) {
+        writer.beginObject();
 
-    private JsonObject createTrace(Throwable throwable) {
-        JsonObject trace = new JsonObject();
-        JsonArray frames = new JsonArray();
+        writer.name("raw").value(scratch.renderRaw(throwable));
 
-        StackTraceElement[] elements = throwable.getStackTrace();
+        writer.name("frames").beginArray();
         for (int i = elements.length - 1; i >= 0; --i) {
-            StackTraceElement element = elements[i];
+            writeFrame(writer, elements[i]);
+        }
+        writer.endArray();
 
-            JsonObject frame = new JsonObject();
+        writeException(writer, throwable);
 
-            frame.add("class_name", element.getClassName());
-            frame.add("filename", element.getFileName());
-            frame.add("method", element.getMethodName());
+        writer.endObject();
+    }
 
-            if (element.getLineNumber() > 0) {
-                frame.add("lineno", element.getLineNumber());
-            }
+    static String rawStackTrace(Throwable throwable) {
+        StringWriter raw = new StringWriter(1024);
+        throwable.printStackTrace(new PrintWriter(raw));
+        return raw.toString();
+    }
 
-            frames.add(frame);
-        }
+    static void writeException(Utf8JsonWriter writer, Throwable throwable) {
+        writer.name("exception").beginObject();
+        writer.name("class").value(throwable.getClass().getName());
+        writer.name("message").value(throwable.getMessage());
+        writer.endObject();
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PrintStream ps = new PrintStream(baos);
+    static void writeFrame(Utf8JsonWriter writer, StackTraceElement element) {
+        writer.beginObject();
+        writer.name("class_name").value(element.getClassName());
+        writer.name("filename").value(element.getFileName());
+        writer.name("method").value(element.getMethodName());
 
-        throwable.printStackTrace(ps);
-        ps.close();
-        try {
-            baos.close();
-        } catch (IOException e) {
-            // not possible with a ByteArrayOutputStream
-            throw new RuntimeException(e);
+        if (element.getLineNumber() > 0) {
+            writer.name("lineno").value(element.getLineNumber());
         }
+        writer.endObject();
+    }
 
-        trace.add("raw", baos.toString());
-
-        JsonObject exceptionData = new JsonObject();
-        exceptionData.add("class", throwable.getClass().getName());
-        exceptionData.add("message", throwable.getMessage());
-
-        trace.add("frames", frames);
-        trace.add("exception", exceptionData);
+    /**
+     * Buffers reused from a pool for each trace chain written, so that a steady stream of
+     * notifications does not allocate new ones each time.  A raw text buffer which grew past
+     * {@link #MAX_RETAINED_CHARS} for an unusually large trace is dropped rather than kept.
+     */
+    private static class TraceScratch {
+        private static final int MAX_RETAINED_CHARS = 64 * 1024;
+
+        private final ArrayList<Throwable> chain = new ArrayList<Throwable>(8);
+        private final Utf8JsonWriter traceWriter = new Utf8JsonWriter(4096);
+        private StringWriter raw = new StringWriter(1024);
+        private PrintWriter rawPrinter = new PrintWriter(raw);
+
+        /**
+         * Renders the stack trace as {@link Throwable#printStackTrace()} does.  The returned
+         * sequence is only valid until the next render.
+         */
+        private CharSequence renderRaw(Throwable throwable) {
+            StringBuffer buffer = raw.getBuffer();
+            buffer.setLength(0);
+            throwable.printStackTrace(rawPrinter);
+            rawPrinter.flush();
+            return buffer;
+        }
 
-        return trace;
+        private void clear() {
+            chain.clear();
+            if (raw.getBuffer().capacity() > MAX_RETAINED_CHARS) {
+                raw = new StringWriter(1024);
+                rawPrinter = new PrintWriter(raw);
+            }
+        }
     }
-}
\ No newline at end of file
+}
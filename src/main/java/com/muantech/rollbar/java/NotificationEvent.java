@@ -0,0 +1,69 @@
+package com.muantech.rollbar.java;
+
+import com.muantech.rollbar.java.RollbarNotifier.Level;
+
+/**
+ * <p>A notification to report, as published into a {@link NotificationSubscriber} or handed off
+ * from a logging framework through an {@link AppenderDispatcher}.</p>
+ */
+public class NotificationEvent {
+    private final Level level;
+    private final String message;
+    private final Throwable throwable;
+    private final RollbarAttributeProvider attributeProvider;
+    private final StackTraceElement callerFrame;
+
+    /**
+     * Constructs a new event.
+     *
+     * @param level Level of the notification
+     * @param message Message to report, or {@code null}
+     * @param throwable Throwable to report, or {@code null}
+     * @param attributeProvider Provider for additional attributes, or {@code null}
+     */
+    public NotificationEvent(Level level, String message, Throwable throwable,
+                             RollbarAttributeProvider attributeProvider) {
+        this(level, message, throwable, attributeProvider, null);
+    }
+
+    /**
+     * Constructs a new event with a known location.
+     *
+     * @param level Level of the notification
+     * @param message Message to report, or {@code null}
+     * @param throwable Throwable to report, or {@code null}
+     * @param attributeProvider Provider for additional attributes, or {@code null}
+     * @param callerFrame Location the event was raised from (reported when there is no throwable), or {@code null}
+     */
+    public NotificationEvent(Level level, String message, Throwable throwable,
+                             RollbarAttributeProvider attributeProvider, StackTraceElement callerFrame) {
+        if (null == level)
+            throw new NullPointerException("level");
+
+        this.level = level;
+        this.message = message;
+        this.throwable = throwable;
+        this.attributeProvider = attributeProvider;
+        this.callerFrame = callerFrame;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+    public RollbarAttributeProvider getAttributeProvider() {
+        return attributeProvider;
+    }
+
+    public StackTraceElement getCallerFrame() {
+        return callerFrame;
+    }
+}
@@ -0,0 +1,180 @@
+package com.muantech.rollbar.java;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.muantech.rollbar.java.RollbarNotifier.Level;
+
+/**
+ * <p>Sends only a fraction of notifications, decided before anything is captured or built so that
+ * sampled out notifications cost next to nothing.  Rates are configured per {@link Level}, and
+ * may be overridden per throwable class (which also applies to its subclasses, the most specific
+ * configured class wins).  By default every rate is {@code 1.0}.</p>
+ *
+ * <p>Notifications sent at a rate below {@code 1.0} carry it as {@code custom.sample_rate}, so
+ * the real number of occurrences can be estimated by dividing by the rate.</p>
+ *
+ * <p>In {@link Mode#REQUEST_ID} mode the decision is a hash of the notification's
+ * {@link RollbarAttributeProvider#getRequestId()}, so every notification for one request (at the
+ * same or a lower rate) is kept or dropped together.  Notifications without a request id are
+ * sampled randomly.</p>
+ */
+public class NotificationSampler {
+    public enum Mode {
+        /** Each notification is independently kept with the probability of its rate */
+        RANDOM,
+        /** Notifications are kept based on a hash of their request id */
+        REQUEST_ID
+    }
+
+    private final LongAdder keptCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private volatile double[] levelRates;
+    private volatile Map<Class<?>, Double> throwableRates = null;
+    private volatile Mode mode = Mode.RANDOM;
+
+    /**
+     * Constructs a new sampler which keeps everything until rates are configured.
+     */
+    public NotificationSampler() {
+        double[] rates = new double[Level.values().length];
+        Arrays.fill(rates, 1.0);
+        levelRates = rates;
+    }
+
+    private static void checkRate(double rate) {
+        if (! (rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("rate must be between 0 and 1");
+        }
+    }
+
+    /**
+     * Sets the rate notifications of a level are kept at.
+     *
+     * @param level Level to set the rate of
+     * @param rate Fraction of notifications to keep, from {@code 0.0} (none) to {@code 1.0} (all)
+     */
+    public synchronized void setLevelRate(Level level, double rate) {
+        if (null == level)
+            throw new NullPointerException("level");
+        checkRate(rate);
+
+        double[] rates = levelRates.clone();
+        rates[level.ordinal()] = rate;
+        levelRates = rates;
+    }
+
+    /**
+     * Sets the rate notifications of a throwable class (or its subclasses) are kept at, regardless
+     * of their level.
+     *
+     * @param throwableClass Class of throwable to set the rate of
+     * @param rate Fraction of notifications to keep, from {@code 0.0} (none) to {@code 1.0} (all)
+     */
+    public synchronized void setThrowableRate(Class<? extends Throwable> throwableClass, double rate) {
+        if (null == throwableClass)
+            throw new NullPointerException("throwableClass");
+        checkRate(rate);
+
+        Map<Class<?>, Double> rates = throwableRates == null ?
+            new HashMap<Class<?>, Double>() : new HashMap<Class<?>, Double>(throwableRates);
+        rates.put(throwableClass, rate);
+        throwableRates = rates;
+    }
+
+    /**
+     * Sets how the keep or drop decision is made.
+     *
+     * @param mode Sampling mode, {@link Mode#RANDOM} by default
+     */
+    public void setMode(Mode mode) {
+        if (null == mode)
+            throw new NullPointerException("mode");
+
+        this.mode = mode;
+    }
+
+    /**
+     * Returns the rate a notification is kept at.
+     *
+     * @param level Level of the notification
+     * @param throwable Throwable being reported, or {@code null}
+     * @return Rate between {@code 0.0} and {@code 1.0}
+     */
+    public double getSampleRate(Level level, Throwable throwable) {
+        Map<Class<?>, Double> throwableRates = this.throwableRates;
+        if (throwableRates != null && throwable != null) {
+            for (Class<?> c = throwable.getClass(); c != Object.class; c = c.getSuperclass()) {
+                Double rate = throwableRates.get(c);
+                if (rate != null) {
+                    return rate;
+                }
+            }
+        }
+        return levelRates[level.ordinal()];
+    }
+
+    /**
+     * Decides if a notification sampled at the provided rate should be kept.
+     *
+     * @param rate Rate returned from {@link #getSampleRate(Level, Throwable)}
+     * @param attributeProvider Provider for the notification's attributes, or {@code null}
+     * @return {@code true} to send the notification
+     */
+    public boolean sample(double rate, RollbarAttributeProvider attributeProvider) {
+        boolean keep;
+        if (rate >= 1) {
+            keep = true;
+        } else if (rate <= 0) {
+            keep = false;
+        } else {
+            String requestId = null;
+            if (mode == Mode.REQUEST_ID && attributeProvider != null) {
+                requestId = attributeProvider.getRequestId();
+            }
+            keep = (requestId == null ? ThreadLocalRandom.current().nextDouble() : hashFraction(requestId)) < rate;
+        }
+
+        if (keep) {
+            keptCount.increment();
+        } else {
+            droppedCount.increment();
+        }
+        return keep;
+    }
+
+    /**
+     * Maps a key to a well distributed fraction in {@code [0, 1)}, the same for every process.
+     */
+    static double hashFraction(String key) {
+        // murmur3 finalizer, String.hashCode alone clusters similar ids
+        long h = key.hashCode();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns the number of notifications kept.
+     *
+     * @return Number of notifications kept
+     */
+    public long getKeptCount() {
+        return keptCount.sum();
+    }
+
+    /**
+     * Returns the number of notifications sampled out.
+     *
+     * @return Number of notifications dropped
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+}
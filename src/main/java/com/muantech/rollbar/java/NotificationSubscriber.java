@@ -0,0 +1,197 @@
+package com.muantech.rollbar.java;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>Sink which reports a stream of {@link NotificationEvent}s through a notifier, requesting more
+ * events from upstream only as earlier ones are acknowledged.  At most {@code maxInFlight} events
+ * are ever between being received and having their {@link DeliveryResult}, so a burst upstream
+ * waits there rather than filling (and overflowing) the notifier's queue.</p>
+ *
+ * <p>The methods follow the Reactive Streams {@code Subscriber} contract (they must be invoked
+ * serially, {@code onSubscribe} first), but this library targets Java 8 and has no dependency on
+ * any reactive library, so demand is signaled through a {@link LongConsumer}.  For example to
+ * subscribe to a {@code java.util.concurrent.Flow.Publisher}:</p>
+ *
+ * <pre>
+ * NotificationSubscriber sink = new NotificationSubscriber(notifier, 64);
+ * publisher.subscribe(new Flow.Subscriber&lt;NotificationEvent&gt;() {
+ *     public void onSubscribe(Flow.Subscription s) { sink.onSubscribe(s::request); }
+ *     public void onNext(NotificationEvent event) { sink.onNext(event); }
+ *     public void onError(Throwable t) { sink.onError(t); }
+ *     public void onComplete() { sink.onComplete(); }
+ * });
+ * </pre>
+ *
+ * <p>Delivery results complete on the notifier's sender threads, so requests for more events are
+ * added up and passed upstream by whichever thread gets there first, one call at a time as the
+ * contract requires.</p>
+ *
+ * <p>Events are best delivered with the notifier in async mode, otherwise each is sent on the
+ * thread which publishes it.</p>
+ */
+public class NotificationSubscriber {
+    private final RollbarNotifier notifier;
+    private final int maxInFlight;
+    private final CompletableFuture<Void> termination = new CompletableFuture<Void>();
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder undeliveredCount = new LongAdder();
+    // in flight events, plus one until upstream terminates
+    private final AtomicInteger outstanding = new AtomicInteger(1);
+    // events to request which have not yet been passed upstream, non-zero while a thread is requesting
+    private final AtomicLong unrequested = new AtomicLong();
+    private volatile LongConsumer demand = null;
+    private volatile boolean upstreamDone = false;
+    private volatile Throwable upstreamError = null;
+
+    /**
+     * Constructs a new subscriber.
+     *
+     * @param notifier Notifier to report events through
+     * @param maxInFlight Maximum number of events waiting on their delivery result
+     */
+    public NotificationSubscriber(RollbarNotifier notifier, int maxInFlight) {
+        if (null == notifier)
+            throw new NullPointerException("notifier");
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be >= 1");
+        }
+
+        this.notifier = notifier;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Invoked once when subscribed, requests the initial events from upstream.
+     *
+     * @param request Requests the provided number of further events from upstream
+     */
+    public void onSubscribe(LongConsumer request) {
+        if (null == request)
+            throw new NullPointerException("request");
+        if (demand != null) {
+            throw new IllegalStateException("Already subscribed");
+        }
+
+        demand = request;
+        requestMore(maxInFlight);
+    }
+
+    /**
+     * Reports an event, requesting another from upstream once its delivery result is known.
+     *
+     * @param event Event to report
+     */
+    public void onNext(NotificationEvent event) {
+        if (null == event)
+            throw new NullPointerException("event");
+
+        outstanding.incrementAndGet();
+        notifier.notifyAsync(event).whenComplete((result, error) -> {
+            if (result != null && result.isDelivered()) {
+                deliveredCount.increment();
+            } else {
+                undeliveredCount.increment();
+            }
+            try {
+                requestMore(1);
+            } finally {
+                release();
+            }
+        });
+    }
+
+    /**
+     * Requests further events from upstream.  Only one thread passes requests upstream at a time,
+     * any made meanwhile (from other threads, or from within the call upstream) are added up and
+     * passed on by that thread before it returns.  If upstream throws, the requests left over are
+     * never passed on, and no more are, as upstream can not be relied on.
+     */
+    private void requestMore(long count) {
+        if (unrequested.getAndAdd(count) != 0) {
+            // another thread is requesting, and will pick these up
+            return;
+        }
+        long n = count;
+        do {
+            if (! upstreamDone) {
+                demand.accept(n);
+            }
+            n = unrequested.addAndGet(-n);
+        } while (n != 0);
+    }
+
+    /**
+     * Invoked if upstream fails, the termination future completes exceptionally once the events
+     * already received have their results.
+     *
+     * @param t Upstream failure
+     */
+    public void onError(Throwable t) {
+        upstreamError = t;
+        upstreamDone = true;
+        release();
+    }
+
+    /**
+     * Invoked once upstream has no more events, the termination future completes once the
+     * events already received have their results.
+     */
+    public void onComplete() {
+        upstreamDone = true;
+        release();
+    }
+
+    private void release() {
+        if (outstanding.decrementAndGet() == 0) {
+            Throwable error = upstreamError;
+            if (error == null) {
+                termination.complete(null);
+            } else {
+                termination.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Returns a future which completes once upstream has terminated and every event received has
+     * its delivery result.
+     *
+     * @return Termination future, completed exceptionally with upstream's error if it failed
+     */
+    public CompletableFuture<Void> getTermination() {
+        return termination;
+    }
+
+    /**
+     * Returns the number of events accepted by rollbar.
+     *
+     * @return Number of events delivered
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.sum();
+    }
+
+    /**
+     * Returns the number of events which were dropped, rejected, spooled or failed.
+     *
+     * @return Number of events not delivered
+     */
+    public long getUndeliveredCount() {
+        return undeliveredCount.sum();
+    }
+
+    /**
+     * Returns the number of events received which do not have their delivery result yet.
+     *
+     * @return Number of events in flight
+     */
+    public int getInFlightCount() {
+        int count = outstanding.get();
+        return upstreamDone ? count : count - 1;
+    }
+}
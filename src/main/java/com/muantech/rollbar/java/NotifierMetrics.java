@@ -0,0 +1,58 @@
+package com.muantech.rollbar.java;
+
+/**
+ * <p>Receives instrumentation events from the notifier pipeline, allowing what the notifier costs
+ * (and what it fails to deliver) to be exported to a metrics library.  Implementations are invoked
+ * on the notifying and sending threads, so they must be thread safe and cheap.</p>
+ *
+ * <p>{@link RollbarNotifier} always keeps its own lock-free counters and latency histograms (see
+ * {@link RollbarNotifier#getMetricsSnapshot()}), an implementation provided with
+ * {@link RollbarNotifier#setMetrics(NotifierMetrics)} additionally receives every event.  Values
+ * which are gauges rather than events (queue depth, trace cache hits) are available from the
+ * snapshot.</p>
+ */
+public interface NotifierMetrics {
+    /**
+     * Reason a notification was not delivered.
+     */
+    public enum DropReason {
+        /** The async delivery queue was full, or the notifier was closed */
+        QUEUE_FULL,
+        /** Suppressed by the per-fingerprint rate limit */
+        SUPPRESSED,
+        /** Over the limit set by {@link RollbarNotifier#setSendRateLimit(int, int)} */
+        SEND_RATE_LIMITED,
+        /** Failed after any retries (or failed fast on an open circuit breaker) and was not spooled */
+        UNDELIVERABLE,
+        /** Sampled out by the {@link NotificationSampler} */
+        SAMPLED
+    }
+
+    /**
+     * Invoked after a notification payload has been built and serialized.
+     *
+     * @param buildNanos Time taken to build the payload in nanoseconds
+     * @param payloadBytes Size of the serialized payload
+     */
+    public void payloadBuilt(long buildNanos, int payloadBytes);
+
+    /**
+     * Invoked after each http request attempt, including retries.
+     *
+     * @param statusCode Http status of the response, or {@code -1} if no response was received
+     * @param latencyNanos Time taken by the request in nanoseconds
+     */
+    public void requestCompleted(int statusCode, long latencyNanos);
+
+    /**
+     * Invoked when a failed request is going to be retried.
+     */
+    public void retryScheduled();
+
+    /**
+     * Invoked when a notification is dropped rather than delivered.
+     *
+     * @param reason Why the notification was dropped
+     */
+    public void notificationDropped(DropReason reason);
+}
@@ -0,0 +1,201 @@
+package com.muantech.rollbar.java;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.threadly.concurrent.ConfigurableThreadFactory;
+import org.threadly.concurrent.SingleThreadScheduler;
+
+import com.muantech.rollbar.java.RollbarNotifier.Level;
+
+/**
+ * <p>Limits how often notifications with the same fingerprint (level, throwable type and top stack
+ * frames, or the message for notifications without a throwable) are sent.  Each fingerprint has
+ * its own token bucket allowing a burst of {@code occurrencesPerWindow} and then a steady rate of
+ * {@code occurrencesPerWindow} per window.</p>
+ *
+ * <p>The check happens before the payload is built, so suppressed notifications cost only the
+ * fingerprint and a single CAS on a {@link TokenBucket}, there are no locks on the notify path.</p>
+ *
+ * <p>At the end of each window a summary of how many occurrences were suppressed for each
+ * fingerprint is passed to the {@link SuppressionReporter}, and fingerprints which have been idle
+ * are removed so the table stays bounded.</p>
+ */
+class OccurrenceLimiter {
+    public static final int DEFAULT_MAX_FINGERPRINTS = 4096;
+
+    /**
+     * Receives the suppression summary for a fingerprint at the end of a window.
+     */
+    interface SuppressionReporter {
+        public void reportSuppressed(Level level, String description, long suppressedCount, long windowMillis);
+    }
+
+    private final long windowMillis;
+    private final int fingerprintFrames;
+    private final int maxFingerprints;
+    private final int occurrencesPerWindow;
+    private final SuppressionReporter reporter;
+    private final ConcurrentHashMap<Fingerprint, Bucket> buckets;
+    private final SingleThreadScheduler scheduler;
+
+    /**
+     * Constructs and starts a new limiter.
+     *
+     * @param occurrencesPerWindow Number of notifications allowed per fingerprint per window
+     * @param windowMillis Length of the window in milliseconds
+     * @param fingerprintFrames Number of top stack frames included in a throwable's fingerprint
+     * @param maxFingerprints Maximum number of fingerprints to track, beyond this new fingerprints are not limited
+     * @param reporter Receiver of suppression summaries
+     */
+    OccurrenceLimiter(int occurrencesPerWindow, long windowMillis, int fingerprintFrames,
+                      int maxFingerprints, SuppressionReporter reporter) {
+        if (occurrencesPerWindow < 1) {
+            throw new IllegalArgumentException("occurrencesPerWindow must be >= 1");
+        } else if (windowMillis < 1) {
+            throw new IllegalArgumentException("windowMillis must be >= 1");
+        } else if (fingerprintFrames < 0) {
+            throw new IllegalArgumentException("fingerprintFrames must be >= 0");
+        }
+        this.windowMillis = windowMillis;
+        this.fingerprintFrames = fingerprintFrames;
+        this.maxFingerprints = maxFingerprints;
+        this.occurrencesPerWindow = occurrencesPerWindow;
+        this.reporter = reporter;
+        this.buckets = new ConcurrentHashMap<Fingerprint, Bucket>();
+        this.scheduler = new SingleThreadScheduler(
+            new ConfigurableThreadFactory("rollbar-limiter-", false, true, Thread.NORM_PRIORITY, null, null));
+        scheduler.scheduleAtFixedRate(this::closeWindow, windowMillis, windowMillis);
+    }
+
+    /**
+     * Checks if a notification should be sent, recording it as suppressed if not.
+     *
+     * @param level Level of the notification
+     * @param message Message of the notification, or {@code null}
+     * @param throwable Throwable of the notification, or {@code null}
+     * @return {@code true} if the notification should be sent
+     */
+    public boolean tryAcquire(Level level, String message, Throwable throwable) {
+        Fingerprint fingerprint = new Fingerprint(level, message, throwable, fingerprintFrames);
+        Bucket bucket = buckets.get(fingerprint);
+        if (bucket == null) {
+            if (buckets.size() >= maxFingerprints) {
+                // table is full, fail open rather than dropping unique errors
+                return true;
+            }
+            Bucket newBucket = new Bucket(new TokenBucket(occurrencesPerWindow,
+                                                          TimeUnit.MILLISECONDS.toNanos(windowMillis),
+                                                          occurrencesPerWindow));
+            bucket = buckets.putIfAbsent(fingerprint, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+
+        bucket.lastSeenNanos = System.nanoTime();
+        if (bucket.tokens.tryAcquire()) {
+            return true;
+        }
+        bucket.suppressedCount.increment();
+        return false;
+    }
+
+    private void closeWindow() {
+        long idleCutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(windowMillis * 2);
+        Iterator<Map.Entry<Fingerprint, Bucket>> it = buckets.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Fingerprint, Bucket> entry = it.next();
+            long suppressed = entry.getValue().suppressedCount.sumThenReset();
+            if (suppressed > 0) {
+                Fingerprint fingerprint = entry.getKey();
+                reporter.reportSuppressed(fingerprint.level, fingerprint.toString(), suppressed, windowMillis);
+            } else if (entry.getValue().lastSeenNanos - idleCutoff < 0) {
+                it.remove();
+            }
+        }
+    }
+
+    public int getTrackedFingerprintCount() {
+        return buckets.size();
+    }
+
+    /**
+     * Stops the window timer.  Suppression counts for the current window are reported first.
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        closeWindow();
+    }
+
+    private static class Bucket {
+        private final TokenBucket tokens;
+        private final LongAdder suppressedCount = new LongAdder();
+        private volatile long lastSeenNanos;
+
+        private Bucket(TokenBucket tokens) {
+            this.tokens = tokens;
+        }
+    }
+
+    private static class Fingerprint {
+        private final Level level;
+        private final Class<?> type;
+        private final String message;
+        private final StackTraceElement[] topFrames;
+        private final int hash;
+
+        private Fingerprint(Level level, String message, Throwable throwable, int frameCount) {
+            this.level = level;
+            if (throwable == null) {
+                this.type = null;
+                this.message = message;
+                this.topFrames = null;
+            } else {
+                this.type = throwable.getClass();
+                this.message = null;
+                StackTraceElement[] elements = throwable.getStackTrace();
+                this.topFrames = elements.length > frameCount ? Arrays.copyOf(elements, frameCount) : elements;
+            }
+
+            int hash = level.hashCode();
+            hash = (31 * hash) + (type == null ? 0 : type.hashCode());
+            hash = (31 * hash) + (this.message == null ? 0 : this.message.hashCode());
+            hash = (31 * hash) + Arrays.hashCode(topFrames);
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            } else if (! (o instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint other = (Fingerprint) o;
+            return hash == other.hash && level == other.level && type == other.type &&
+                     (message == null ? other.message == null : message.equals(other.message)) &&
+                     Arrays.equals(topFrames, other.topFrames);
+        }
+
+        @Override
+        public String toString() {
+            if (type == null) {
+                return String.valueOf(message);
+            } else if (topFrames.length == 0) {
+                return type.getName();
+            } else {
+                return type.getName() + " at " + topFrames[0];
+            }
+        }
+    }
+}
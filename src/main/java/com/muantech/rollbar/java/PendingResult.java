@@ -0,0 +1,84 @@
+package com.muantech.rollbar.java;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonValue;
+import com.muantech.rollbar.java.DeliveryResult.Outcome;
+import com.muantech.rollbar.java.NotifierMetrics.DropReason;
+
+/**
+ * <p>Result of a notification which someone is waiting on, carried along with the notification
+ * through capture, queueing and delivery until its outcome is known.</p>
+ */
+class PendingResult {
+    private final CompletableFuture<DeliveryResult> future = new CompletableFuture<DeliveryResult>();
+    private final long startNanos = System.nanoTime();
+
+    public CompletableFuture<DeliveryResult> getFuture() {
+        return future;
+    }
+
+    /**
+     * Completes the result for a notification which was never sent.
+     *
+     * @param reason Why the notification was dropped
+     */
+    public void dropped(DropReason reason) {
+        complete(Outcome.DROPPED, reason, -1, null, 0);
+    }
+
+    /**
+     * Completes the result exceptionally, for a notification which could not be built or sent
+     * due to an unexpected error.
+     *
+     * @param t Error which was also passed to the notifier's exception handler
+     */
+    public void failed(Throwable t) {
+        future.completeExceptionally(t);
+    }
+
+    /**
+     * Completes the result once a request has finished (or been given up on).
+     *
+     * @param outcome Outcome of the notification
+     * @param request Request which was sent, or {@code null} if it was never sent
+     * @param readItemUuid {@code true} to read the item uuid from a successful response
+     */
+    public void completed(Outcome outcome, HttpRequest request, boolean readItemUuid) {
+        Transport.Response response = request == null ? null : request.getLastResponse();
+        String itemUuid = null;
+        if (readItemUuid && outcome == Outcome.DELIVERED && response != null) {
+            itemUuid = itemUuid(response.getBody());
+        }
+        complete(outcome, null, response == null ? -1 : response.getStatusCode(), itemUuid,
+                 request == null ? 0 : request.getAttemptNumber());
+    }
+
+    private void complete(Outcome outcome, DropReason dropReason, int statusCode, String itemUuid, int attempts) {
+        future.complete(new DeliveryResult(outcome, dropReason, statusCode, itemUuid, attempts,
+                                           System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Reads the uuid from a response, which looks like
+     * {@code {"err": 0, "result": {"id": null, "uuid": "..."}}}.
+     */
+    private static String itemUuid(String responseBody) {
+        if (responseBody == null || responseBody.isEmpty()) {
+            return null;
+        }
+        try {
+            JsonValue result = Json.parse(responseBody).asObject().get("result");
+            if (result != null && result.isObject()) {
+                JsonValue uuid = result.asObject().get("uuid");
+                if (uuid != null && uuid.isString()) {
+                    return uuid.asString();
+                }
+            }
+        } catch (RuntimeException e) {
+            // not a rollbar response, no uuid to report
+        }
+        return null;
+    }
+}
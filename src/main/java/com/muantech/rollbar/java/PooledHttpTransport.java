@@ -0,0 +1,602 @@
+package com.muantech.rollbar.java;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.threadly.util.Clock;
+
+/**
+ * <p>{@link Transport} which keeps a small pool of persistent HTTP/1.1 connections per host, so
+ * that consecutive notifications avoid paying for TCP setup and the TLS handshake.  This is not
+ * the default (see {@link JdkHttpClientTransport#createDefault()}), it can be set where an explicit
+ * pool size and idle timeout are wanted, and its connection counts are then included in
+ * {@link RollbarNotifier#getMetricsSnapshot()}.</p>
+ *
+ * <p>Idle connections are kept most recently used first, up to a maximum per host.  Connections
+ * idle for longer than the configured idle timeout are evicted rather than reused.  If a reused
+ * connection turns out to have been closed by the server before it could have processed the
+ * request (writing the request failed, or the connection was closed without a single byte of
+ * response) the request is transparently retried once on a new connection.  Nothing else is
+ * retried, in particular not a timeout waiting for the response, as the server may already have
+ * accepted the notification.</p>
+ *
+ * <p>Connections are routed through the proxy chosen by {@link ProxySelector#getDefault()} (so the
+ * {@code https.proxyHost} and {@code socksProxyHost} system properties are honoured), https
+ * through an http proxy using a {@code CONNECT} tunnel.  Plain http through an http proxy, and
+ * proxies which require authentication, are handled by an {@link HttpURLConnectionTransport}
+ * instead.</p>
+ */
+public class PooledHttpTransport implements Transport {
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 4;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30_000;
+    public static final int DEFAULT_TIMEOUT_MILLIS = 5_000;
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final int MAX_RESPONSE_BODY_BYTES = 64 * 1024;
+
+    private final int maxIdleConnections;
+    private final long idleTimeoutMillis;
+    private final int timeoutMillis;
+    private final ConcurrentHashMap<String, Deque<Connection>> idleConnections;
+    // proxies which answered a tunnel request with 407, later requests go straight to the fallback
+    private final Set<SocketAddress> authenticatingProxies = ConcurrentHashMap.newKeySet();
+    private volatile HttpURLConnectionTransport fallback = null;
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsReused = new LongAdder();
+    private final LongAdder connectionsEvicted = new LongAdder();
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs a new transport with the default pool configuration.
+     */
+    public PooledHttpTransport() {
+        this(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructs a new transport.
+     *
+     * @param maxIdleConnections Maximum number of idle connections to keep open per host
+     * @param idleTimeoutMillis Time after which an idle connection is closed rather than reused
+     * @param timeoutMillis Connect and read timeout in milliseconds
+     */
+    public PooledHttpTransport(int maxIdleConnections, long idleTimeoutMillis, int timeoutMillis) {
+        if (maxIdleConnections < 0) {
+            throw new IllegalArgumentException("maxIdleConnections must be >= 0");
+        }
+        this.maxIdleConnections = maxIdleConnections;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.idleConnections = new ConcurrentHashMap<String, Deque<Connection>>();
+    }
+
+    @Override
+    public Response send(String method, URL url, Map<String, String> headers,
+                         byte[] body, int offset, int length) throws IOException {
+        Proxy proxy = selectProxy(url);
+        boolean https = "https".equalsIgnoreCase(url.getProtocol());
+        if (proxy.type() == Proxy.Type.HTTP && (! https || authenticatingProxies.contains(proxy.address()))) {
+            return fallback().send(method, url, headers, body, offset, length);
+        }
+
+        String poolKey = url.getProtocol() + "://" + url.getHost() + ':' + port(url);
+        if (proxy.type() != Proxy.Type.DIRECT) {
+            poolKey += " via " + proxy.address();
+        }
+        Connection connection = checkout(poolKey);
+        if (connection != null) {
+            try {
+                return exchange(poolKey, connection, method, url, headers, body, offset, length);
+            } catch (IOException e) {
+                if (! connection.unprocessed || e instanceof SocketTimeoutException) {
+                    throw e;
+                }
+                // server closed the idle connection without seeing the request, retry once on a fresh one
+            }
+        }
+
+        try {
+            connection = open(url, proxy);
+        } catch (ProxyAuthenticationRequiredException e) {
+            authenticatingProxies.add(proxy.address());
+            return fallback().send(method, url, headers, body, offset, length);
+        }
+        return exchange(poolKey, connection, method, url, headers, body, offset, length);
+    }
+
+    private static Proxy selectProxy(URL url) {
+        ProxySelector selector = ProxySelector.getDefault();
+        if (selector == null) {
+            return Proxy.NO_PROXY;
+        }
+        try {
+            List<Proxy> proxies = selector.select(url.toURI());
+            // only the first choice is used, a failure is reported to the selector so it can adapt
+            return proxies == null || proxies.isEmpty() ? Proxy.NO_PROXY : proxies.get(0);
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return Proxy.NO_PROXY;
+        }
+    }
+
+    private HttpURLConnectionTransport fallback() {
+        HttpURLConnectionTransport fallback = this.fallback;
+        if (fallback == null) {
+            // stateless, so a racing duplicate is harmless
+            this.fallback = fallback = new HttpURLConnectionTransport(timeoutMillis);
+        }
+        return fallback;
+    }
+
+    private Response exchange(String poolKey, Connection connection, String method, URL url,
+                              Map<String, String> headers, byte[] body, int offset, int length) throws IOException {
+        boolean keepAlive = false;
+        connection.unprocessed = true;
+        try {
+            writeRequest(connection, method, url, headers, body, offset, length);
+            connection.unprocessed = false;
+
+            int statusCode;
+            String statusLine = readLine(connection);
+            if (statusLine == null) {
+                // closed without a byte of response, as when the server dropped an idle connection
+                connection.unprocessed = true;
+                throw new EOFException("Connection closed before response");
+            }
+            Map<String, String> responseHeaders;
+            while (true) {
+                statusCode = parseStatusCode(statusLine);
+                responseHeaders = readHeaders(connection);
+                if (statusCode >= 200) {
+                    break;
+                }
+                // interim response, the final one follows
+                statusLine = readLine(connection);
+                if (statusLine == null) {
+                    throw new EOFException("Connection closed before response");
+                }
+            }
+
+            keepAlive = statusLine.startsWith("HTTP/1.1") &&
+                          ! "close".equalsIgnoreCase(responseHeaders.get("connection"));
+
+            String responseBody = null;
+            if (! "HEAD".equalsIgnoreCase(method) && statusCode != 204 && statusCode != 304) {
+                ByteArrayOutputStream bodyOut = connection.bodyOut;
+                bodyOut.reset();
+                String contentLength = responseHeaders.get("content-length");
+                if ("chunked".equalsIgnoreCase(responseHeaders.get("transfer-encoding"))) {
+                    readChunkedBody(connection, bodyOut);
+                } else if (contentLength != null) {
+                    readFixedBody(connection, Long.parseLong(contentLength.trim()), bodyOut);
+                } else {
+                    readFixedBody(connection, Long.MAX_VALUE, bodyOut);
+                    keepAlive = false;
+                }
+                responseBody = bodyOut.size() == 0 ? "" : bodyOut.toString(StandardCharsets.UTF_8.name());
+            }
+
+            return new Response(statusCode, responseHeaders, responseBody);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed http response", e);
+        } finally {
+            if (keepAlive) {
+                checkin(poolKey, connection);
+            } else {
+                connection.close();
+            }
+        }
+    }
+
+    private Connection checkout(String poolKey) {
+        Deque<Connection> pool = idleConnections.get(poolKey);
+        if (pool == null) {
+            return null;
+        }
+
+        long now = Clock.accurateForwardProgressingMillis();
+        Connection connection;
+        while ((connection = pool.pollFirst()) != null) {
+            if (now - connection.lastUsedMillis > idleTimeoutMillis || connection.socket.isClosed()) {
+                connection.close();
+                connectionsEvicted.increment();
+            } else {
+                connectionsReused.increment();
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    private void checkin(String poolKey, Connection connection) {
+        connection.lastUsedMillis = Clock.accurateForwardProgressingMillis();
+        Deque<Connection> pool = idleConnections.computeIfAbsent(poolKey, (k) -> new ConcurrentLinkedDeque<Connection>());
+        if (closed || pool.size() >= maxIdleConnections) {
+            connection.close();
+        } else {
+            pool.offerFirst(connection);
+            if (closed) {
+                // raced with close
+                close();
+            }
+        }
+        evictExpired(pool);
+    }
+
+    private void evictExpired(Deque<Connection> pool) {
+        long now = Clock.accurateForwardProgressingMillis();
+        Connection oldest;
+        while ((oldest = pool.peekLast()) != null && now - oldest.lastUsedMillis > idleTimeoutMillis) {
+            if (pool.removeLastOccurrence(oldest)) {
+                oldest.close();
+                connectionsEvicted.increment();
+            }
+        }
+    }
+
+    /**
+     * Closes any idle connections which have exceeded the idle timeout.  This is done lazily as
+     * connections are used, but may be invoked periodically to release sockets sooner.
+     */
+    public void evictIdleConnections() {
+        idleConnections.values().forEach(this::evictExpired);
+    }
+
+    private static void connectFailed(URL url, Proxy proxy, IOException e) {
+        if (proxy.type() != Proxy.Type.DIRECT) {
+            ProxySelector selector = ProxySelector.getDefault();
+            if (selector != null) {
+                try {
+                    selector.connectFailed(url.toURI(), proxy.address(), e);
+                } catch (URISyntaxException | IllegalArgumentException ignored) {
+                    // nothing to report it against
+                }
+            }
+        }
+    }
+
+    private Connection open(URL url, Proxy proxy) throws IOException {
+        String host = url.getHost();
+        int port = port(url);
+        Socket socket = proxy.type() == Proxy.Type.SOCKS ? new Socket(proxy) : new Socket();
+        try {
+            try {
+                if (proxy.type() == Proxy.Type.DIRECT) {
+                    socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+                } else if (proxy.type() == Proxy.Type.SOCKS) {
+                    // resolved by the proxy
+                    socket.connect(InetSocketAddress.createUnresolved(host, port), timeoutMillis);
+                } else {
+                    socket.connect(proxy.address(), timeoutMillis);
+                }
+            } catch (SocketTimeoutException e) {
+                connectFailed(url, proxy, e);
+                throw new ConnectTimeoutException("Connect timed out: " + host, e);
+            } catch (IOException e) {
+                connectFailed(url, proxy, e);
+                throw e;
+            }
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            if (proxy.type() == Proxy.Type.HTTP) {
+                openTunnel(socket, host, port);
+            }
+
+            if ("https".equalsIgnoreCase(url.getProtocol())) {
+                SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+                SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, host, port, true);
+                SSLParameters sslParameters = sslSocket.getSSLParameters();
+                sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslSocket.setSSLParameters(sslParameters);
+                sslSocket.startHandshake();
+                socket = sslSocket;
+            } else if (! "http".equalsIgnoreCase(url.getProtocol())) {
+                throw new IOException("Unsupported protocol: " + url.getProtocol());
+            }
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        connectionsOpened.increment();
+        return new Connection(socket);
+    }
+
+    /**
+     * Asks an http proxy to tunnel the connected socket to the target host.  The response is read
+     * a byte at a time, so nothing sent after it (by the target host) is consumed.
+     */
+    private static void openTunnel(Socket socket, String host, int port) throws IOException {
+        String authority = host + ':' + port;
+        OutputStream out = socket.getOutputStream();
+        out.write(("CONNECT " + authority + " HTTP/1.1\r\nHost: " + authority + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+
+        InputStream in = socket.getInputStream();
+        StringBuilder statusLine = new StringBuilder(64);
+        boolean inStatusLine = true;
+        int lineLength = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                if (lineLength == 0) {
+                    break; // end of the response head
+                }
+                inStatusLine = false;
+                lineLength = 0;
+            } else if (b != '\r') {
+                if (inStatusLine && statusLine.length() < MAX_LINE_LENGTH) {
+                    statusLine.append((char) b);
+                }
+                lineLength++;
+            }
+        }
+        if (b == -1) {
+            throw new EOFException("Proxy closed the connection while opening a tunnel");
+        }
+
+        int statusCode = parseStatusCode(statusLine.toString());
+        if (statusCode == 407) {
+            throw new ProxyAuthenticationRequiredException();
+        } else if (statusCode < 200 || statusCode >= 300) {
+            throw new IOException("Proxy refused tunnel to " + authority + ": " + statusLine);
+        }
+    }
+
+    private static int port(URL url) {
+        return url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+    }
+
+    private static void writeRequest(Connection connection, String method, URL url, Map<String, String> headers,
+                                     byte[] body, int offset, int length) throws IOException {
+        String path = url.getFile();
+        StringBuilder sb = connection.lineBuilder;
+        sb.setLength(0);
+        sb.append(method).append(' ').append(path.isEmpty() ? "/" : path).append(" HTTP/1.1\r\n");
+        sb.append("Host: ").append(url.getHost());
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            sb.append(':').append(url.getPort());
+        }
+        sb.append("\r\n");
+        for (Entry<String, String> header : headers.entrySet()) {
+            sb.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (body != null) {
+            sb.append("Content-Length: ").append(length).append("\r\n");
+        }
+        sb.append("\r\n");
+
+        OutputStream out = connection.out;
+        out.write(connection.encodeHead(sb), 0, sb.length());
+        if (body != null) {
+            out.write(body, offset, length);
+        }
+        out.flush();
+    }
+
+    private static int parseStatusCode(String statusLine) throws IOException {
+        int start = statusLine.indexOf(' ');
+        if (! statusLine.startsWith("HTTP/") || start < 0 || statusLine.length() < start + 4) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+        return Integer.parseInt(statusLine.substring(start + 1, start + 4));
+    }
+
+    private static Map<String, String> readHeaders(Connection connection) throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        String line;
+        while ((line = readLine(connection)) != null && ! line.isEmpty()) {
+            int separator = line.indexOf(':');
+            if (separator > 0) {
+                headers.put(line.substring(0, separator).trim().toLowerCase(Locale.ROOT),
+                            line.substring(separator + 1).trim());
+            }
+        }
+        if (line == null) {
+            throw new EOFException("Connection closed while reading headers");
+        }
+        return headers;
+    }
+
+    private static String readLine(Connection connection) throws IOException {
+        InputStream in = connection.in;
+        StringBuilder sb = connection.lineBuilder;
+        sb.setLength(0);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int end = sb.length();
+                if (end > 0 && sb.charAt(end - 1) == '\r') {
+                    sb.setLength(end - 1);
+                }
+                return sb.toString();
+            } else if (sb.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Http line too long");
+            }
+            sb.append((char) b);
+        }
+        if (sb.length() == 0) {
+            return null;
+        }
+        throw new EOFException("Connection closed mid-line");
+    }
+
+    private static void readChunkedBody(Connection connection, ByteArrayOutputStream bodyOut) throws IOException {
+        while (true) {
+            String sizeLine = readLine(connection);
+            if (sizeLine == null) {
+                throw new EOFException("Connection closed while reading chunk");
+            }
+            int extension = sizeLine.indexOf(';');
+            long chunkSize = Long.parseLong((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+            if (chunkSize == 0) {
+                // consume trailers
+                readHeaders(connection);
+                return;
+            }
+            readFixedBody(connection, chunkSize, bodyOut);
+            readLine(connection);
+        }
+    }
+
+    private static void readFixedBody(Connection connection, long length,
+                                      ByteArrayOutputStream bodyOut) throws IOException {
+        byte[] buffer = connection.readBuffer;
+        long remaining = length;
+        while (remaining > 0) {
+            int read = connection.in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                if (length == Long.MAX_VALUE) {
+                    // reading until close
+                    return;
+                }
+                throw new EOFException("Connection closed while reading body");
+            }
+            int toKeep = Math.min(read, MAX_RESPONSE_BODY_BYTES - bodyOut.size());
+            if (toKeep > 0) {
+                bodyOut.write(buffer, 0, toKeep);
+            }
+            remaining -= read;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Deque<Connection> pool : idleConnections.values()) {
+            Connection connection;
+            while ((connection = pool.pollFirst()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the total number of new connections which have been opened.
+     *
+     * @return Number of connections opened
+     */
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    /**
+     * Returns the total number of times an idle connection was reused for a request.
+     *
+     * @return Number of connection reuses
+     */
+    public long getConnectionsReused() {
+        return connectionsReused.sum();
+    }
+
+    /**
+     * Returns the total number of idle connections closed due to the idle timeout.
+     *
+     * @return Number of evicted connections
+     */
+    public long getConnectionsEvicted() {
+        return connectionsEvicted.sum();
+    }
+
+    /**
+     * Returns the number of connections currently idle in the pool.
+     *
+     * @return Number of idle connections across all hosts
+     */
+    public int getIdleConnectionCount() {
+        int count = 0;
+        for (Deque<Connection> pool : idleConnections.values()) {
+            count += pool.size();
+        }
+        return count;
+    }
+
+    /**
+     * A pooled connection, along with buffers reused by each request made on it.  A connection is
+     * only used by one request at a time.
+     */
+    private static class Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final StringBuilder lineBuilder = new StringBuilder(256);
+        private final byte[] readBuffer = new byte[1024];
+        private final ByteArrayOutputStream bodyOut = new ByteArrayOutputStream(256);
+        private byte[] headBuffer = new byte[512];
+        private volatile long lastUsedMillis;
+        // set while a failure could not have been preceded by the server processing the request
+        private boolean unprocessed = false;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        /**
+         * Encodes the request head as ISO-8859-1 into the reused head buffer.
+         *
+         * @return Buffer holding {@code head.length()} encoded bytes
+         */
+        private byte[] encodeHead(StringBuilder head) {
+            int length = head.length();
+            if (headBuffer.length < length) {
+                headBuffer = new byte[Math.max(length, headBuffer.length * 2)];
+            }
+            byte[] buf = headBuffer;
+            for (int i = 0; i < length; i++) {
+                char c = head.charAt(i);
+                buf[i] = (byte) (c <= 0xFF ? c : '?');
+            }
+            return buf;
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignored, nothing more we can do
+            }
+        }
+    }
+
+    /**
+     * Thrown when an http proxy requires credentials to open a tunnel, which are left to the
+     * JDK's {@link java.net.Authenticator} handling.
+     */
+    private static class ProxyAuthenticationRequiredException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private ProxyAuthenticationRequiredException() {
+            super("Proxy authentication required");
+        }
+    }
+}
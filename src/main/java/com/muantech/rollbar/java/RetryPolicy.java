@@ -0,0 +1,19 @@
+package com.muantech.rollbar.java;
+
+import java.io.IOException;
+
+/**
+ * <p>Decides if, and after how long, a failed request to rollbar should be attempted again.  The
+ * default implementation is {@link ExponentialBackoffRetryPolicy}.</p>
+ */
+public interface RetryPolicy {
+    /**
+     * Invoked after each attempt to send a notification.
+     *
+     * @param attemptNumber Number of attempts made so far (starting at {@code 1})
+     * @param response Response to the last attempt, or {@code null} if it failed with an exception
+     * @param failure Exception from the last attempt, or {@code null} if a response was received
+     * @return Milliseconds to wait before the next attempt, or a negative value to not retry
+     */
+    public long getRetryDelayMillis(int attemptNumber, Transport.Response response, IOException failure);
+}
@@ -8,14 +8,17 @@ import java.util.Map;
  * want to have provided, and use the defaults for everything else.</p>
  */
 public class RollbarAttributeAdapter implements RollbarAttributeProvider {
+    static final String DEFAULT_PLATFORM = "java";
+    static final String DEFAULT_FRAMEWORK = "java";
+
     @Override
     public String getPlatform() {
-        return "java";
+        return DEFAULT_PLATFORM;
     }
 
     @Override
     public String getFramework() {
-        return "java";
+        return DEFAULT_FRAMEWORK;
     }
 
     @Override
@@ -0,0 +1,412 @@
+package com.muantech.rollbar.java;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * <p>Immutable set of attributes, built once (for example per request) and reported with any
+ * number of notifications.  Single values are kept in one flat array and maps as
+ * {@link CompactStringMap}s, so the whole set is a handful of objects rather than a provider,
+ * {@code HashMap}s and their entries.</p>
+ *
+ * <p>Notifications are normally written by calling every {@link RollbarAttributeProvider} getter
+ * and walking each map.  Once an instance has been written, the parts of the payload it
+ * determines (request, person, client, custom fields) are encoded and kept, so every further
+ * notification reporting the same instance splices in those bytes instead.  Async delivery also
+ * keeps the instance as is rather than copying it.</p>
+ *
+ * <pre>
+ * RollbarAttributes attributes = new RollbarAttributes.Builder()
+ *     .url(request.getRequestURL().toString())
+ *     .httpMethod(request.getMethod())
+ *     .header("Accept", request.getHeader("Accept"))
+ *     .username(request.getRemoteUser())
+ *     .build();
+ * </pre>
+ */
+public final class RollbarAttributes implements RollbarAttributeProvider {
+    public static final RollbarAttributes EMPTY = new Builder().build();
+
+    // positions of the single values
+    private static final int PLATFORM = 0;
+    private static final int FRAMEWORK = 1;
+    private static final int URL = 2;
+    private static final int HTTP_METHOD = 3;
+    private static final int QUERY = 4;
+    private static final int USER_IP = 5;
+    private static final int SESSION_ID = 6;
+    private static final int PROTOCOL = 7;
+    private static final int REQUEST_ID = 8;
+    private static final int USER_AGENT = 9;
+    private static final int USER_ID = 10;
+    private static final int USERNAME = 11;
+    private static final int USER_EMAIL = 12;
+    private static final int VALUE_COUNT = 13;
+
+    private final String[] values;
+    // null when empty, empty maps are not written
+    private final CompactStringMap headers;
+    private final CompactStringMap params;
+    private final CompactStringMap customFields;
+    // encoded on the second write, instances written only once never pay for encoding
+    private volatile boolean written = false;
+    private volatile Encoded encoded = null;
+
+    private RollbarAttributes(String[] values, CompactStringMap headers, CompactStringMap params,
+                              CompactStringMap customFields) {
+        this.values = values;
+        this.headers = headers;
+        this.params = params;
+        this.customFields = customFields;
+    }
+
+    /**
+     * Returns an immutable copy of the values returned by a provider, or the provider itself if
+     * it already is an instance of this class.
+     *
+     * @param provider Provider to copy from
+     * @return Attributes with the provider's current values
+     */
+    public static RollbarAttributes copyOf(RollbarAttributeProvider provider) {
+        if (null == provider)
+            throw new NullPointerException("provider");
+
+        if (provider instanceof RollbarAttributes) {
+            return (RollbarAttributes) provider;
+        }
+        String[] values = new String[VALUE_COUNT];
+        values[PLATFORM] = provider.getPlatform();
+        values[FRAMEWORK] = provider.getFramework();
+        values[URL] = provider.getUrl();
+        values[HTTP_METHOD] = provider.getHttpMethod();
+        values[QUERY] = provider.getQuery();
+        values[USER_IP] = provider.getUserIp();
+        values[SESSION_ID] = provider.getSessionId();
+        values[PROTOCOL] = provider.getProtocol();
+        values[REQUEST_ID] = provider.getRequestId();
+        values[USER_AGENT] = provider.getUserAgent();
+        values[USER_ID] = provider.getUserId();
+        values[USERNAME] = provider.getUsername();
+        values[USER_EMAIL] = provider.getUserEmail();
+        return new RollbarAttributes(values, compact(provider.getHeaders()), compact(provider.getParams()),
+                                     compact(provider.getCustomFields()));
+    }
+
+    private static CompactStringMap compact(Map<String, String> map) {
+        return map == null || map.isEmpty() ? null : CompactStringMap.copyOf(map);
+    }
+
+    /**
+     * Returns the encoded payload parts for a notification about to be written.
+     *
+     * @return Encoded parts, or {@code null} if this is the first write and the getters should be used
+     */
+    Encoded encodedForWrite() {
+        Encoded encoded = this.encoded;
+        if (encoded == null) {
+            if (! written) {
+                written = true;
+                return null;
+            }
+            // a concurrent write may encode as well, both results are the same
+            this.encoded = encoded = new Encoded(this);
+        }
+        return encoded;
+    }
+
+    @Override
+    public String getPlatform() {
+        return values[PLATFORM];
+    }
+
+    @Override
+    public String getFramework() {
+        return values[FRAMEWORK];
+    }
+
+    @Override
+    public String getUrl() {
+        return values[URL];
+    }
+
+    @Override
+    public String getHttpMethod() {
+        return values[HTTP_METHOD];
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public Map<String, String> getParams() {
+        return params;
+    }
+
+    @Override
+    public String getQuery() {
+        return values[QUERY];
+    }
+
+    @Override
+    public String getUserIp() {
+        return values[USER_IP];
+    }
+
+    @Override
+    public String getSessionId() {
+        return values[SESSION_ID];
+    }
+
+    @Override
+    public String getProtocol() {
+        return values[PROTOCOL];
+    }
+
+    @Override
+    public String getRequestId() {
+        return values[REQUEST_ID];
+    }
+
+    @Override
+    public Map<String, String> getCustomFields() {
+        return customFields;
+    }
+
+    @Override
+    public String getUserAgent() {
+        return values[USER_AGENT];
+    }
+
+    @Override
+    public String getUserId() {
+        return values[USER_ID];
+    }
+
+    @Override
+    public String getUsername() {
+        return values[USERNAME];
+    }
+
+    @Override
+    public String getUserEmail() {
+        return values[USER_EMAIL];
+    }
+
+    /**
+     * Payload members determined only by the attributes, each without enclosing braces and empty
+     * if there is nothing to write.
+     */
+    static final class Encoded {
+        final byte[] platformFields;
+        final byte[] requestFields;
+        final byte[] customFields;
+        final byte[] personFields;
+        final byte[] clientFields;
+
+        private Encoded(RollbarAttributes attributes) {
+            platformFields = NotificationBuilder.encodeFields((writer) -> {
+                writer.name("platform").value(attributes.getPlatform());
+                writer.name("framework").value(attributes.getFramework());
+            });
+            requestFields = NotificationBuilder.encodeFields(
+                (writer) -> NotificationBuilder.writeRequestData(writer, attributes));
+            customFields = NotificationBuilder.encodeFields((writer) -> {
+                if (attributes.customFields != null) {
+                    NotificationBuilder.writeMap(writer, attributes.customFields);
+                }
+            });
+            personFields = NotificationBuilder.encodeFields(
+                (writer) -> NotificationBuilder.writePersonData(writer, attributes));
+            clientFields = NotificationBuilder.encodeFields(
+                (writer) -> NotificationBuilder.writeClientData(writer, attributes));
+        }
+    }
+
+    /**
+     * Builds {@link RollbarAttributes}.  Not thread safe.
+     */
+    public static class Builder {
+        private final String[] values;
+        private final CompactStringMap.Builder headers;
+        private final CompactStringMap.Builder params;
+        private final CompactStringMap.Builder customFields;
+
+        /**
+         * Constructs a new builder with the default platform and framework, and nothing else set.
+         */
+        public Builder() {
+            values = new String[VALUE_COUNT];
+            values[PLATFORM] = RollbarAttributeAdapter.DEFAULT_PLATFORM;
+            values[FRAMEWORK] = RollbarAttributeAdapter.DEFAULT_FRAMEWORK;
+            headers = new CompactStringMap.Builder(8);
+            params = new CompactStringMap.Builder(4);
+            customFields = new CompactStringMap.Builder(4);
+        }
+
+        /**
+         * Constructs a new builder starting from existing attributes, for example to add
+         * notification specific custom fields to attributes shared by a request.
+         *
+         * @param base Attributes to start from
+         */
+        public Builder(RollbarAttributes base) {
+            values = Arrays.copyOf(base.values, VALUE_COUNT);
+            headers = builderOf(base.headers, 8);
+            params = builderOf(base.params, 4);
+            customFields = builderOf(base.customFields, 4);
+        }
+
+        private static CompactStringMap.Builder builderOf(CompactStringMap map, int expectedSize) {
+            if (map == null) {
+                return new CompactStringMap.Builder(expectedSize);
+            }
+            CompactStringMap.Builder builder = new CompactStringMap.Builder(map.size() + expectedSize);
+            for (int i = 0; i < map.size(); i++) {
+                builder.append(map.keyAt(i), map.valueAt(i));
+            }
+            return builder;
+        }
+
+        private Builder set(int index, String value) {
+            values[index] = value;
+            return this;
+        }
+
+        public Builder platform(String platform) {
+            return set(PLATFORM, platform);
+        }
+
+        public Builder framework(String framework) {
+            return set(FRAMEWORK, framework);
+        }
+
+        public Builder url(String url) {
+            return set(URL, url);
+        }
+
+        public Builder httpMethod(String httpMethod) {
+            return set(HTTP_METHOD, httpMethod);
+        }
+
+        public Builder query(String query) {
+            return set(QUERY, query);
+        }
+
+        public Builder userIp(String userIp) {
+            return set(USER_IP, userIp);
+        }
+
+        public Builder sessionId(String sessionId) {
+            return set(SESSION_ID, sessionId);
+        }
+
+        public Builder protocol(String protocol) {
+            return set(PROTOCOL, protocol);
+        }
+
+        public Builder requestId(String requestId) {
+            return set(REQUEST_ID, requestId);
+        }
+
+        public Builder userAgent(String userAgent) {
+            return set(USER_AGENT, userAgent);
+        }
+
+        public Builder userId(String userId) {
+            return set(USER_ID, userId);
+        }
+
+        public Builder username(String username) {
+            return set(USERNAME, username);
+        }
+
+        public Builder userEmail(String userEmail) {
+            return set(USER_EMAIL, userEmail);
+        }
+
+        /**
+         * Adds a header, replacing any previous value.
+         *
+         * @param name Header name
+         * @param value Header value, may be {@code null}
+         * @return This builder
+         */
+        public Builder header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        /**
+         * Adds every header in a map.
+         *
+         * @param headers Headers to add
+         * @return This builder
+         */
+        public Builder headers(Map<String, String> headers) {
+            headers.forEach(this.headers::put);
+            return this;
+        }
+
+        /**
+         * Adds a request parameter, replacing any previous value.
+         *
+         * @param name Parameter name
+         * @param value Parameter value, may be {@code null}
+         * @return This builder
+         */
+        public Builder param(String name, String value) {
+            params.put(name, value);
+            return this;
+        }
+
+        /**
+         * Adds every request parameter in a map.
+         *
+         * @param params Parameters to add
+         * @return This builder
+         */
+        public Builder params(Map<String, String> params) {
+            params.forEach(this.params::put);
+            return this;
+        }
+
+        /**
+         * Adds a custom field, replacing any previous value.
+         *
+         * @param name Field name, reported as {@code custom.name}
+         * @param value Field value, may be {@code null}
+         * @return This builder
+         */
+        public Builder customField(String name, String value) {
+            customFields.put(name, value);
+            return this;
+        }
+
+        /**
+         * Adds every custom field in a map.
+         *
+         * @param customFields Custom fields to add
+         * @return This builder
+         */
+        public Builder customFields(Map<String, String> customFields) {
+            customFields.forEach(this.customFields::put);
+            return this;
+        }
+
+        /**
+         * Builds the attributes.  The builder must not be used afterwards.
+         *
+         * @return Immutable attributes
+         */
+        public RollbarAttributes build() {
+            return new RollbarAttributes(values.clone(), nullIfEmpty(headers.build()),
+                                         nullIfEmpty(params.build()), nullIfEmpty(customFields.build()));
+        }
+
+        private static CompactStringMap nullIfEmpty(CompactStringMap map) {
+            return map.isEmpty() ? null : map;
+        }
+    }
+}
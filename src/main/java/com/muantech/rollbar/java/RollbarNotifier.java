@@ -1,21 +1,83 @@
 package com.muantech.rollbar.java;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 
-import com.eclipsesource.json.JsonObject;
+import org.threadly.concurrent.ConfigurableThreadFactory;
+import org.threadly.concurrent.SingleThreadScheduler;
+import org.threadly.util.Clock;
 
-public class RollbarNotifier {
-    private static final int MAX_RETRIES = 5;
+public class RollbarNotifier implements AutoCloseable {
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+    private static final ScratchPool<Utf8JsonWriter> PAYLOAD_WRITERS =
+        new ScratchPool<Utf8JsonWriter>(ScratchPool.DEFAULT_SIZE, Utf8JsonWriter::new, null);
 
     public enum Level {
         DEBUG, INFO, WARNING, ERROR
     }
 
+    /**
+     * Policy for what to do when the async delivery queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Discard the notification being added, keeping what is already queued */
+        DROP_NEWEST,
+        /** Discard the oldest queued notification to make room for the new one */
+        DROP_OLDEST,
+        /** Block the notifying thread until there is room or the configured timeout is reached */
+        BLOCK
+    }
+
+    /**
+     * Listener which is informed each time a batch of notifications has been sent, useful for
+     * tuning the batch size and delay.
+     */
+    public interface BatchListener {
+        /**
+         * Invoked on the sending thread after a batch has been sent.
+         *
+         * @param itemCount Number of notifications in the batch
+         * @param bodyBytes Total number of request body bytes sent for the batch
+         * @param latencyMillis Time taken to send the whole batch in milliseconds
+         */
+        public void batchSent(int itemCount, int bodyBytes, long latencyMillis);
+    }
+
     private NotificationBuilder builder;
     private URL rollbarURL;
     private Consumer<Throwable> exceptionHandler = Throwable::printStackTrace;
+    private volatile Transport transport;
+    private volatile RetryPolicy retryPolicy = new ExponentialBackoffRetryPolicy();
+    private volatile AsyncSender asyncSender = null;
+    private volatile NotificationBatcher<CapturedNotification> batcher = null;
+    private URL bulkURL = null;
+    private volatile BatchListener batchListener = null;
+    private volatile OccurrenceLimiter occurrenceLimiter = null;
+    private volatile CircuitBreaker circuitBreaker = null;
+    private volatile GzipBodyCompressor compressor = null;
+    private volatile TokenBucket sendRateLimiter = null;
+    private final LongAdder sendRateLimitedCount = new LongAdder();
+    private final DefaultNotifierMetrics metrics;
+    // set when the transport, sender and metrics are shared through a registry
+    private final AsyncSender.Quota senderQuota;
+    private final Runnable closeListener;
+    private volatile SegmentSpool spool = null;
+    private volatile CallerLocator callerLocator = null;
+    private volatile NotificationSampler sampler = null;
+    private SingleThreadScheduler spoolReplayer = null;
 
     /**
      * Constructs a new rollbar notifier which sends notifications out on demand to rollbar.
@@ -64,6 +126,34 @@ public class RollbarNotifier {
     public RollbarNotifier(URL rollbarURL, String apiKey, String env, String codePackageRoot) {
         this.rollbarURL = rollbarURL;
         builder = new NotificationBuilder(apiKey, env, codePackageRoot);
+        transport = JdkHttpClientTransport.createDefault();
+        metrics = new DefaultNotifierMetrics();
+        senderQuota = null;
+        closeListener = null;
+    }
+
+    /**
+     * Constructs a notifier which shares its transport, async sender and metrics with other
+     * notifiers, see {@link RollbarNotifierRegistry}.
+     *
+     * @param closeListener Invoked when the notifier is closed
+     */
+    RollbarNotifier(URL rollbarURL, String apiKey, String env, String codePackageRoot, Transport transport,
+                    AsyncSender sender, AsyncSender.Quota senderQuota, DefaultNotifierMetrics metrics,
+                    Runnable closeListener) {
+        this.rollbarURL = rollbarURL;
+        this.builder = new NotificationBuilder(apiKey, env, codePackageRoot);
+        this.transport = transport;
+        this.asyncSender = sender;
+        this.senderQuota = senderQuota;
+        this.metrics = metrics;
+        this.closeListener = closeListener;
+    }
+
+    private void checkNotShared(String setting) {
+        if (senderQuota != null) {
+            throw new IllegalStateException(setting + " is managed by the registry for shared notifiers");
+        }
     }
 
     /**
@@ -86,6 +176,522 @@ public class RollbarNotifier {
         this.exceptionHandler = exceptionHandler;
     }
 
+    /**
+     * Passes a failure from outside the notifier, such as an appender's dispatcher thread, to the
+     * exception handler.
+     *
+     * @param t Failure to handle
+     */
+    void handleException(Throwable t) {
+        exceptionHandler.accept(t);
+    }
+
+    /**
+     * Sets the transport used to perform http requests to rollbar.  By default the JDK's http
+     * client is used (see {@link JdkHttpClientTransport#createDefault()}), which keeps connections
+     * open between notifications.  The previous transport is closed.
+     *
+     * @param transport Transport to send notifications with. May not be null.
+     */
+    public void setTransport(Transport transport) {
+        if (null == transport)
+            throw new NullPointerException("transport");
+        checkNotShared("Transport");
+
+        Transport previous = this.transport;
+        this.transport = transport;
+        if (previous != transport) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Returns the transport currently used to send notifications.  Can be used to query connection
+     * statistics, for example {@link PooledHttpTransport#getConnectionsReused()}.
+     *
+     * @return Current transport
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Configures the cache of encoded stack traces.  Repeated notifications for the same throwable
+     * call site (same types, messages and stack frames) reuse the previously encoded trace rather
+     * than walking every frame and rendering the raw stack trace again.  By default up to
+     * 256 traces (or 8MB) are cached.
+     *
+     * @param maxEntries Maximum number of traces to cache, or {@code 0} to disable caching
+     * @param maxBytes Maximum estimated memory the cache may retain
+     */
+    public void setTraceCacheLimits(int maxEntries, long maxBytes) {
+        builder.setTraceCacheLimits(maxEntries, maxBytes);
+    }
+
+    /**
+     * Limits the encoded size of the stack traces in each notification.  Without a limit every
+     * frame of every cause is sent, along with the full {@code raw} stack trace text which repeats
+     * all of it again, which for deep stacks produces items too large for rollbar to accept.
+     *
+     * Within the budget frames a cause shares with its enclosing throwable are elided, traces
+     * deeper than {@code maxFramesPerTrace} keep only their innermost and outermost frames, and
+     * the {@code raw} text is shortened or dropped first when space runs out.
+     *
+     * @param maxTraceBytes Maximum encoded size of a notification's traces, or {@code 0} for no limit
+     * @param maxFramesPerTrace Maximum number of frames to keep for each throwable in the cause chain
+     */
+    public void setTraceBudget(int maxTraceBytes, int maxFramesPerTrace) {
+        builder.setTraceBudget(maxTraceBytes, maxFramesPerTrace);
+    }
+
+    /**
+     * Sets the host name and address reported as the server of each notification.  By default the
+     * local host is resolved in the background (notifications sent before that completes report
+     * the {@code HOSTNAME} environment variable), or the {@code ROLLBAR_SERVER_HOST} and
+     * {@code ROLLBAR_SERVER_IP} environment variables are used if set.
+     *
+     * @param host Host name, or {@code null} to omit it
+     * @param ip Host address, or {@code null} to omit it
+     */
+    public void setServerIdentity(String host, String ip) {
+        builder.setServerIdentity(host, ip);
+    }
+
+    /**
+     * Returns the number of traces which were served from the trace cache.
+     *
+     * @return Number of trace cache hits, {@code 0} if caching is disabled
+     */
+    public long getTraceCacheHitCount() {
+        TraceCache cache = builder.getTraceCache();
+        return cache == null ? 0 : cache.getHitCount();
+    }
+
+    /**
+     * Returns the number of traces which had to be encoded because they were not in the cache.
+     *
+     * @return Number of trace cache misses, {@code 0} if caching is disabled
+     */
+    public long getTraceCacheMissCount() {
+        TraceCache cache = builder.getTraceCache();
+        return cache == null ? 0 : cache.getMissCount();
+    }
+
+    /**
+     * Sets the policy deciding when failed sends are retried.  The default is an
+     * {@link ExponentialBackoffRetryPolicy} making up to 5 attempts.  With async delivery enabled
+     * retries wait on a timer rather than holding a sender thread.
+     *
+     * @param retryPolicy Policy to use. May not be null.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        if (null == retryPolicy)
+            throw new NullPointerException("retryPolicy");
+
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets a circuit breaker shared by all sends from this notifier.  While the breaker is open
+     * notifications fail fast rather than every thread retrying against an unhealthy endpoint
+     * (or are spooled, if {@link #enableSpool(File, int, int, boolean, long)} was used).  Requests which fail with an I/O error, a 5xx or a 429 response count as failures.
+     *
+     * @param circuitBreaker Breaker to use, or {@code null} to disable
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Sets a sampler which decides what fraction of notifications are sent, by level and throwable
+     * class.  Sampled out notifications are dropped before anything else is done with them, sent
+     * ones carry their rate as {@code custom.sample_rate}.
+     *
+     * @param sampler Sampler to use, or {@code null} to send every notification
+     */
+    public void setSampler(NotificationSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    /**
+     * Returns the sampler in use.
+     *
+     * @return Sampler or {@code null} if none is set
+     */
+    public NotificationSampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * Returns the circuit breaker in use.
+     *
+     * @return Circuit breaker or {@code null} if none is set
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Sets a compressor used to gzip request bodies.  Rollbar payloads are very repetitive, so
+     * this usually reduces egress considerably at some cpu cost, which can be judged with
+     * {@link GzipBodyCompressor#getCompressionRatio()} and {@link GzipBodyCompressor#getCpuNanos()}.
+     *
+     * @param compressor Compressor to use, or {@code null} to send bodies uncompressed
+     */
+    public void setCompressor(GzipBodyCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    /**
+     * Returns the compressor in use.
+     *
+     * @return Compressor or {@code null} if bodies are not compressed
+     */
+    public GzipBodyCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * Sets an additional metrics implementation which receives every instrumentation event, for
+     * example an adapter to the application's metrics library.  The notifier's own metrics are
+     * always recorded and available from {@link #getMetricsSnapshot()}.
+     *
+     * @param metrics Metrics to forward events to, or {@code null} to remove
+     */
+    public void setMetrics(NotifierMetrics metrics) {
+        checkNotShared("Metrics");
+        this.metrics.setDelegate(metrics);
+    }
+
+    /**
+     * Returns a snapshot of this notifier's metrics: payload build time and size, request latency
+     * and status codes, retries, drops by reason, async queue depth, trace cache hits and (with a
+     * {@link PooledHttpTransport}) connection pool counts.
+     *
+     * @return New metrics snapshot
+     */
+    public MetricsSnapshot getMetricsSnapshot() {
+        AsyncSender sender = asyncSender;
+        return metrics.snapshot(sender == null ? 0 : sender.getQueueSize(),
+                                getTraceCacheHitCount(), getTraceCacheMissCount(), transport);
+    }
+
+    /**
+     * Limits the overall rate of http requests sent to rollbar across all threads.  Requests over
+     * the limit are dropped rather than sent.
+     *
+     * @param requestsPerSecond Steady state number of requests allowed per second, or {@code 0} to remove the limit
+     * @param burst Number of requests which may be sent at once before the rate applies
+     */
+    public void setSendRateLimit(int requestsPerSecond, int burst) {
+        if (requestsPerSecond <= 0) {
+            sendRateLimiter = null;
+        } else {
+            sendRateLimiter = new TokenBucket(requestsPerSecond, TimeUnit.SECONDS.toNanos(1), burst);
+        }
+    }
+
+    /**
+     * Returns the number of requests dropped due to the limit set by
+     * {@link #setSendRateLimit(int, int)}.
+     *
+     * @return Number of rate limited requests
+     */
+    public long getSendRateLimitedCount() {
+        return sendRateLimitedCount.sum();
+    }
+
+    /**
+     * Enables reporting the caller location for notifications without a throwable.  The class,
+     * method, file and line which invoked {@code notify(...)} is included as the {@code frame} of
+     * the message, so message notifications can be located without the cost of constructing an
+     * exception.  On Java 9+ only the top few frames of the stack are walked.
+     *
+     * Frames from the notifier itself are always skipped.  Code which wraps the notifier (for
+     * example a logging integration) should provide its class name prefixes so that the location
+     * reported is that of the code calling the wrapper.
+     *
+     * @param ignoredClassPrefixes Additional class name prefixes to skip when looking for the caller
+     */
+    public void enableCallerLocation(String... ignoredClassPrefixes) {
+        callerLocator = new CallerLocator(ignoredClassPrefixes);
+    }
+
+    /**
+     * Enables client side rate limiting of repeated notifications.  Notifications are fingerprinted
+     * by their level and throwable type plus the top {@code fingerprintFrames} stack frames (or
+     * the message when there is no throwable).  Each fingerprint may send a burst of
+     * {@code occurrencesPerWindow} notifications, and then that many per window.  Anything over
+     * the limit is dropped before the payload is built.
+     *
+     * At the end of each window, for every fingerprint which had occurrences suppressed, a single
+     * summary notification is sent with the number of suppressed occurrences.
+     *
+     * @param occurrencesPerWindow Number of notifications allowed per fingerprint per window
+     * @param windowMillis Length of the window in milliseconds
+     * @param fingerprintFrames Number of top stack frames to include in the fingerprint
+     */
+    public synchronized void enableRateLimiting(int occurrencesPerWindow, long windowMillis, int fingerprintFrames) {
+        if (occurrenceLimiter != null) {
+            throw new IllegalStateException("Rate limiting already enabled");
+        }
+
+        occurrenceLimiter = new OccurrenceLimiter(occurrencesPerWindow, windowMillis, fingerprintFrames,
+                                                  OccurrenceLimiter.DEFAULT_MAX_FINGERPRINTS,
+                                                  this::notifySuppressed);
+    }
+
+    private void notifySuppressed(Level level, String description, long suppressedCount, long windowMillis) {
+        try {
+            long windowSeconds = Math.max(1, windowMillis / 1000);
+            Map<String, String> customFields = new HashMap<String, String>();
+            customFields.put("suppressed_count", Long.toString(suppressedCount));
+            customFields.put("suppressed_window_seconds", Long.toString(windowSeconds));
+            customFields.put("suppressed_fingerprint", description);
+            deliver(level, suppressedCount + " occurrences suppressed in the last " + windowSeconds + "s: " + description,
+                    null, new RollbarAttributeAdapter() {
+                        @Override
+                        public Map<String, String> getCustomFields() {
+                            return customFields;
+                        }
+                    }, null, 1, null);
+        } catch (Throwable t) {
+            exceptionHandler.accept(t);
+        }
+    }
+
+    /**
+     * Switches this notifier into async delivery mode.  Once enabled {@code notify(...)} only
+     * captures the notification (copying the attribute values from the
+     * {@link RollbarAttributeProvider}), places it into a bounded queue and returns immediately.
+     * The queue is drained by {@code senderThreads} daemon threads which build the payload and
+     * perform the http request (and any retries).
+     *
+     * Call {@link #flush(long)} to wait for queued notifications to be sent, and {@link #close()}
+     * on shutdown so that pending notifications are not lost.
+     *
+     * @param queueSize Maximum number of notifications which may be waiting to be sent
+     * @param senderThreads Number of threads used to send notifications
+     * @param overflowPolicy What to do with a notification when the queue is full
+     * @param blockTimeoutMillis Maximum time to block the caller when using {@link OverflowPolicy#BLOCK}
+     */
+    public synchronized void enableAsyncDelivery(int queueSize, int senderThreads,
+                                                 OverflowPolicy overflowPolicy, long blockTimeoutMillis) {
+        if (asyncSender != null) {
+            throw new IllegalStateException("Async delivery already enabled");
+        }
+
+        asyncSender = new AsyncSender(queueSize, senderThreads, overflowPolicy, blockTimeoutMillis,
+                                      () -> metrics.notificationDropped(NotifierMetrics.DropReason.QUEUE_FULL));
+    }
+
+    /**
+     * Switches this notifier into async delivery mode where each notification is sent on its own
+     * virtual thread.  This behaves as {@link #enableAsyncDelivery(int, int, OverflowPolicy, long)},
+     * except that rather than a few sender threads taking turns, up to {@code maxConcurrentSends}
+     * notifications are sent at once, each blocked send costing a few KB for its virtual thread's
+     * stack rather than a platform thread.  Retries wait on a timer without holding a send slot.
+     *
+     * Virtual threads require Java 21 or newer, on older JVMs {@code fallbackSenderThreads}
+     * platform sender threads are used instead (see {@link #isUsingVirtualThreads()}).
+     *
+     * @param queueSize Maximum number of notifications which may be waiting to be sent
+     * @param maxConcurrentSends Maximum number of notifications being sent at once
+     * @param overflowPolicy What to do with a notification when the queue is full
+     * @param blockTimeoutMillis Maximum time to block the caller when using {@link OverflowPolicy#BLOCK}
+     * @param fallbackSenderThreads Number of sender threads to use if virtual threads are not available
+     */
+    public synchronized void enableVirtualThreadDelivery(int queueSize, int maxConcurrentSends,
+                                                         OverflowPolicy overflowPolicy, long blockTimeoutMillis,
+                                                         int fallbackSenderThreads) {
+        if (asyncSender != null) {
+            throw new IllegalStateException("Async delivery already enabled");
+        }
+
+        ThreadFactory virtualThreadFactory = AsyncSender.virtualThreadFactory("rollbar-send-");
+        asyncSender = new AsyncSender(queueSize, virtualThreadFactory == null ? fallbackSenderThreads : maxConcurrentSends,
+                                      overflowPolicy, blockTimeoutMillis,
+                                      () -> metrics.notificationDropped(NotifierMetrics.DropReason.QUEUE_FULL),
+                                      virtualThreadFactory);
+    }
+
+    /**
+     * Checks if notifications are sent on virtual threads, as requested with
+     * {@link #enableVirtualThreadDelivery(int, int, OverflowPolicy, long, int)}.
+     *
+     * @return {@code true} if each notification is sent on its own virtual thread
+     */
+    public boolean isUsingVirtualThreads() {
+        AsyncSender sender = asyncSender;
+        return sender != null && sender.usesVirtualThreads();
+    }
+
+    /**
+     * Enables batching of notifications in front of the async delivery queue.  Notifications are
+     * collected for up to {@code maxBatchDelayMillis} or until {@code maxBatchSize} have been
+     * collected (whichever comes first), and then the batch is sent by a single sender thread.
+     *
+     * If {@code bulkURL} is provided the batch is sent as one request, with the body being a json
+     * array of the individual item payloads.  If {@code null} the items in the batch are sent one
+     * after another on the same thread to the normal rollbar url.
+     *
+     * Async delivery must be enabled first with
+     * {@link #enableAsyncDelivery(int, int, OverflowPolicy, long)}.
+     *
+     * @param maxBatchSize Maximum number of notifications to send in a single batch
+     * @param maxBatchDelayMillis Maximum time a notification will wait for its batch to fill
+     * @param bulkURL Optional url which accepts a json array of items, or {@code null}
+     */
+    public synchronized void enableBatching(int maxBatchSize, long maxBatchDelayMillis, URL bulkURL) {
+        if (asyncSender == null) {
+            throw new IllegalStateException("Async delivery must be enabled before batching");
+        } else if (batcher != null) {
+            throw new IllegalStateException("Batching already enabled");
+        }
+
+        AsyncSender sender = asyncSender;
+        this.bulkURL = bulkURL;
+        batcher = new NotificationBatcher<CapturedNotification>(maxBatchSize, maxBatchDelayMillis,
+                                                      (batch) -> submit(sender, new BatchDelivery(batch, sender)));
+    }
+
+    /**
+     * Sets a listener to be informed of each batch sent when batching is enabled.
+     *
+     * @param batchListener Listener to invoke, or {@code null} to remove
+     */
+    public void setBatchListener(BatchListener batchListener) {
+        this.batchListener = batchListener;
+    }
+
+    /**
+     * Enables a durable on-disk spool for notifications which could not be delivered.  Once
+     * enabled, a notification which still failed after its retries (an I/O error, a 5xx or a 429
+     * response), or which failed fast because the circuit breaker was open, is appended to a
+     * memory-mapped segment file in {@code directory} rather than dropped.  A background thread
+     * replays spooled notifications every {@code replayIntervalMillis}, oldest first, stopping
+     * for that round at the first failure.
+     *
+     * Notifications still in the spool when the process exits are replayed by the next notifier
+     * which enables a spool on the same directory.  When the spool holds more than
+     * {@code maxSegments} segments the oldest segment is discarded.
+     *
+     * @param directory Directory for the segment files, created if it does not exist
+     * @param segmentBytes Size of each segment file, which also limits the largest notification that can be spooled
+     * @param maxSegments Maximum number of segment files to keep
+     * @param syncEachRecord {@code true} to force each notification to disk as it is spooled (slower, but survives an OS crash)
+     * @param replayIntervalMillis Time between attempts to replay spooled notifications
+     * @throws IOException Thrown if the spool directory or existing segments can not be opened
+     */
+    public synchronized void enableSpool(File directory, int segmentBytes, int maxSegments,
+                                         boolean syncEachRecord, long replayIntervalMillis) throws IOException {
+        if (spool != null) {
+            throw new IllegalStateException("Spool already enabled");
+        } else if (replayIntervalMillis < 1) {
+            throw new IllegalArgumentException("replayIntervalMillis must be >= 1");
+        }
+
+        SegmentSpool spool = new SegmentSpool(directory, segmentBytes, maxSegments, syncEachRecord);
+        spoolReplayer = new SingleThreadScheduler(
+            new ConfigurableThreadFactory("rollbar-spool-", false, true, Thread.NORM_PRIORITY, null, null));
+        spoolReplayer.scheduleWithFixedDelay(() -> replaySpool(spool), replayIntervalMillis, replayIntervalMillis);
+        this.spool = spool;
+    }
+
+    /**
+     * Returns the spool of undelivered notifications, which can be used to query its statistics.
+     *
+     * @return Spool or {@code null} if not enabled
+     */
+    public SegmentSpool getSpool() {
+        return spool;
+    }
+
+    /**
+     * Waits for any queued notifications to be sent.  If async delivery is not enabled this
+     * returns {@code true} immediately.
+     *
+     * @param timeoutMillis Maximum time to wait in milliseconds
+     * @return {@code true} if all notifications were sent, {@code false} if the timeout was reached first
+     * @throws InterruptedException Thrown if interrupted while waiting
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = Clock.accurateForwardProgressingMillis() + timeoutMillis;
+        if (! flushBatches(timeoutMillis)) {
+            return false;
+        }
+        AsyncSender sender = asyncSender;
+        if (sender == null) {
+            return true;
+        }
+        return sender.flush(Math.max(0, deadline - Clock.accurateForwardProgressingMillis()));
+    }
+
+    /**
+     * Hands off any partial batch, and waits for batches being handed off to reach the sender.
+     *
+     * @param timeoutMillis Maximum time to wait in milliseconds
+     * @return {@code true} if every batch reached the sender, {@code false} if the timeout was reached first
+     * @throws InterruptedException Thrown if interrupted while waiting
+     */
+    boolean flushBatches(long timeoutMillis) throws InterruptedException {
+        NotificationBatcher<CapturedNotification> batcher = this.batcher;
+        return batcher == null || batcher.flush(timeoutMillis);
+    }
+
+    /**
+     * Returns the number of notifications discarded because the async queue was full or the
+     * notifier was closed.
+     *
+     * @return Number of dropped notifications, always {@code 0} if async delivery is not enabled
+     */
+    public long getDroppedNotificationCount() {
+        AsyncSender sender = asyncSender;
+        if (sender == null) {
+            return 0;
+        }
+        return sender.getDroppedCount();
+    }
+
+    /**
+     * Stops async delivery, waiting a bounded amount of time for queued notifications to be sent,
+     * and then releases any connections held by the transport.  If async delivery is enabled
+     * notifications after close will be dropped.
+     *
+     * For a notifier from a {@link RollbarNotifierRegistry} only this notifier's own resources are
+     * released (and it is removed from the registry), the shared transport and sender are closed
+     * with the registry.
+     */
+    @Override
+    public void close() {
+        OccurrenceLimiter limiter = occurrenceLimiter;
+        if (limiter != null) {
+            limiter.close();
+        }
+        NotificationBatcher<CapturedNotification> batcher = this.batcher;
+        if (batcher != null) {
+            batcher.close();
+        }
+        AsyncSender sender = asyncSender;
+        if (sender != null && senderQuota == null) {
+            sender.close(CLOSE_TIMEOUT_MILLIS);
+        }
+        synchronized (this) {
+            if (spoolReplayer != null) {
+                spoolReplayer.shutdownNow();
+            }
+        }
+        SegmentSpool spool = this.spool;
+        if (spool != null) {
+            spool.close();
+        }
+        if (senderQuota == null) {
+            transport.close();
+        } else {
+            closeListener.run();
+        }
+    }
+
     public void notify(String message) {
         notify(Level.INFO, message, null);
     }
@@ -127,36 +733,593 @@ public class RollbarNotifier {
     }
 
     public void notify(Level level, String message, Throwable throwable, RollbarAttributeProvider attributeProvider) {
-        JsonObject payload = builder.build(level.toString(), message, throwable, attributeProvider);
-        postJson(payload);
+        notify(level, message, throwable, attributeProvider, true, null, null);
+    }
+
+    /**
+     * Reports a notification described by an event, for example one converted from a logging
+     * framework's event.  The caller location is never located, it is taken from the event.
+     *
+     * @param event Event to report
+     */
+    public void notify(NotificationEvent event) {
+        notify(event.getLevel(), event.getMessage(), event.getThrowable(), event.getAttributeProvider(),
+               false, event.getCallerFrame(), null);
+    }
+
+    public CompletableFuture<DeliveryResult> notifyAsync(String message) {
+        return notifyAsync(Level.INFO, message, null);
+    }
+
+    public CompletableFuture<DeliveryResult> notifyAsync(String message, RollbarAttributeProvider attributeProvider) {
+        return notifyAsync(Level.INFO, message, attributeProvider);
+    }
+
+    public CompletableFuture<DeliveryResult> notifyAsync(Level level, String message) {
+        return notifyAsync(level, message, null, null);
+    }
+
+    public CompletableFuture<DeliveryResult> notifyAsync(Level level, String message,
+                                                         RollbarAttributeProvider attributeProvider) {
+        return notifyAsync(level, message, null, attributeProvider);
+    }
+
+    public CompletableFuture<DeliveryResult> notifyAsync(Throwable throwable) {
+        return notifyAsync(Level.ERROR, throwable, null);
+    }
+
+    public CompletableFuture<DeliveryResult> notifyAsync(Throwable throwable, RollbarAttributeProvider attributeProvider) {
+        return notifyAsync(Level.ERROR, throwable, attributeProvider);
+    }
+
+    public CompletableFuture<DeliveryResult> notifyAsync(String message, Throwable throwable) {
+        return notifyAsync(Level.ERROR, message, throwable, null);
+    }
+
+    public CompletableFuture<DeliveryResult> notifyAsync(String message, Throwable throwable,
+                                                         RollbarAttributeProvider attributeProvider) {
+        return notifyAsync(Level.ERROR, message, throwable, attributeProvider);
+    }
+
+    public CompletableFuture<DeliveryResult> notifyAsync(Level level, Throwable throwable) {
+        return notifyAsync(level, null, throwable, null);
+    }
+
+    public CompletableFuture<DeliveryResult> notifyAsync(Level level, Throwable throwable,
+                                                         RollbarAttributeProvider attributeProvider) {
+        return notifyAsync(level, null, throwable, attributeProvider);
+    }
+
+    /**
+     * Reports a notification the same as {@code notify}, returning a future which completes once
+     * its outcome is known.  Without async delivery (or batching) the notification is still sent
+     * on the calling thread, and the returned future is already complete.
+     *
+     * <p>The future completes with a {@link DeliveryResult} for every outcome rollbar or the
+     * notifier decided, including notifications which were sampled, suppressed or dropped from a
+     * full queue.  It only completes exceptionally if an unexpected error (which is also passed to
+     * the exception handler) prevented the notification from being built or sent.  Dependent
+     * stages without an executor run on the sender thread, and so should not block.</p>
+     *
+     * @param level Level of the notification
+     * @param message Message to report, or {@code null}
+     * @param throwable Throwable to report, or {@code null}
+     * @param attributeProvider Provider for additional attributes, or {@code null}
+     * @return Future completed with the outcome of the notification
+     */
+    public CompletableFuture<DeliveryResult> notifyAsync(Level level, String message, Throwable throwable,
+                                                         RollbarAttributeProvider attributeProvider) {
+        PendingResult result = new PendingResult();
+        try {
+            notify(level, message, throwable, attributeProvider, true, null, result);
+        } catch (Throwable t) {
+            result.failed(t);
+        }
+        return result.getFuture();
+    }
+
+    /**
+     * Reports a notification described by an event, returning a future which completes once its
+     * outcome is known.  See {@link #notifyAsync(Level, String, Throwable, RollbarAttributeProvider)}.
+     *
+     * @param event Event to report
+     * @return Future completed with the outcome of the notification
+     */
+    public CompletableFuture<DeliveryResult> notifyAsync(NotificationEvent event) {
+        PendingResult result = new PendingResult();
+        try {
+            notify(event.getLevel(), event.getMessage(), event.getThrowable(), event.getAttributeProvider(),
+                   false, event.getCallerFrame(), result);
+        } catch (Throwable t) {
+            result.failed(t);
+        }
+        return result.getFuture();
+    }
+
+    /**
+     * Reports a notification, unless it is sampled out or suppressed.
+     *
+     * @param locateCaller {@code true} to locate the caller if caller location is enabled
+     * @param callerFrame Location the notification was reported from, or {@code null}
+     * @param result Result to complete with the outcome, or {@code null} if nobody is waiting on it
+     */
+    private void notify(Level level, String message, Throwable throwable, RollbarAttributeProvider attributeProvider,
+                        boolean locateCaller, StackTraceElement callerFrame, PendingResult result) {
+        NotificationSampler sampler = this.sampler;
+        double sampleRate = 1;
+        if (sampler != null) {
+            sampleRate = sampler.getSampleRate(level, throwable);
+            if (! sampler.sample(sampleRate, attributeProvider)) {
+                dropped(result, NotifierMetrics.DropReason.SAMPLED);
+                return;
+            }
+        }
+
+        OccurrenceLimiter limiter = occurrenceLimiter;
+        if (limiter != null && ! limiter.tryAcquire(level, message, throwable)) {
+            dropped(result, NotifierMetrics.DropReason.SUPPRESSED);
+            return;
+        }
+
+        CallerLocator locator = callerLocator;
+        if (locateCaller && locator != null && throwable == null) {
+            callerFrame = locator.locate();
+        }
+
+        deliver(level, message, throwable, attributeProvider, callerFrame, sampleRate, result);
+    }
+
+    private void dropped(PendingResult result, NotifierMetrics.DropReason reason) {
+        metrics.notificationDropped(reason);
+        if (result != null) {
+            result.dropped(reason);
+        }
+    }
+
+    private void deliver(Level level, String message, Throwable throwable, RollbarAttributeProvider attributeProvider,
+                         StackTraceElement callerFrame, double sampleRate, PendingResult result) {
+        NotificationBatcher<CapturedNotification> batcher = this.batcher;
+        AsyncSender sender = asyncSender;
+        if (batcher != null || sender != null) {
+            // only the inputs are captured here, the payload is built on a sender thread
+            CapturedNotification notification = new CapturedNotification(level, message, throwable,
+                                                                             attributeProvider, callerFrame,
+                                                                             sampleRate, result);
+            if (batcher != null) {
+                batcher.add(notification);
+            } else {
+                submit(sender, new CapturedDelivery(notification, sender));
+            }
+            return;
+        }
+
+        Utf8JsonWriter writer = acquirePayloadWriter();
+        try {
+            long buildStart = System.nanoTime();
+            builder.write(writer, level.toString(), message, throwable, attributeProvider,
+                          NotificationBuilder.currentTimeMillis(), callerFrame, sampleRate);
+            metrics.payloadBuilt(System.nanoTime() - buildStart, writer.size());
+
+            // send straight from the reusable buffer, it is held until the delivery is done with it
+            byte[] buffer = writer.getBuffer();
+            int size = writer.size();
+            postJson(rollbarURL, buffer, 0, size, null, result == null ? null : Collections.singletonList(result),
+                     () -> spool(buffer, 0, size));
+        } finally {
+            PAYLOAD_WRITERS.release(writer);
+        }
+    }
+
+    private void submit(AsyncSender sender, Runnable delivery) {
+        AsyncSender.Quota quota = senderQuota;
+        if (quota == null) {
+            sender.submit(delivery);
+        } else {
+            sender.submit(delivery, quota);
+        }
+    }
+
+    /**
+     * Takes an empty writer to build a payload in.  The payload is posted (and retried or spooled)
+     * straight from the writer's buffer, so it is only released once the delivery is done with it.
+     * A notify made from a callback in the meantime, such as the exception handler, metrics or a
+     * result's continuation, takes another writer.
+     */
+    private static Utf8JsonWriter acquirePayloadWriter() {
+        Utf8JsonWriter writer = PAYLOAD_WRITERS.acquire();
+        writer.reset();
+        return writer;
     }
 
-    private void postJson(JsonObject json) {
+    /**
+     * Appends the payload for a captured notification to the writer, recording the build metrics.
+     */
+    private void writeCaptured(CapturedNotification notification, Utf8JsonWriter writer) {
+        int startSize = writer.size();
+        long buildStart = System.nanoTime();
+        notification.writeTo(builder, writer);
+        metrics.payloadBuilt(System.nanoTime() - buildStart, writer.size() - startSize);
+    }
+
+    /**
+     * Rebuilds and spools a captured notification.  The payload is rebuilt rather than kept since
+     * the original may have been sent from a buffer which has been reused by now.
+     */
+    private boolean spoolCaptured(CapturedNotification notification) {
+        Utf8JsonWriter writer = acquirePayloadWriter();
+        try {
+            writeCaptured(notification, writer);
+            return spool(writer.getBuffer(), 0, writer.size());
+        } finally {
+            PAYLOAD_WRITERS.release(writer);
+        }
+    }
+
+    private int postCaptured(CapturedNotification notification, AsyncSender sender) {
+        PendingResult result = notification.getResult();
+        Utf8JsonWriter writer = acquirePayloadWriter();
+        try {
+            try {
+                writeCaptured(notification, writer);
+            } catch (Throwable t) {
+                exceptionHandler.accept(t);
+                if (result != null) {
+                    result.failed(t);
+                }
+                return 0;
+            }
+            // sent straight from the pooled buffer, a delivery copies it only if it has to wait to retry
+            return postJson(rollbarURL, writer.getBuffer(), 0, writer.size(), sender,
+                            result == null ? null : Collections.singletonList(result),
+                            () -> spoolCaptured(notification));
+        } finally {
+            PAYLOAD_WRITERS.release(writer);
+        }
+    }
+
+    private void postBatch(List<CapturedNotification> batch, AsyncSender sender) {
+        long startTime = Clock.accurateForwardProgressingMillis();
+        int bodyBytes = 0;
+        if (bulkURL != null) {
+            List<PendingResult> results = null;
+            for (CapturedNotification notification : batch) {
+                if (notification.getResult() != null) {
+                    if (results == null) {
+                        results = new ArrayList<PendingResult>(batch.size());
+                    }
+                    results.add(notification.getResult());
+                }
+            }
+            Utf8JsonWriter writer = acquirePayloadWriter();
+            try {
+                try {
+                    // items are written straight into the bulk array rather than built separately
+                    writer.beginArray();
+                    for (CapturedNotification notification : batch) {
+                        writeCaptured(notification, writer);
+                    }
+                    writer.endArray();
+                } catch (Throwable t) {
+                    exceptionHandler.accept(t);
+                    if (results != null) {
+                        results.forEach((result) -> result.failed(t));
+                    }
+                    return;
+                }
+                bodyBytes = postJson(bulkURL, writer.getBuffer(), 0, writer.size(), sender, results, () -> {
+                    // spooled as individual items, replay always goes to the normal url
+                    boolean spooled = true;
+                    for (CapturedNotification notification : batch) {
+                        spooled &= spoolCaptured(notification);
+                    }
+                    return spooled;
+                });
+            } finally {
+                PAYLOAD_WRITERS.release(writer);
+            }
+        } else {
+            for (CapturedNotification notification : batch) {
+                bodyBytes += postCaptured(notification, sender);
+            }
+        }
+
+        BatchListener listener = batchListener;
+        if (listener != null) {
+            try {
+                listener.batchSent(batch.size(), bodyBytes,
+                                   Clock.accurateForwardProgressingMillis() - startTime);
+            } catch (Throwable t) {
+                exceptionHandler.accept(t);
+            }
+        }
+    }
+
+    private boolean spool(byte[] payload, int offset, int length) {
+        SegmentSpool spool = this.spool;
+        if (spool == null || ! spool.append(payload, offset, length)) {
+            metrics.notificationDropped(NotifierMetrics.DropReason.UNDELIVERABLE);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sends spooled notifications oldest first, until the spool is empty or a send fails.
+     */
+    private void replaySpool(SegmentSpool spool) {
+        try {
+            byte[] payload;
+            while ((payload = spool.peek()) != null) {
+                TokenBucket rateLimiter = sendRateLimiter;
+                if (rateLimiter != null && ! rateLimiter.tryAcquire()) {
+                    return;
+                }
+                CircuitBreaker breaker = circuitBreaker;
+                if (breaker != null && ! breaker.allowRequest()) {
+                    return;
+                }
+
+                HttpRequest request = new HttpRequest(transport, rollbarURL, "POST");
+                request.setRequestProperty("Content-Type", "application/json");
+                request.setRequestProperty("Accept", "application/json");
+                request.setBody(payload);
+                GzipBodyCompressor compressor = this.compressor;
+                if (compressor != null) {
+                    request.compressBody(compressor);
+                }
+                boolean failed = true;
+                try {
+                    execute(request);
+                    failed = isFailure(request.getLastResponse());
+                } finally {
+                    // also when the transport throws, a trial request must always report back
+                    if (breaker != null) {
+                        if (failed) {
+                            breaker.recordFailure();
+                        } else {
+                            breaker.recordSuccess();
+                        }
+                    }
+                }
+                if (failed) {
+                    // try again next round
+                    return;
+                }
+                // delivered, or rejected by rollbar in which case replaying will not help
+                spool.markDelivered();
+            }
+        } catch (Throwable t) {
+            exceptionHandler.accept(t);
+        }
+    }
+
+    private void execute(HttpRequest request) {
+        long start = System.nanoTime();
+        request.execute();
+        Transport.Response response = request.getLastResponse();
+        metrics.requestCompleted(response == null ? -1 : response.getStatusCode(), System.nanoTime() - start);
+    }
+
+    private static boolean isFailure(Transport.Response response) {
+        return response == null || response.getStatusCode() >= 500 || response.getStatusCode() == 429;
+    }
+
+    /**
+     * Sends a payload to rollbar.  Without an async sender retries block the calling thread, with
+     * one each retry is scheduled on a timer and re-queued so no thread waits during the backoff.
+     *
+     * @param results Results to complete with the outcome, or {@code null} if nobody is waiting on it
+     * @param undeliverable Invoked if the payload could not be delivered, to spool it, returns {@code true} if spooled
+     * @return Number of body bytes (after compression), or {@code 0} if the send was rejected
+     */
+    private int postJson(URL url, byte[] body, int offset, int length, AsyncSender sender,
+                         List<PendingResult> results, BooleanSupplier undeliverable) {
         try {
-            postJsonImpl(json);
+            TokenBucket rateLimiter = sendRateLimiter;
+            if (rateLimiter != null && ! rateLimiter.tryAcquire()) {
+                sendRateLimitedCount.increment();
+                metrics.notificationDropped(NotifierMetrics.DropReason.SEND_RATE_LIMITED);
+                if (results != null) {
+                    results.forEach((result) -> result.dropped(NotifierMetrics.DropReason.SEND_RATE_LIMITED));
+                }
+                return 0;
+            }
+
+            HttpRequest request = new HttpRequest(transport, url, "POST");
+
+            request.setRequestProperty("Content-Type", "application/json");
+            request.setRequestProperty("Accept", "application/json");
+            request.setBody(body, offset, length);
+            GzipBodyCompressor compressor = this.compressor;
+            if (compressor != null) {
+                request.compressBody(compressor);
+            }
+
+            // bulk responses do not identify the items they created
+            new Delivery(request, sender, results, url == rollbarURL, undeliverable).run();
+            return request.getBodyLength();
         } catch (Throwable t) {
             exceptionHandler.accept(t);
+            if (results != null) {
+                results.forEach((result) -> result.failed(t));
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Sends a single captured notification from a sender thread.
+     */
+    private class CapturedDelivery implements AsyncSender.Discardable {
+        private final CapturedNotification notification;
+        private final AsyncSender sender;
+
+        private CapturedDelivery(CapturedNotification notification, AsyncSender sender) {
+            this.notification = notification;
+            this.sender = sender;
+        }
+
+        @Override
+        public void run() {
+            postCaptured(notification, sender);
+        }
+
+        @Override
+        public void discarded() {
+            PendingResult result = notification.getResult();
+            if (result != null) {
+                result.dropped(NotifierMetrics.DropReason.QUEUE_FULL);
+            }
+        }
+    }
+
+    /**
+     * Sends a batch of captured notifications from a sender thread.
+     */
+    private class BatchDelivery implements AsyncSender.Discardable {
+        private final List<CapturedNotification> batch;
+        private final AsyncSender sender;
+
+        private BatchDelivery(List<CapturedNotification> batch, AsyncSender sender) {
+            this.batch = batch;
+            this.sender = sender;
+        }
+
+        @Override
+        public void run() {
+            postBatch(batch, sender);
+        }
+
+        @Override
+        public void discarded() {
+            for (CapturedNotification notification : batch) {
+                PendingResult result = notification.getResult();
+                if (result != null) {
+                    result.dropped(NotifierMetrics.DropReason.QUEUE_FULL);
+                }
+            }
         }
     }
 
-    private void postJsonImpl(JsonObject json) {
-        HttpRequest request = new HttpRequest(rollbarURL, "POST");
+    /**
+     * A single notification being sent, including any retries.
+     */
+    private class Delivery implements AsyncSender.Discardable {
+        private final HttpRequest request;
+        private final AsyncSender sender;
+        private final List<PendingResult> results;
+        private final boolean readItemUuid;
+        private final BooleanSupplier undeliverable;
+        private boolean failed = false;
 
-        request.setRequestProperty("Content-Type", "application/json");
-        request.setRequestProperty("Accept", "application/json");
-        request.setBody(json.toString());
+        private Delivery(HttpRequest request, AsyncSender sender, List<PendingResult> results,
+                         boolean readItemUuid, BooleanSupplier undeliverable) {
+            this.request = request;
+            this.sender = sender;
+            this.results = results;
+            this.readItemUuid = readItemUuid;
+            this.undeliverable = undeliverable;
+        }
 
-        boolean success = request.execute();
-        while (! success && request.getAttemptNumber() < MAX_RETRIES) {
+        @Override
+        public void run() {
             try {
-                // delay attempt to execute again
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                // exit without sending result
-                return;
+                long retryDelay = attempt();
+                if (sender != null) {
+                    if (retryDelay >= 0) {
+                        metrics.retryScheduled();
+                        // the pooled buffer will be reused before the retry runs
+                        request.detachBody();
+                        sender.scheduleRetry(this, retryDelay);
+                    } else {
+                        finished();
+                    }
+                    return;
+                }
+
+                while (retryDelay >= 0) {
+                    metrics.retryScheduled();
+                    try {
+                        // delay attempt to execute again
+                        Thread.sleep(retryDelay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        // exit without sending result
+                        complete(DeliveryResult.Outcome.FAILED);
+                        return;
+                    }
+                    retryDelay = attempt();
+                }
+                finished();
+            } catch (Throwable t) {
+                exceptionHandler.accept(t);
+                if (results != null) {
+                    results.forEach((result) -> result.failed(t));
+                }
+            }
+        }
+
+        @Override
+        public void discarded() {
+            // a retry which did not fit back in the queue
+            if (results != null) {
+                results.forEach((result) -> result.dropped(NotifierMetrics.DropReason.QUEUE_FULL));
+            }
+        }
+
+        /**
+         * Handles the outcome once no further attempts will be made.
+         */
+        private void finished() {
+            if (failed) {
+                complete(undeliverable.getAsBoolean() ?
+                           DeliveryResult.Outcome.SPOOLED : DeliveryResult.Outcome.FAILED);
+            } else {
+                int status = request.getLastResponse().getStatusCode();
+                complete(status >= 200 && status < 300 ?
+                           DeliveryResult.Outcome.DELIVERED : DeliveryResult.Outcome.REJECTED);
+            }
+        }
+
+        private void complete(DeliveryResult.Outcome outcome) {
+            if (results != null) {
+                for (PendingResult result : results) {
+                    result.completed(outcome, request, readItemUuid);
+                }
+            }
+        }
+
+        /**
+         * Makes one attempt at sending the request.
+         *
+         * @return Delay before the next attempt, or negative if no further attempt should be made
+         */
+        private long attempt() {
+            CircuitBreaker breaker = circuitBreaker;
+            if (breaker != null && ! breaker.allowRequest()) {
+                // endpoint is known to be unhealthy, give up (or spool) rather than retry
+                failed = true;
+                return -1;
+            }
+
+            failed = true;
+            try {
+                execute(request);
+                failed = isFailure(request.getLastResponse());
+            } finally {
+                // also when the transport throws, a trial request must always report back
+                if (breaker != null) {
+                    if (failed) {
+                        breaker.recordFailure();
+                    } else {
+                        breaker.recordSuccess();
+                    }
+                }
             }
-            success = request.execute();
+            Transport.Response response = request.getLastResponse();
+
+            return retryPolicy.getRetryDelayMillis(request.getAttemptNumber(), response,
+                                                   request.getLastException());
         }
     }
 }
@@ -0,0 +1,201 @@
+package com.muantech.rollbar.java;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.threadly.util.Clock;
+
+import com.muantech.rollbar.java.RollbarNotifier.OverflowPolicy;
+
+/**
+ * <p>Hands out notifiers for any number of rollbar projects (access tokens and environments)
+ * which all share one transport, one async delivery queue with its sender threads and retry
+ * scheduler, and one set of metrics.  The number of threads and sockets stays the same no matter
+ * how many projects a process reports to.</p>
+ *
+ * <p>To keep one noisy project from starving the others, each notifier may only have a limited
+ * number of notifications waiting in the shared queue, further notifications from it are dropped
+ * until its queued notifications have been sent.</p>
+ *
+ * <p>The notifiers are otherwise configured individually (rate limiting, batching, spooling and
+ * so on), except for their transport and metrics which are set on the registry.  Closing the
+ * registry closes every notifier it handed out.</p>
+ */
+public class RollbarNotifierRegistry implements AutoCloseable {
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+    private final URL rollbarURL;
+    private final Transport transport;
+    private final AsyncSender sender;
+    private final int maxQueuedPerNotifier;
+    private final DefaultNotifierMetrics metrics = new DefaultNotifierMetrics();
+    private final ConcurrentHashMap<List<String>, RollbarNotifier> notifiers;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs a new registry using the default transport (see
+     * {@link JdkHttpClientTransport#createDefault()}), which drops notifications when the queue is
+     * full.
+     *
+     * @param rollbarURL Url to hit rollbar with (typically {@code "https://api.rollbar.com/api/1/item/"}
+     * @param queueSize Maximum number of notifications which may be waiting to be sent, across all notifiers
+     * @param senderThreads Number of threads used to send notifications
+     * @param maxQueuedPerNotifier Maximum number of notifications a single notifier may have waiting
+     */
+    public RollbarNotifierRegistry(URL rollbarURL, int queueSize, int senderThreads, int maxQueuedPerNotifier) {
+        this(rollbarURL, JdkHttpClientTransport.createDefault(), queueSize, senderThreads,
+             OverflowPolicy.DROP_NEWEST, 0, maxQueuedPerNotifier);
+    }
+
+    /**
+     * Constructs a new registry.
+     *
+     * @param rollbarURL Url to hit rollbar with (typically {@code "https://api.rollbar.com/api/1/item/"}
+     * @param transport Transport to send every notifier's notifications with
+     * @param queueSize Maximum number of notifications which may be waiting to be sent, across all notifiers
+     * @param senderThreads Number of threads used to send notifications
+     * @param overflowPolicy What to do with a notification when the queue is full
+     * @param blockTimeoutMillis Maximum time to block the caller when using {@link OverflowPolicy#BLOCK}
+     * @param maxQueuedPerNotifier Maximum number of notifications a single notifier may have waiting
+     */
+    public RollbarNotifierRegistry(URL rollbarURL, Transport transport, int queueSize, int senderThreads,
+                                   OverflowPolicy overflowPolicy, long blockTimeoutMillis,
+                                   int maxQueuedPerNotifier) {
+        if (null == rollbarURL)
+            throw new NullPointerException("rollbarURL");
+        if (null == transport)
+            throw new NullPointerException("transport");
+        if (maxQueuedPerNotifier < 1) {
+            throw new IllegalArgumentException("maxQueuedPerNotifier must be >= 1");
+        }
+
+        this.rollbarURL = rollbarURL;
+        this.transport = transport;
+        this.maxQueuedPerNotifier = maxQueuedPerNotifier;
+        this.sender = new AsyncSender(queueSize, senderThreads, overflowPolicy, blockTimeoutMillis,
+                                      () -> metrics.notificationDropped(NotifierMetrics.DropReason.QUEUE_FULL));
+        this.notifiers = new ConcurrentHashMap<List<String>, RollbarNotifier>();
+    }
+
+    /**
+     * Returns the notifier for a project and environment, creating it if needed.
+     *
+     * @param apiKey API Key to notify against rollbar with
+     * @param env Name of the environment sending the notifications
+     * @return Notifier sharing this registry's transport and sender
+     * @throws IllegalStateException Thrown if the registry is closed
+     */
+    public RollbarNotifier getNotifier(String apiKey, String env) {
+        return getNotifier(apiKey, env, null);
+    }
+
+    /**
+     * Returns the notifier for a project and environment, creating it if needed.
+     *
+     * @param apiKey API Key to notify against rollbar with
+     * @param env Name of the environment sending the notifications
+     * @param codePackageRoot code package root (for example {@code "com.fullcontact"}), to be used with github integration
+     * @return Notifier sharing this registry's transport and sender
+     * @throws IllegalStateException Thrown if the registry is closed
+     */
+    public RollbarNotifier getNotifier(String apiKey, String env, String codePackageRoot) {
+        if (closed) {
+            throw new IllegalStateException("Registry is closed");
+        }
+
+        List<String> key = Arrays.asList(apiKey, env, codePackageRoot);
+        RollbarNotifier notifier = notifiers.computeIfAbsent(key, (k) -> {
+            if (closed) {
+                throw new IllegalStateException("Registry is closed");
+            }
+            AsyncSender.Quota quota = new AsyncSender.Quota(maxQueuedPerNotifier);
+            return new RollbarNotifier(rollbarURL, apiKey, env, codePackageRoot, transport, sender, quota,
+                                       metrics, () -> notifiers.remove(k));
+        });
+        if (closed) {
+            // close may have iterated the notifiers before this one was added, so it might never
+            // be closed (nor have a sender to use), closing again is harmless if it was
+            notifier.close();
+            throw new IllegalStateException("Registry is closed");
+        }
+        return notifier;
+    }
+
+    /**
+     * Returns the number of notifiers currently handed out.
+     *
+     * @return Number of open notifiers
+     */
+    public int getNotifierCount() {
+        return notifiers.size();
+    }
+
+    /**
+     * Returns the transport shared by every notifier.
+     *
+     * @return Shared transport
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets an additional metrics implementation which receives every instrumentation event from
+     * every notifier.
+     *
+     * @param metrics Metrics to forward events to, or {@code null} to remove
+     */
+    public void setMetrics(NotifierMetrics metrics) {
+        this.metrics.setDelegate(metrics);
+    }
+
+    /**
+     * Returns a snapshot of the metrics across every notifier.
+     *
+     * @return New metrics snapshot
+     */
+    public MetricsSnapshot getMetricsSnapshot() {
+        long hits = 0;
+        long misses = 0;
+        for (RollbarNotifier notifier : notifiers.values()) {
+            hits += notifier.getTraceCacheHitCount();
+            misses += notifier.getTraceCacheMissCount();
+        }
+        return metrics.snapshot(sender.getQueueSize(), hits, misses, transport);
+    }
+
+    /**
+     * Waits for every notifier's queued notifications to be sent.
+     *
+     * @param timeoutMillis Maximum time to wait in milliseconds
+     * @return {@code true} if all notifications were sent, {@code false} if the timeout was reached first
+     * @throws InterruptedException Thrown if interrupted while waiting
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = Clock.accurateForwardProgressingMillis() + timeoutMillis;
+        for (RollbarNotifier notifier : notifiers.values()) {
+            // the shared queue is waited on below
+            long remaining = deadline - Clock.accurateForwardProgressingMillis();
+            if (! notifier.flushBatches(Math.max(0, remaining))) {
+                return false;
+            }
+        }
+        return sender.flush(Math.max(0, deadline - Clock.accurateForwardProgressingMillis()));
+    }
+
+    /**
+     * Closes every notifier, waits a bounded amount of time for queued notifications to be sent,
+     * and then stops the sender threads and closes the transport.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (RollbarNotifier notifier : notifiers.values()) {
+            notifier.close();
+        }
+        sender.close(CLOSE_TIMEOUT_MILLIS);
+        transport.close();
+    }
+}
@@ -0,0 +1,86 @@
+package com.muantech.rollbar.java;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * <p>Small bounded pool of reusable scratch objects (buffers, deflaters).  Unlike a
+ * {@link ThreadLocal} this works for deliveries on virtual threads, where each delivery runs on a
+ * new thread and a thread local value would never be reused (nor released).</p>
+ *
+ * <p>Objects are kept in a fixed array of slots, which threads start probing from different
+ * points so they rarely contend.  An acquired object is out of the pool until released, so a
+ * nested use on the same thread (a notify from within a callback) simply gets another one.  When
+ * the pool is empty a new object is created, and when it is full a released object is discarded.</p>
+ *
+ * @param <T> Type of object pooled
+ */
+class ScratchPool<T> {
+    static final int DEFAULT_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private final AtomicReferenceArray<T> slots;
+    private final Supplier<T> factory;
+    private final Consumer<T> discarder;
+
+    /**
+     * Constructs a new pool.
+     *
+     * @param size Maximum number of idle objects kept
+     * @param factory Creates a new object when none are idle
+     * @param discarder Called with an object which is dropped because the pool is full, or {@code null}
+     */
+    ScratchPool(int size, Supplier<T> factory, Consumer<T> discarder) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be >= 1");
+        } else if (null == factory) {
+            throw new NullPointerException("factory");
+        }
+        this.slots = new AtomicReferenceArray<T>(size);
+        this.factory = factory;
+        this.discarder = discarder;
+    }
+
+    /**
+     * Takes an idle object from the pool, or creates a new one if there are none.
+     *
+     * @return Object for the exclusive use of the caller until it is released
+     */
+    T acquire() {
+        int size = slots.length();
+        int start = probe(size);
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            if (slots.get(index) != null) {
+                T item = slots.getAndSet(index, null);
+                if (item != null) {
+                    return item;
+                }
+            }
+        }
+        return factory.get();
+    }
+
+    /**
+     * Returns an object to the pool, discarding it if the pool is already full.
+     *
+     * @param item Object previously acquired, which the caller must no longer use
+     */
+    void release(T item) {
+        int size = slots.length();
+        int start = probe(size);
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, item)) {
+                return;
+            }
+        }
+        if (discarder != null) {
+            discarder.accept(item);
+        }
+    }
+
+    private static int probe(int size) {
+        return (int) (Thread.currentThread().getId() % size);
+    }
+}
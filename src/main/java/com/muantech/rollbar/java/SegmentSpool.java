@@ -0,0 +1,442 @@
+package com.muantech.rollbar.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Durable on-disk spool for notifications which could not be delivered.  Payloads are appended
+ * to fixed size, memory-mapped segment files so an append is just a copy into the page cache (no
+ * system call, and no fsync unless {@code syncEachRecord} is enabled).  Segments which are still
+ * on disk when the process starts again are picked up and replayed.</p>
+ *
+ * <p>Each segment starts with a small header, followed by records framed as
+ * {@code [int length][int crc32][byte state][payload]}.  The length is written last, so a record
+ * is only visible once complete, and the crc protects against torn pages if the host crashes.
+ * Once a record is delivered its state byte is flipped so it is not replayed again, and a segment
+ * is deleted once every record in it has been delivered.  When more than {@code maxSegments}
+ * segments exist the oldest is deleted, dropping whatever it still contained.</p>
+ *
+ * <p>A spool holds a {@link FileLock} on {@value #LOCK_FILE} in its directory until closed, so a
+ * second spool (in this or another process) can not be opened on the same directory and write
+ * over its segments.  Segments are unmapped as soon as they are closed or deleted where the JVM
+ * allows it; otherwise the mapping (and on Windows the file, which then can not be deleted
+ * either) is only released once the buffer is garbage collected.</p>
+ */
+public class SegmentSpool {
+    private static final int MAGIC = 0x52425350; // "RBSP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_HEADER_BYTES = 9;
+    private static final byte STATE_PENDING = 0;
+    private static final byte STATE_DELIVERED = 1;
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String LOCK_FILE = "spool.lock";
+    // releases a mapping right away rather than when the buffer is collected, null if not possible
+    private static final Consumer<ByteBuffer> UNMAPPER = findUnmapper();
+
+    private final File directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final boolean syncEachRecord;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<Segment>();
+    private final LongAdder appendedCount = new LongAdder();
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder evictedSegmentCount = new LongAdder();
+    private Segment writeSegment = null;
+    private Segment peekSegment = null;
+    private long nextSequence = 0;
+    private boolean closed = false;
+
+    /**
+     * Opens (or creates) a spool in the given directory.  Any existing segments are loaded so
+     * their undelivered records will be replayed.
+     *
+     * @param directory Directory to store segment files in
+     * @param segmentBytes Size of each segment file
+     * @param maxSegments Maximum number of segment files before the oldest is evicted
+     * @param syncEachRecord {@code true} to force every record to disk as it is appended
+     * @throws IOException Thrown if the directory or existing segments can not be opened, or another spool has the directory open
+     */
+    SegmentSpool(File directory, int segmentBytes, int maxSegments, boolean syncEachRecord) throws IOException {
+        if (segmentBytes <= HEADER_BYTES + RECORD_HEADER_BYTES) {
+            throw new IllegalArgumentException("segmentBytes too small");
+        } else if (maxSegments < 1) {
+            throw new IllegalArgumentException("maxSegments must be >= 1");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.syncEachRecord = syncEachRecord;
+
+        if (! directory.isDirectory() && ! directory.mkdirs()) {
+            throw new IOException("Unable to create spool directory: " + directory);
+        }
+
+        lockChannel = new RandomAccessFile(new File(directory, LOCK_FILE), "rw").getChannel();
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by another spool in this jvm
+            lock = null;
+        } catch (IOException e) {
+            lockChannel.close();
+            throw e;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Spool directory is already in use: " + directory);
+        }
+        this.lock = lock;
+
+        try {
+            loadExisting();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void loadExisting() throws IOException {
+        List<File> existing = new ArrayList<File>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().startsWith(SEGMENT_PREFIX) && f.getName().endsWith(SEGMENT_SUFFIX)) {
+                    existing.add(f);
+                }
+            }
+        }
+        Collections.sort(existing);
+        for (File f : existing) {
+            Segment segment = openExisting(f);
+            if (segment != null) {
+                segments.addLast(segment);
+                nextSequence = Math.max(nextSequence, segment.sequence + 1);
+            }
+        }
+    }
+
+    private Segment openExisting(File file) throws IOException {
+        long sequence;
+        try {
+            String name = file.getName();
+            sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        Segment segment = new Segment(sequence, file, (int) Math.min(Integer.MAX_VALUE, file.length()));
+        if (segment.capacity < HEADER_BYTES || segment.buffer.getInt(0) != MAGIC ||
+            segment.buffer.getInt(4) != VERSION) {
+            segment.delete();
+            return null;
+        }
+
+        // find the end of the valid records, anything after a bad crc is a torn write
+        int position = HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_BYTES <= segment.capacity) {
+            int length = segment.buffer.getInt(position);
+            int end = position + RECORD_HEADER_BYTES + length;
+            if (length <= 0 || end > segment.capacity || end < 0) {
+                break;
+            }
+            ByteBuffer payload = segment.buffer.duplicate();
+            payload.limit(end).position(position + RECORD_HEADER_BYTES);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.buffer.getInt(position + 4)) {
+                break;
+            }
+            position = end;
+        }
+        // segments from a previous run are never appended to again
+        segment.writePosition = position;
+        return segment;
+    }
+
+    /**
+     * Appends a payload to the spool.
+     *
+     * @param payload Array containing the payload
+     * @param offset Offset the payload starts at
+     * @param length Length of the payload
+     * @return {@code true} if appended, {@code false} if it was dropped (too large or I/O failure)
+     */
+    public synchronized boolean append(byte[] payload, int offset, int length) {
+        int recordBytes = RECORD_HEADER_BYTES + length;
+        if (closed || length <= 0 || recordBytes > segmentBytes - HEADER_BYTES) {
+            droppedCount.increment();
+            return false;
+        }
+
+        try {
+            if (writeSegment == null || writeSegment.writePosition + recordBytes > writeSegment.capacity) {
+                writeSegment = newSegment();
+            }
+        } catch (IOException e) {
+            droppedCount.increment();
+            return false;
+        }
+
+        Segment segment = writeSegment;
+        int position = segment.writePosition;
+        ByteBuffer target = segment.buffer.duplicate();
+        target.position(position + RECORD_HEADER_BYTES);
+        target.put(payload, offset, length);
+        CRC32 crc = new CRC32();
+        crc.update(payload, offset, length);
+        segment.buffer.putInt(position + 4, (int) crc.getValue());
+        segment.buffer.put(position + 8, STATE_PENDING);
+        // length last, this is what makes the record visible
+        segment.buffer.putInt(position, length);
+        segment.writePosition = position + recordBytes;
+        if (syncEachRecord) {
+            segment.buffer.force();
+        }
+
+        appendedCount.increment();
+        return true;
+    }
+
+    private Segment newSegment() throws IOException {
+        File file = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+        Segment segment = new Segment(nextSequence++, file, segmentBytes);
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        segment.writePosition = HEADER_BYTES;
+        segments.addLast(segment);
+
+        while (segments.size() > maxSegments) {
+            Segment evicted = segments.removeFirst();
+            evicted.delete();
+            evictedSegmentCount.increment();
+        }
+        return segment;
+    }
+
+    /**
+     * Returns a copy of the oldest record which has not been delivered yet.  After it has been
+     * successfully sent {@link #markDelivered()} should be invoked.  Only a single thread should
+     * be replaying from the spool.
+     *
+     * @return Payload of the next record, or {@code null} if there is nothing to replay
+     */
+    public synchronized byte[] peek() {
+        peekSegment = null;
+        while (! segments.isEmpty()) {
+            Segment segment = segments.peekFirst();
+            while (segment.readPosition < segment.writePosition) {
+                int length = segment.buffer.getInt(segment.readPosition);
+                if (segment.buffer.get(segment.readPosition + 8) == STATE_DELIVERED) {
+                    segment.readPosition += RECORD_HEADER_BYTES + length;
+                    continue;
+                }
+                byte[] payload = new byte[length];
+                ByteBuffer source = segment.buffer.duplicate();
+                source.position(segment.readPosition + RECORD_HEADER_BYTES);
+                source.get(payload);
+                peekSegment = segment;
+                return payload;
+            }
+            if (segment == writeSegment) {
+                return null;
+            }
+            // every record in this segment has been delivered
+            segments.removeFirst();
+            segment.delete();
+        }
+        return null;
+    }
+
+    /**
+     * Marks the record last returned from {@link #peek()} as delivered so it is not replayed.
+     */
+    public synchronized void markDelivered() {
+        Segment segment = peekSegment;
+        peekSegment = null;
+        if (segment == null || segment.released) {
+            // evicted (or the spool closed) while being replayed
+            return;
+        }
+        int length = segment.buffer.getInt(segment.readPosition);
+        segment.buffer.put(segment.readPosition + 8, STATE_DELIVERED);
+        segment.readPosition += RECORD_HEADER_BYTES + length;
+        deliveredCount.increment();
+    }
+
+    /**
+     * Forces any buffered records to disk, closes the segment files and releases the directory
+     * lock.  Undelivered records remain on disk to be replayed by the next spool opened on this
+     * directory.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        writeSegment = null;
+        peekSegment = null;
+        try {
+            lock.release();
+        } catch (IOException e) {
+            // released when the channel closes anyway
+        }
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            // ignored, nothing more we can do
+        }
+    }
+
+    private static Consumer<ByteBuffer> findUnmapper() {
+        try {
+            // java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return (buffer) -> invokeQuietly(invokeCleaner, unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // not available, try the java 8 way
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return (buffer) -> {
+                Object bufferCleaner = invokeQuietly(cleaner, buffer);
+                if (bufferCleaner != null) {
+                    invokeQuietly(clean, bufferCleaner);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the garbage collector
+            return null;
+        }
+    }
+
+    private static Object invokeQuietly(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the mapping is released when the buffer is collected instead
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of records appended since the spool was opened.
+     *
+     * @return Number of appended records
+     */
+    public long getAppendedCount() {
+        return appendedCount.sum();
+    }
+
+    /**
+     * Returns the number of spooled records which have since been delivered.
+     *
+     * @return Number of delivered records
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.sum();
+    }
+
+    /**
+     * Returns the number of records which could not be appended (too large or I/O failure).
+     *
+     * @return Number of dropped records
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Returns the number of segments deleted to stay within the segment limit.
+     *
+     * @return Number of evicted segments
+     */
+    public long getEvictedSegmentCount() {
+        return evictedSegmentCount.sum();
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    private static class Segment {
+        private final long sequence;
+        private final File file;
+        private final int capacity;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition = HEADER_BYTES;
+        // set once the buffer may be unmapped, it must not be accessed after
+        private boolean released = false;
+
+        private Segment(long sequence, File file, int capacity) throws IOException {
+            this.sequence = sequence;
+            this.file = file;
+            this.capacity = capacity;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                if (raf.length() < capacity) {
+                    raf.setLength(capacity);
+                }
+                this.channel = raf.getChannel();
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } catch (IOException e) {
+                raf.close();
+                throw e;
+            }
+        }
+
+        private void close() {
+            buffer.force();
+            release();
+        }
+
+        private void delete() {
+            release();
+            file.delete();
+        }
+
+        private void release() {
+            released = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignored, still unmap
+            }
+            if (UNMAPPER != null) {
+                UNMAPPER.accept(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.muantech.rollbar.java;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Host name and address reported as the {@code server} of each notification.</p>
+ *
+ * <p>Resolving the local host ({@link InetAddress#getLocalHost()}) can take seconds on hosts with
+ * slow DNS, or fail outright.  It is done once per JVM on a daemon thread and cached, so that
+ * constructing a notifier never waits on it.  Until it completes the host name is taken from the
+ * {@code HOSTNAME} (or {@code COMPUTERNAME}) environment variable.  If resolution fails, or has
+ * not completed {@value #RESOLVE_TIMEOUT_MILLIS} milliseconds after it started, the fallback is
+ * kept for good (a late result is discarded), so the reported server does not change late in the
+ * process's life.</p>
+ *
+ * <p>Setting {@value #HOST_ENV} and / or {@value #IP_ENV} in the environment skips resolution
+ * entirely.</p>
+ */
+class ServerIdentity {
+    public static final String HOST_ENV = "ROLLBAR_SERVER_HOST";
+    public static final String IP_ENV = "ROLLBAR_SERVER_IP";
+
+    static final long RESOLVE_TIMEOUT_MILLIS = 5_000;
+    private static final long RESOLVE_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(RESOLVE_TIMEOUT_MILLIS);
+
+    // start time of the resolution, set once by whichever thread starts it
+    private static final AtomicReference<Long> RESOLVE_STARTED_NANOS = new AtomicReference<Long>();
+    private static final CountDownLatch SETTLED_LATCH = new CountDownLatch(1);
+    // read on every payload build until set, so this is a plain volatile read rather than a lock
+    private static final AtomicReference<ServerIdentity> LOCAL_HOST = new AtomicReference<ServerIdentity>();
+
+    private final String host;
+    private final String ip;
+
+    /**
+     * Constructs a new identity.
+     *
+     * @param host Host name, or {@code null} if unknown
+     * @param ip Host address, or {@code null} if unknown
+     */
+    ServerIdentity(String host, String ip) {
+        this.host = host;
+        this.ip = ip;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    /**
+     * Returns the identity configured through the {@value #HOST_ENV} and {@value #IP_ENV}
+     * environment variables.
+     *
+     * @return Configured identity, or {@code null} if neither variable is set
+     */
+    public static ServerIdentity fromEnvironment() {
+        String host = System.getenv(HOST_ENV);
+        String ip = System.getenv(IP_ENV);
+        if (host == null && ip == null) {
+            return null;
+        }
+        return new ServerIdentity(host, ip);
+    }
+
+    /**
+     * Returns the resolved local host identity if resolution has settled, starting resolution if
+     * this is the first request for it.  Once {@value #RESOLVE_TIMEOUT_MILLIS} milliseconds have
+     * passed since resolution started this settles on the fallback, if it has not settled yet.
+     *
+     * @return Resolved (or fallback) identity, or {@code null} if resolution is still pending
+     */
+    public static ServerIdentity settledLocalHost() {
+        ServerIdentity identity = LOCAL_HOST.get();
+        if (identity != null) {
+            return identity;
+        }
+        Long startedNanos = RESOLVE_STARTED_NANOS.get();
+        if (startedNanos == null) {
+            if (RESOLVE_STARTED_NANOS.compareAndSet(null, System.nanoTime())) {
+                startResolution();
+            }
+        } else if (System.nanoTime() - startedNanos >= RESOLVE_TIMEOUT_NANOS) {
+            settle(fallback());
+        }
+        return LOCAL_HOST.get();
+    }
+
+    /**
+     * Waits for local host resolution to settle, starting it if needed.  Resolution settles on
+     * the fallback once it has taken {@value #RESOLVE_TIMEOUT_MILLIS} milliseconds, so this waits
+     * no longer than that however large the timeout.
+     *
+     * @param timeoutMillis Maximum time to wait in milliseconds
+     * @return Resolved (or fallback) identity, or {@code null} if still pending after the timeout
+     * @throws InterruptedException Thrown if interrupted while waiting
+     */
+    static ServerIdentity awaitLocalHost(long timeoutMillis) throws InterruptedException {
+        ServerIdentity identity = settledLocalHost();
+        if (identity != null) {
+            return identity;
+        }
+        long untilTimeoutNanos = RESOLVE_STARTED_NANOS.get() + RESOLVE_TIMEOUT_NANOS - System.nanoTime();
+        long waitNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(timeoutMillis), Math.max(0, untilTimeoutNanos));
+        SETTLED_LATCH.await(waitNanos, TimeUnit.NANOSECONDS);
+        return settledLocalHost();
+    }
+
+    /**
+     * Returns the identity to report while resolution is pending.
+     *
+     * @return Identity with the host name from the environment, and no address
+     */
+    public static ServerIdentity fallback() {
+        String host = System.getenv("HOSTNAME");
+        if (host == null) {
+            host = System.getenv("COMPUTERNAME");
+        }
+        return new ServerIdentity(host, null);
+    }
+
+    /**
+     * Settles on an identity, unless one has been settled on already.
+     */
+    private static void settle(ServerIdentity identity) {
+        if (LOCAL_HOST.compareAndSet(null, identity)) {
+            SETTLED_LATCH.countDown();
+        }
+    }
+
+    private static void startResolution() {
+        Thread thread = new Thread(() -> {
+            ServerIdentity resolved;
+            try {
+                InetAddress address = InetAddress.getLocalHost();
+                resolved = new ServerIdentity(address.getHostName(), address.getHostAddress());
+            } catch (Throwable t) {
+                resolved = fallback();
+            }
+            // discarded if the timeout has already settled on the fallback
+            settle(resolved);
+        }, "rollbar-host-resolver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
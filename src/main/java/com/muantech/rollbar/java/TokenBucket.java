@@ -0,0 +1,52 @@
+package com.muantech.rollbar.java;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Lock free token bucket.  This is implemented using the generic cell rate algorithm, which
+ * behaves the same as a token bucket that refills continuously, but only needs a single
+ * {@link AtomicLong} (the theoretical arrival time of the next permit) as state.</p>
+ */
+class TokenBucket {
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * Constructs a new full bucket.
+     *
+     * @param permits Number of permits refilled per period
+     * @param periodNanos Length of the period in nanoseconds
+     * @param burst Maximum number of permits which can be taken at once (the bucket capacity)
+     */
+    TokenBucket(int permits, long periodNanos, int burst) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("permits must be >= 1");
+        } else if (burst < 1) {
+            throw new IllegalArgumentException("burst must be >= 1");
+        }
+        this.emissionIntervalNanos = Math.max(1, periodNanos / permits);
+        this.burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Attempts to take a permit without blocking.
+     *
+     * @return {@code true} if a permit was taken
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long ahead = arrival - now;
+            if (ahead > burstToleranceNanos) {
+                return false;
+            }
+            long next = (ahead > 0 ? arrival : now) + emissionIntervalNanos;
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.muantech.rollbar.java;
+
+import java.util.List;
+
+/**
+ * <p>Bounds the size of the {@code trace_chain} written for a notification.  Deep stacks (reactive
+ * pipelines, Netty, long cause chains) otherwise produce items of hundreds of KB, which Rollbar
+ * truncates or rejects anyway, while costing memory and bytes on the wire.</p>
+ *
+ * <p>Reductions are applied in order of how little information they lose:</p>
+ * <ol>
+ *   <li>Frames a cause has in common with its enclosing throwable are elided, as
+ *       {@code printStackTrace} does with {@code "... N more"}</li>
+ *   <li>Traces with more than {@code maxFramesPerTrace} frames keep their innermost (head) and
+ *       outermost (tail) frames</li>
+ *   <li>The {@code raw} text, which repeats everything in the frames, is shortened and then
+ *       dropped to fit the remaining budget</li>
+ *   <li>If the frames alone are still over budget the frame limit is halved until they fit (but
+ *       never below {@value #MIN_FRAMES_PER_TRACE} frames per trace)</li>
+ * </ol>
+ *
+ * <p>Omitted frames are replaced by a single placeholder frame saying how many were left out.</p>
+ */
+class TraceBudget {
+    public static final int DEFAULT_MAX_FRAMES_PER_TRACE = 200;
+    private static final int MIN_FRAMES_PER_TRACE = 10;
+    private static final int MIN_RAW_BYTES = 256;
+    private static final String OMITTED_FILENAME = "<omitted>";
+    private static final String RAW_TRUNCATED_SUFFIX = "\n\t... truncated";
+
+    private final int maxBytes;
+    private final int maxFramesPerTrace;
+
+    /**
+     * Constructs a new budget.
+     *
+     * @param maxBytes Maximum encoded size of the trace chain
+     * @param maxFramesPerTrace Maximum number of frames to keep for each throwable in the chain
+     */
+    TraceBudget(int maxBytes, int maxFramesPerTrace) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be >= 1");
+        } else if (maxFramesPerTrace < 1) {
+            throw new IllegalArgumentException("maxFramesPerTrace must be >= 1");
+        }
+        this.maxBytes = maxBytes;
+        this.maxFramesPerTrace = maxFramesPerTrace;
+    }
+
+    /**
+     * Writes the traces for a throwable chain as values in the currently open array, root cause
+     * first, staying within the budget where possible.
+     *
+     * @param writer Writer with an open {@code trace_chain} array
+     * @param chain Throwable chain, outermost throwable first
+     */
+    public void writeTraces(Utf8JsonWriter writer, List<Throwable> chain) {
+        int count = chain.size();
+        StackTraceElement[][] elements = new StackTraceElement[count][];
+        int[] commonFrames = new int[count];
+        int deepestTrace = 0;
+        for (int i = 0; i < count; i++) {
+            elements[i] = chain.get(i).getStackTrace();
+            if (i > 0) {
+                commonFrames[i] = commonFrameCount(elements[i], elements[i - 1]);
+            }
+            deepestTrace = Math.max(deepestTrace, elements[i].length - commonFrames[i]);
+        }
+
+        // find a frame limit where the traces without raw text fit
+        Utf8JsonWriter scratch = new Utf8JsonWriter(4096);
+        int frameLimit = Math.min(maxFramesPerTrace, Math.max(deepestTrace, 1));
+        int[] traceSizes = new int[count];
+        int framesSize;
+        while (true) {
+            framesSize = 0;
+            for (int i = 0; i < count; i++) {
+                scratch.reset();
+                writeTrace(scratch, chain.get(i), elements[i], commonFrames[i], frameLimit, null);
+                traceSizes[i] = scratch.size();
+                framesSize += traceSizes[i] + 1; // plus comma
+            }
+            if (framesSize <= maxBytes || frameLimit <= MIN_FRAMES_PER_TRACE) {
+                break;
+            }
+            frameLimit = Math.max(MIN_FRAMES_PER_TRACE, frameLimit / 2);
+        }
+
+        // whatever is left is shared between the raw text of each trace
+        int rawShare = (maxBytes - framesSize) / count;
+        for (int i = count - 1; i >= 0; i--) {
+            String raw = rawShare >= MIN_RAW_BYTES ? fitRaw(scratch, chain.get(i), rawShare) : null;
+            writeTrace(writer, chain.get(i), elements[i], commonFrames[i], frameLimit, raw);
+        }
+    }
+
+    /**
+     * Counts the frames at the bottom of a cause's stack which match its enclosing throwable, the
+     * same way {@link Throwable#printStackTrace()} does.
+     */
+    private static int commonFrameCount(StackTraceElement[] trace, StackTraceElement[] enclosingTrace) {
+        int m = trace.length - 1;
+        int n = enclosingTrace.length - 1;
+        while (m >= 0 && n >= 0 && trace[m].equals(enclosingTrace[n])) {
+            m--;
+            n--;
+        }
+        return trace.length - 1 - m;
+    }
+
+    /**
+     * Returns the raw stack trace text, shortened so its encoded size fits in the provided number
+     * of bytes, or {@code null} if it can not be usefully shortened that far.
+     */
+    private static String fitRaw(Utf8JsonWriter scratch, Throwable throwable, int maxRawBytes) {
+        String raw = NotificationBuilder.rawStackTrace(throwable);
+        // a few bytes for the field name and quotes
+        int available = maxRawBytes - 10;
+        for (int attempt = 0; attempt < 4; attempt++) {
+            scratch.reset();
+            scratch.value(raw);
+            int size = scratch.size();
+            if (size <= available) {
+                return raw;
+            }
+            // shrink in proportion to how much escaping and multi-byte characters expanded it
+            int keep = (int) (raw.length() * ((double) available / size)) - RAW_TRUNCATED_SUFFIX.length();
+            if (keep < MIN_RAW_BYTES / 2) {
+                return null;
+            }
+            if (Character.isHighSurrogate(raw.charAt(keep - 1))) {
+                keep--;
+            }
+            raw = raw.substring(0, keep) + RAW_TRUNCATED_SUFFIX;
+        }
+        return null;
+    }
+
+    private static void writeTrace(Utf8JsonWriter writer, Throwable throwable, StackTraceElement[] elements,
+                                   int commonFrames, int frameLimit, String raw) {
+        writer.beginObject();
+        writer.fieldIfNotNull("raw", raw);
+
+        writer.name("frames").beginArray();
+        if (commonFrames > 0) {
+            writeOmittedFrame(writer, commonFrames + " frames in common with enclosing exception");
+        }
+        // frames are written outermost first, the tail of the stack
+        int frameCount = elements.length - commonFrames;
+        int headFrames = frameCount;
+        int tailFrames = 0;
+        if (frameCount > frameLimit) {
+            tailFrames = frameLimit / 4;
+            headFrames = frameLimit - tailFrames;
+        }
+        for (int i = frameCount - 1; i >= frameCount - tailFrames; i--) {
+            NotificationBuilder.writeFrame(writer, elements[i]);
+        }
+        if (frameCount > frameLimit) {
+            writeOmittedFrame(writer, (frameCount - frameLimit) + " frames omitted");
+        }
+        for (int i = headFrames - 1; i >= 0; i--) {
+            NotificationBuilder.writeFrame(writer, elements[i]);
+        }
+        writer.endArray();
+
+        NotificationBuilder.writeException(writer, throwable);
+        writer.endObject();
+    }
+
+    private static void writeOmittedFrame(Utf8JsonWriter writer, String description) {
+        writer.beginObject();
+        writer.name("filename").value(OMITTED_FILENAME);
+        writer.name("method").value("<" + description + ">");
+        writer.endObject();
+    }
+}
@@ -0,0 +1,171 @@
+package com.muantech.rollbar.java;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Bounded LRU cache of encoded traces.  Applications tend to fail from the same few call sites
+ * over and over, so rather than walking every stack frame and re-rendering the {@code raw} stack
+ * trace text for each notification the fully encoded trace json (raw text, frames array and
+ * exception data) is kept, keyed by a fingerprint of the throwable and its causes.</p>
+ *
+ * <p>The cache is bounded both by the number of entries and by an estimate of the memory it
+ * retains, evicting the least recently used traces first.</p>
+ */
+class TraceCache {
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+    private static final int ESTIMATED_FRAME_BYTES = 48;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<TraceKey, byte[]> entries;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private long retainedBytes = 0;
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param maxEntries Maximum number of traces to retain
+     * @param maxBytes Maximum estimated memory for retained traces
+     */
+    TraceCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be >= 1");
+        } else if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be >= 1");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<TraceKey, byte[]>(Math.min(maxEntries, 64), 0.75f, true);
+    }
+
+    /**
+     * Looks up a previously encoded trace.
+     *
+     * @param key Fingerprint of the throwable
+     * @return Encoded trace json or {@code null} if not cached
+     */
+    public byte[] get(TraceKey key) {
+        byte[] result;
+        synchronized (entries) {
+            result = entries.get(key);
+        }
+        if (result == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return result;
+    }
+
+    public void put(TraceKey key, byte[] encodedTrace) {
+        long entryBytes = entryBytes(key, encodedTrace);
+        if (entryBytes > maxBytes) {
+            return;
+        }
+
+        synchronized (entries) {
+            byte[] previous = entries.put(key, encodedTrace);
+            if (previous != null) {
+                retainedBytes -= entryBytes(key, previous);
+            }
+            retainedBytes += entryBytes;
+
+            Iterator<Map.Entry<TraceKey, byte[]>> it = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || retainedBytes > maxBytes) && it.hasNext()) {
+                Map.Entry<TraceKey, byte[]> eldest = it.next();
+                retainedBytes -= entryBytes(eldest.getKey(), eldest.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            retainedBytes = 0;
+        }
+    }
+
+    private static long entryBytes(TraceKey key, byte[] encodedTrace) {
+        return key.estimatedBytes + encodedTrace.length;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * <p>Fingerprint of a throwable and its causes.  Everything which influences the encoded trace
+     * is part of the key (type, message, {@code toString()} as used by {@code printStackTrace},
+     * and stack frames), so a cache hit produces identical output to encoding it again.</p>
+     *
+     * <p>Throwables with suppressed exceptions are not fingerprinted, since those are rendered
+     * into the raw text but are not part of the key.</p>
+     */
+    static class TraceKey {
+        private final Class<?> type;
+        private final String message;
+        private final String description;
+        private final StackTraceElement[] elements;
+        private final TraceKey cause;
+        private final int hash;
+        private final long estimatedBytes;
+
+        /**
+         * Constructs a new key.
+         *
+         * @param throwable Throwable to fingerprint
+         * @param elements Stack trace of the throwable (as returned from {@link Throwable#getStackTrace()})
+         * @param cause Key for the throwable's cause, or {@code null} if it has no cause
+         */
+        TraceKey(Throwable throwable, StackTraceElement[] elements, TraceKey cause) {
+            this.type = throwable.getClass();
+            this.message = throwable.getMessage();
+            this.description = throwable.toString();
+            this.elements = elements;
+            this.cause = cause;
+
+            int hash = type.hashCode();
+            hash = (31 * hash) + description.hashCode();
+            hash = (31 * hash) + Arrays.hashCode(elements);
+            hash = (31 * hash) + (cause == null ? 0 : cause.hash);
+            this.hash = hash;
+            this.estimatedBytes = (elements.length * ESTIMATED_FRAME_BYTES) + (description.length() * 2L) +
+                                    (cause == null ? 0 : cause.estimatedBytes);
+        }
+
+        public StackTraceElement[] getElements() {
+            return elements;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            } else if (! (o instanceof TraceKey)) {
+                return false;
+            }
+            TraceKey other = (TraceKey) o;
+            return hash == other.hash && type == other.type &&
+                     description.equals(other.description) &&
+                     (message == null ? other.message == null : message.equals(other.message)) &&
+                     Arrays.equals(elements, other.elements) &&
+                     (cause == null ? other.cause == null : cause.equals(other.cause));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.muantech.rollbar.java;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>Transport used to perform the http requests to rollbar.  Implementations must be thread safe,
+ * as a single transport is shared by every thread sending through a {@link RollbarNotifier}.</p>
+ *
+ * <p>By default {@link JdkHttpClientTransport} is used on Java 11+, and
+ * {@link HttpURLConnectionTransport} on Java 8.  Both keep persistent connections open between
+ * notifications and honour the system proxy configuration.  {@link PooledHttpTransport} can be set
+ * instead where its explicit pool size, idle timeout and connection counts are wanted.</p>
+ */
+public interface Transport {
+    /**
+     * Performs a single http request.
+     *
+     * @param method Http method, for example {@code "POST"}
+     * @param url Url to send the request to
+     * @param headers Request headers to send
+     * @param body Array containing the request body, or {@code null} for no body
+     * @param offset Offset into {@code body} where the request body starts
+     * @param length Number of bytes of the request body
+     * @return Response from the server
+     * @throws IOException Thrown if the request could not be completed
+     */
+    public Response send(String method, URL url, Map<String, String> headers,
+                         byte[] body, int offset, int length) throws IOException;
+
+    /**
+     * Releases any resources (for example pooled connections) held by this transport.
+     */
+    public void close();
+
+    /**
+     * Response to a request performed by a {@link Transport}.
+     */
+    public static class Response {
+        private final int statusCode;
+        private final Map<String, String> headers;
+        private final String body;
+
+        /**
+         * Constructs a new response.
+         *
+         * @param statusCode Http status code
+         * @param headers Response headers, with keys in lower case
+         * @param body Response body, or {@code null} if none was read
+         */
+        public Response(int statusCode, Map<String, String> headers, String body) {
+            this.statusCode = statusCode;
+            this.headers = headers == null ? Collections.<String, String>emptyMap() : headers;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * Returns the value of a response header.
+         *
+         * @param name Header name (case insensitive)
+         * @return Header value or {@code null} if not present
+         */
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+}
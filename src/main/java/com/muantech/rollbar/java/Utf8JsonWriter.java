@@ -0,0 +1,314 @@
+package com.muantech.rollbar.java;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * <p>Minimal streaming json writer which encodes directly as UTF-8 into a growable byte array.
+ * Intended to be reused (see {@link #reset()}) so that building a payload does not require an
+ * intermediate object tree, a {@link String} of the whole document, or a copy into a new
+ * {@code byte[]}.</p>
+ *
+ * <p>Commas are inserted automatically, callers only need to balance begin / end calls and
+ * provide a {@link #name(String)} before each value inside an object.  This class is not thread
+ * safe.</p>
+ */
+class Utf8JsonWriter {
+    private static final int INITIAL_CAPACITY = 4 * 1024;
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+    private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7',
+                                               '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+    private static final byte[] NULL_BYTES = { 'n', 'u', 'l', 'l' };
+
+    private byte[] buffer;
+    private int size;
+    private boolean needsComma;
+
+    Utf8JsonWriter() {
+        this(INITIAL_CAPACITY);
+    }
+
+    Utf8JsonWriter(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+        size = 0;
+        needsComma = false;
+    }
+
+    /**
+     * Clears the writer so it can be used for a new document.  If a previous document caused the
+     * buffer to grow excessively it is released so that a single huge payload does not pin memory
+     * for the life of the thread.
+     */
+    public void reset() {
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+        size = 0;
+        needsComma = false;
+    }
+
+    public Utf8JsonWriter beginObject() {
+        separate();
+        writeByte('{');
+        needsComma = false;
+        return this;
+    }
+
+    public Utf8JsonWriter endObject() {
+        writeByte('}');
+        needsComma = true;
+        return this;
+    }
+
+    public Utf8JsonWriter beginArray() {
+        separate();
+        writeByte('[');
+        needsComma = false;
+        return this;
+    }
+
+    public Utf8JsonWriter endArray() {
+        writeByte(']');
+        needsComma = true;
+        return this;
+    }
+
+    public Utf8JsonWriter name(String name) {
+        separate();
+        writeString(name);
+        writeByte(':');
+        needsComma = false;
+        return this;
+    }
+
+    public Utf8JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            writeRaw(NULL_BYTES, 0, NULL_BYTES.length);
+        } else {
+            writeString(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes a string value from a character sequence, for example a reused {@link StringBuilder},
+     * without first converting it to a {@link String}.
+     *
+     * @param value Characters to write, or {@code null} to write a json null
+     * @return This writer
+     */
+    public Utf8JsonWriter value(CharSequence value) {
+        separate();
+        if (value == null) {
+            writeRaw(NULL_BYTES, 0, NULL_BYTES.length);
+        } else {
+            writeString(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    public Utf8JsonWriter value(long value) {
+        separate();
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+        } else {
+            if (value < 0) {
+                writeByte('-');
+                value = -value;
+            }
+            int digits = 1;
+            for (long remaining = value / 10; remaining > 0; remaining /= 10) {
+                digits++;
+            }
+            ensureCapacity(size + digits);
+            for (int i = size + digits - 1; i >= size; i--) {
+                buffer[i] = (byte) ('0' + (value % 10));
+                value /= 10;
+            }
+            size += digits;
+        }
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes an already encoded json value (object, array, string or literal) in the current
+     * position.  The bytes are not validated.
+     *
+     * @param encodedJson Array containing the UTF-8 encoded json value
+     * @param offset Offset into the array the value starts at
+     * @param length Length of the encoded value
+     * @return This writer
+     */
+    public Utf8JsonWriter rawValue(byte[] encodedJson, int offset, int length) {
+        separate();
+        writeRaw(encodedJson, offset, length);
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes a floating point value.  Infinite and NaN values are not valid json and must not be
+     * provided.
+     *
+     * @param value Value to write
+     * @return This writer
+     */
+    public Utf8JsonWriter value(double value) {
+        separate();
+        writeAscii(Double.toString(value));
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes already encoded object members ({@code "name":value} pairs separated by commas) in
+     * the currently open object.  The bytes are not validated.
+     *
+     * @param encodedFields Array containing the UTF-8 encoded members
+     * @param offset Offset into the array the members start at
+     * @param length Length of the encoded members
+     * @return This writer
+     */
+    public Utf8JsonWriter rawFields(byte[] encodedFields, int offset, int length) {
+        separate();
+        writeRaw(encodedFields, offset, length);
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes a name and string value, skipping both if the value is {@code null}.
+     *
+     * @param name Field name
+     * @param value Field value, or {@code null} to write nothing
+     * @return This writer
+     */
+    public Utf8JsonWriter fieldIfNotNull(String name, String value) {
+        if (value != null) {
+            name(name);
+            value(value);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the internal buffer.  Only the first {@link #size()} bytes are valid, and the
+     * contents will be overwritten once the writer is reset.
+     *
+     * @return Internal buffer
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    private void separate() {
+        if (needsComma) {
+            writeByte(',');
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(size + 1);
+        buffer[size++] = (byte) b;
+    }
+
+    private void writeRaw(byte[] bytes, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+    }
+
+    private void writeAscii(String value) {
+        int length = value.length();
+        ensureCapacity(size + length);
+        for (int i = 0; i < length; i++) {
+            buffer[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeString(CharSequence value) {
+        int length = value.length();
+        // every char encodes to at most 3 bytes, except escapes which are checked individually
+        ensureCapacity(size + (length * 3) + 2);
+        byte[] buf = buffer;
+        int pos = size;
+        buf[pos++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    buf[pos++] = (byte) c;
+                } else {
+                    size = pos;
+                    ensureCapacity(size + 6 + ((length - i) * 3));
+                    buf = buffer;
+                    buf[pos++] = '\\';
+                    switch (c) {
+                        case '"':
+                        case '\\':
+                            buf[pos++] = (byte) c;
+                            break;
+                        case '\n':
+                            buf[pos++] = 'n';
+                            break;
+                        case '\r':
+                            buf[pos++] = 'r';
+                            break;
+                        case '\t':
+                            buf[pos++] = 't';
+                            break;
+                        default:
+                            buf[pos++] = 'u';
+                            buf[pos++] = '0';
+                            buf[pos++] = '0';
+                            buf[pos++] = HEX_DIGITS[c >> 4];
+                            buf[pos++] = HEX_DIGITS[c & 0xF];
+                            break;
+                    }
+                }
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                       Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, replace the same way String.getBytes would
+                buf[pos++] = '?';
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buf[pos++] = '"';
+        size = pos;
+    }
+}
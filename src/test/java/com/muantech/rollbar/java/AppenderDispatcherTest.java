@@ -0,0 +1,178 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.muantech.rollbar.java.RollbarNotifier.Level;
+import com.sun.net.httpserver.HttpServer;
+
+public class AppenderDispatcherTest {
+    private HttpServer server;
+    private URL url;
+    private List<String> requestBodies;
+    private volatile CountDownLatch releaseLatch;
+
+    @Before
+    public void setup() throws IOException {
+        requestBodies = new CopyOnWriteArrayList<String>();
+        releaseLatch = new CountDownLatch(0);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", (exchange) -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                int b;
+                while ((b = in.read()) != -1) {
+                    body.write(b);
+                }
+            }
+            try {
+                releaseLatch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            requestBodies.add(new String(body.toByteArray(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/api/1/item/");
+    }
+
+    @After
+    public void cleanup() {
+        server.stop(0);
+        server = null;
+    }
+
+    @Test
+    public void dispatchesInOrder() throws Exception {
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test");
+             AppenderDispatcher dispatcher = new AppenderDispatcher(notifier, 16)) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(dispatcher.offer(new NotificationEvent(Level.WARNING, "event " + i, null, null)));
+            }
+
+            assertTrue(dispatcher.flush(10_000));
+            assertEquals(5, dispatcher.getDispatchedCount());
+            assertEquals(5, requestBodies.size());
+            for (int i = 0; i < 5; i++) {
+                assertTrue(requestBodies.get(i).contains("\"event " + i + "\""));
+            }
+        }
+    }
+
+    @Test
+    public void fullBufferDropsWithoutBlocking() throws Exception {
+        releaseLatch = new CountDownLatch(1);
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test");
+             AppenderDispatcher dispatcher = new AppenderDispatcher(notifier, 2)) {
+            for (int i = 0; i < 10; i++) {
+                dispatcher.offer(new NotificationEvent(Level.ERROR, "event " + i, null, null));
+            }
+
+            // at most one being sent and two waiting in the buffer
+            assertTrue(dispatcher.getDroppedCount() >= 7);
+            releaseLatch.countDown();
+            assertTrue(dispatcher.flush(10_000));
+            assertEquals(10 - dispatcher.getDroppedCount(), requestBodies.size());
+        }
+    }
+
+    @Test
+    public void dispatchFailureSentToExceptionHandler() throws Exception {
+        List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test") {
+                 @Override
+                 public void notify(NotificationEvent event) {
+                     throw new IllegalStateException("broken notifier");
+                 }
+             };
+             AppenderDispatcher dispatcher = new AppenderDispatcher(notifier, 16)) {
+            notifier.setExceptionHandler(errors::add);
+            dispatcher.offer(new NotificationEvent(Level.ERROR, "event", null, null));
+
+            assertTrue(dispatcher.flush(10_000));
+            assertEquals(1, dispatcher.getDispatchedCount());
+            assertEquals(1, errors.size());
+            assertEquals("broken notifier", errors.get(0).getMessage());
+        }
+    }
+
+    @Test
+    public void offersRacingCloseNotLeftPending() throws Exception {
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test") {
+                 @Override
+                 public void notify(NotificationEvent event) {
+                     // nothing to send
+                 }
+             }) {
+            for (int round = 0; round < 20; round++) {
+                AppenderDispatcher dispatcher = new AppenderDispatcher(notifier, 1024);
+                CountDownLatch started = new CountDownLatch(4);
+                Thread[] loggers = new Thread[4];
+                for (int i = 0; i < loggers.length; i++) {
+                    loggers[i] = new Thread(() -> {
+                        started.countDown();
+                        for (int j = 0; j < 500; j++) {
+                            dispatcher.offer(new NotificationEvent(Level.INFO, "event", null, null));
+                        }
+                    });
+                    loggers[i].start();
+                }
+                started.await();
+                dispatcher.close();
+                for (Thread logger : loggers) {
+                    logger.join();
+                }
+
+                assertEquals(0, dispatcher.getPendingCount());
+                assertEquals(2000, dispatcher.getDispatchedCount() + dispatcher.getDroppedCount());
+            }
+        }
+    }
+
+    @Test
+    public void guardPreventsRecursion() {
+        assertTrue(AppenderDispatcher.enter("com.example.Service"));
+        try {
+            // logged while handling the first event
+            assertFalse(AppenderDispatcher.enter("com.example.Other"));
+        } finally {
+            AppenderDispatcher.exit();
+        }
+        assertFalse(AppenderDispatcher.enter(PooledHttpTransport.class.getName()));
+        assertTrue(AppenderDispatcher.enter(null));
+        AppenderDispatcher.exit();
+    }
+
+    @Test
+    public void ringBufferWrapsAround() {
+        RingBuffer<Integer> buffer = new RingBuffer<Integer>(3);
+        assertEquals(4, buffer.getCapacity());
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.offer(i));
+            }
+            assertFalse(buffer.offer(4));
+            for (int i = 0; i < 4; i++) {
+                assertEquals(i, buffer.poll().intValue());
+            }
+            assertNull(buffer.poll());
+            assertTrue(buffer.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CallerLocatorTest {
+    @Test
+    public void locateCaller() {
+        StackTraceElement frame = new CallerLocator().locate();
+
+        assertNotNull(frame);
+        assertEquals(CallerLocatorTest.class.getName(), frame.getClassName());
+        assertEquals("locateCaller", frame.getMethodName());
+        assertTrue(frame.getLineNumber() > 0);
+    }
+
+    @Test
+    public void ignoredPrefixSkipped() {
+        StackTraceElement frame = new CallerLocator(CallerLocatorTest.class.getName()).locate();
+
+        assertNotNull(frame);
+        assertNotEquals(CallerLocatorTest.class.getName(), frame.getClassName());
+    }
+}
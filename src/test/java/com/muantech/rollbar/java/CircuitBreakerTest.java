@@ -0,0 +1,110 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.muantech.rollbar.java.CircuitBreaker.State;
+
+public class CircuitBreakerTest {
+    @Test
+    public void opensAfterThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60_000);
+        List<String> transitions = new ArrayList<String>();
+        breaker.setListener((from, to) -> transitions.add(from + "->" + to));
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertEquals(1, breaker.getRejectedCount());
+        assertEquals(1, transitions.size());
+        assertEquals("CLOSED->OPEN", transitions.get(0));
+    }
+
+    @Test
+    public void successResetsFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 60_000);
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenTrial() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 10);
+        List<String> transitions = new ArrayList<String>();
+        breaker.setListener((from, to) -> transitions.add(from + "->" + to));
+
+        breaker.recordFailure();
+        Thread.sleep(20);
+
+        // only one trial request is allowed through
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.recordFailure();
+        assertEquals(State.OPEN, breaker.getState());
+
+        Thread.sleep(20);
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertEquals(State.CLOSED, breaker.getState());
+
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]",
+                     transitions.toString());
+    }
+
+    @Test
+    public void abandonedTrialExpires() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 10);
+        List<String> transitions = new ArrayList<String>();
+        breaker.setListener((from, to) -> transitions.add(from + "->" + to));
+
+        breaker.recordFailure();
+        Thread.sleep(20);
+        // trial whose outcome is never recorded
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        Thread.sleep(20);
+        assertTrue(breaker.allowRequest());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.recordSuccess();
+        assertEquals(State.CLOSED, breaker.getState());
+
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]",
+                     transitions.toString());
+    }
+
+    @Test
+    public void onlyTrialOutcomeDecidesTrial() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 10);
+        breaker.recordFailure();
+        Thread.sleep(20);
+        assertTrue(breaker.allowRequest());
+
+        // late outcomes of requests allowed through while closed
+        Thread late = new Thread(() -> {
+            breaker.recordFailure();
+            breaker.recordSuccess();
+        });
+        late.start();
+        late.join();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        breaker.recordSuccess();
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+}
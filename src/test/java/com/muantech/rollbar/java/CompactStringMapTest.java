@@ -0,0 +1,45 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CompactStringMapTest {
+    @Test
+    public void buildAndLookup() {
+        CompactStringMap map = new CompactStringMap.Builder(1)
+                                   .put("a", "1")
+                                   .put("b", "2")
+                                   .put("a", "3")
+                                   .put("c", null)
+                                   .build();
+
+        assertEquals(3, map.size());
+        assertEquals("3", map.get("a"));
+        assertEquals("b", map.keyAt(1));
+        // null values are kept, as they are written as json null
+        assertTrue(map.containsKey("c"));
+        assertNull(map.get("c"));
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("a", "3");
+        expected.put("b", "2");
+        expected.put("c", null);
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+    }
+
+    @Test
+    public void copyOfKeepsCompactMaps() {
+        Map<String, String> source = new HashMap<String, String>();
+        source.put("key", "value");
+        CompactStringMap copy = CompactStringMap.copyOf(source);
+
+        assertEquals(source, copy);
+        assertSame(copy, CompactStringMap.copyOf(copy));
+        assertSame(CompactStringMap.EMPTY, CompactStringMap.copyOf(new HashMap<String, String>()));
+        assertNull(CompactStringMap.copyOf(null));
+    }
+}
@@ -0,0 +1,80 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class ExponentialBackoffRetryPolicyTest {
+    private static Transport.Response response(int statusCode, String retryAfter) {
+        return new Transport.Response(statusCode,
+                                      retryAfter == null ? null : Collections.singletonMap("retry-after", retryAfter),
+                                      null);
+    }
+
+    @Test
+    public void backoffBounded() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(10, 100, 1000);
+        for (int attempt = 1; attempt < 10; attempt++) {
+            long ceiling = Math.min(1000, 100L << (attempt - 1));
+            for (int i = 0; i < 50; i++) {
+                long delay = policy.getRetryDelayMillis(attempt, response(503, null), null);
+                assertTrue(delay >= 0 && delay <= ceiling);
+            }
+        }
+        assertEquals(-1, policy.getRetryDelayMillis(10, response(503, null), null));
+    }
+
+    @Test
+    public void notRetried() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy();
+        assertEquals(-1, policy.getRetryDelayMillis(1, response(200, null), null));
+        assertEquals(-1, policy.getRetryDelayMillis(1, response(400, null), null));
+        // read timeout, the item may have been delivered
+        assertEquals(-1, policy.getRetryDelayMillis(1, null, new SocketTimeoutException("Read timed out")));
+        assertEquals(-1, policy.getRetryDelayMillis(1, null, new IOException("reset")));
+    }
+
+    @Test
+    public void connectFailureRetried() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy();
+        assertTrue(policy.getRetryDelayMillis(1, null, new ConnectException("refused")) >= 0);
+        assertTrue(policy.getRetryDelayMillis(1, null, new SocketTimeoutException("connect timed out")) >= 0);
+        assertTrue(policy.getRetryDelayMillis(1, null, new ConnectTimeoutException("Connect timed out", null)) >= 0);
+    }
+
+    @Test
+    public void jdkConnectTimeoutRetried() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy();
+        // as thrown by sockets and HttpURLConnection since JDK 13
+        assertTrue(policy.getRetryDelayMillis(1, null, new SocketTimeoutException("Connect timed out")) >= 0);
+        Locale previous = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertTrue(policy.getRetryDelayMillis(1, null, new SocketTimeoutException("CONNECT TIMED OUT")) >= 0);
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+
+    @Test
+    public void retryAfterHonored() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(5, 10, 30_000);
+        assertTrue(policy.getRetryDelayMillis(1, response(429, "7"), null) >= 7_000);
+        // longer than we are willing to wait
+        assertEquals(-1, policy.getRetryDelayMillis(1, response(429, "120"), null));
+        assertTrue(policy.getRetryDelayMillis(1, response(429, null), null) >= 0);
+    }
+
+    @Test
+    public void parseRetryAfterDate() {
+        assertEquals(0, ExponentialBackoffRetryPolicy.parseRetryAfterMillis("Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertEquals(0, ExponentialBackoffRetryPolicy.parseRetryAfterMillis("garbage"));
+        assertEquals(3_000, ExponentialBackoffRetryPolicy.parseRetryAfterMillis(" 3 "));
+    }
+}
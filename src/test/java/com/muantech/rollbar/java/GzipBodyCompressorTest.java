@@ -0,0 +1,67 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class GzipBodyCompressorTest {
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                result.write(buffer, 0, read);
+            }
+        }
+        return result.toByteArray();
+    }
+
+    @Test
+    public void compressRoundTrip() throws IOException {
+        StringBuilder sb = new StringBuilder("xx");
+        for (int i = 0; i < 2000; i++) {
+            sb.append("{\"class_name\":\"com.example.Foo\",\"method\":\"bar\",\"lineno\":").append(i).append('}');
+        }
+        byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        GzipBodyCompressor compressor = new GzipBodyCompressor(100, 6);
+
+        // compress twice to verify the deflater is reset between uses
+        for (int i = 0; i < 2; i++) {
+            byte[] compressed = compressor.compress(body, 2, body.length - 2);
+            assertNotNull(compressed);
+            byte[] expected = new byte[body.length - 2];
+            System.arraycopy(body, 2, expected, 0, expected.length);
+            assertArrayEquals(expected, gunzip(compressed));
+        }
+        assertEquals(2, compressor.getCompressedCount());
+        assertTrue(compressor.getCompressionRatio() < 0.5);
+    }
+
+    @Test
+    public void smallBodyNotCompressed() {
+        GzipBodyCompressor compressor = new GzipBodyCompressor(100, 6);
+        byte[] body = new byte[99];
+
+        assertNull(compressor.compress(body, 0, body.length));
+        assertEquals(0, compressor.getCompressedCount());
+        assertEquals(1.0, compressor.getCompressionRatio(), 0);
+    }
+
+    @Test
+    public void incompressibleBodyLargerThanScratchBuffer() throws IOException {
+        byte[] body = new byte[64 * 1024];
+        new Random(1).nextBytes(body);
+        GzipBodyCompressor compressor = new GzipBodyCompressor();
+
+        assertArrayEquals(body, gunzip(compressor.compress(body, 0, body.length)));
+    }
+}
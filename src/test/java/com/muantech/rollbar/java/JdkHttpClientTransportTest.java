@@ -0,0 +1,95 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class JdkHttpClientTransportTest {
+    private static final byte[] BODY = "xx{\"foo\":\"bar\"}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private URL url;
+    private AtomicInteger bodyLength;
+
+    @Before
+    public void setup() throws IOException {
+        bodyLength = new AtomicInteger(-1);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", (exchange) -> {
+            int length = 0;
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read() != -1) {
+                    length++;
+                }
+            }
+            bodyLength.set(length);
+            byte[] response = "{\"err\":0}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("X-Rate-Limit-Remaining", "5");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/api/1/item/");
+    }
+
+    @After
+    public void cleanup() {
+        server.stop(0);
+        server = null;
+    }
+
+    @Test
+    public void defaultTransport() {
+        Transport transport = JdkHttpClientTransport.createDefault();
+        try {
+            if (JdkHttpClientTransport.isAvailable()) {
+                assertTrue(transport instanceof JdkHttpClientTransport);
+            } else {
+                assertTrue(transport instanceof HttpURLConnectionTransport);
+            }
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void send() throws IOException {
+        if (! JdkHttpClientTransport.isAvailable()) {
+            // Java 8, covered by the fallback
+            return;
+        }
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", "application/json");
+        headers.put("Content-Length", "13");
+        JdkHttpClientTransport transport = new JdkHttpClientTransport();
+        try {
+            Transport.Response response = transport.send("POST", url, headers, BODY, 2, BODY.length - 2);
+            assertEquals(200, response.getStatusCode());
+            assertEquals("{\"err\":0}", response.getBody());
+            assertEquals("5", response.getHeader("X-Rate-Limit-Remaining"));
+            assertEquals(BODY.length - 2, bodyLength.get());
+
+            response = transport.send("GET", url, Collections.emptyMap(), null, 0, 0);
+            assertEquals(200, response.getStatusCode());
+        } finally {
+            transport.close();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void bucketBoundsContainValue() {
+        long[] values = { 0, 1, 7, 8, 9, 15, 16, 17, 100, 1000, 123456789, Long.MAX_VALUE };
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(value + " above bound", value <= LatencyHistogram.bucketUpperBound(index));
+            if (index > 0) {
+                assertTrue(value + " below bound", value > LatencyHistogram.bucketUpperBound(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        MetricsSnapshot.LatencySnapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500, snapshot.getMeanNanos());
+        assertEquals(1_000_000, snapshot.getMaxNanos());
+        assertEquals(500_000, snapshot.getP50Nanos(), 500_000 * 0.125);
+        assertEquals(990_000, snapshot.getP99Nanos(), 990_000 * 0.125);
+    }
+
+    @Test
+    public void emptySnapshot() {
+        MetricsSnapshot.LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getP99Nanos());
+    }
+}
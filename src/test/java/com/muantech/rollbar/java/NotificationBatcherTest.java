@@ -0,0 +1,41 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class NotificationBatcherTest {
+    @Test
+    public void flushWaitsForExpiredBatchHandOff() throws Exception {
+        CountDownLatch handing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<String>> handled = new CopyOnWriteArrayList<List<String>>();
+        NotificationBatcher<String> batcher = new NotificationBatcher<String>(10, 0, (batch) -> {
+            handing.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handled.add(batch);
+        });
+        try {
+            batcher.add("foo");
+            assertTrue(handing.await(10, TimeUnit.SECONDS));
+
+            // taken out by the timer but not yet accepted by the handler
+            assertFalse(batcher.flush(20));
+            release.countDown();
+            assertTrue(batcher.flush(10_000));
+            assertEquals(1, handled.size());
+        } finally {
+            release.countDown();
+            batcher.close();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.muantech.rollbar.java;
 import static org.junit.Assert.*;
 
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -10,6 +11,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonArray;
 import com.eclipsesource.json.JsonObject;
 
 public class NotificationBuilderTest {
@@ -45,6 +48,55 @@ public class NotificationBuilderTest {
         assertNull(data.getString("client", null));
     }
 
+    @Test
+    public void constantFieldsBuild() {
+        JsonObject data = builder.build("INFO", "foo", null, null).get("data").asObject();
+
+        assertEquals("java", data.getString("language", null));
+        assertEquals("java", data.getString("platform", null));
+        assertEquals("java", data.getString("framework", null));
+        assertEquals("rollbar-java", data.get("notifier").asObject().getString("name", null));
+    }
+
+    @Test
+    public void serverIdentityOverride() {
+        builder.setServerIdentity("example-host", "10.1.2.3");
+        JsonObject server = builder.build("INFO", "foo", null, null)
+                                   .get("data").asObject().get("server").asObject();
+
+        assertEquals("example-host", server.getString("host", null));
+        assertEquals("10.1.2.3", server.getString("ip", null));
+    }
+
+    @Test
+    public void resolvedServerIdentityUsed() throws InterruptedException {
+        ServerIdentity expected = ServerIdentity.fromEnvironment();
+        if (expected == null) {
+            expected = ServerIdentity.awaitLocalHost(10_000);
+            assertNotNull(expected);
+        }
+        JsonObject server = builder.build("INFO", "foo", null, null)
+                                   .get("data").asObject().get("server").asObject();
+
+        assertEquals(expected.getHost(), server.getString("host", null));
+        assertEquals(expected.getIp(), server.getString("ip", null));
+    }
+
+    @Test
+    public void overriddenPlatformBuild() {
+        JsonObject result = builder.build("INFO", "foo", null, new RollbarAttributeAdapter() {
+            @Override
+            public String getPlatform() {
+                return "android";
+            }
+        });
+
+        JsonObject data = result.get("data").asObject();
+        assertEquals("android", data.getString("platform", null));
+        assertEquals("java", data.getString("framework", null));
+        assertEquals(ENVIRONMENT, data.getString("environment", null));
+    }
+
     @Test
     public void requestDataBuild() {
         final String url = "foorl";
@@ -183,4 +235,169 @@ public class NotificationBuilderTest {
                                       .get("javascript").asObject()
                                       .getString("browser", null));
     }
+
+    @Test
+    public void throwableBuild() {
+        Exception cause = new IllegalStateException("root cause");
+        Exception throwable = new RuntimeException(null, cause);
+
+        JsonObject result = builder.build("ERROR", null, throwable, null);
+
+        JsonArray traceChain = result.get("data").asObject()
+                                     .get("body").asObject()
+                                     .get("trace_chain").asArray();
+        assertEquals(2, traceChain.size());
+        JsonObject rootTrace = traceChain.get(0).asObject();
+        assertEquals(IllegalStateException.class.getName(),
+                     rootTrace.get("exception").asObject().getString("class", null));
+        assertEquals("root cause", rootTrace.get("exception").asObject().getString("message", null));
+        assertTrue(rootTrace.getString("raw", "").startsWith(IllegalStateException.class.getName()));
+        JsonArray frames = rootTrace.get("frames").asArray();
+        assertEquals(cause.getStackTrace().length, frames.size());
+        // innermost frame is last
+        assertEquals("throwableBuild", frames.get(frames.size() - 1).asObject().getString("method", null));
+
+        JsonObject outerTrace = traceChain.get(1).asObject();
+        assertTrue(outerTrace.get("exception").asObject().get("message").isNull());
+        assertNull(result.get("data").asObject().get("custom"));
+    }
+
+    private static Exception makeException(String message) {
+        return new RuntimeException(message, new IllegalStateException("cause"));
+    }
+
+    @Test
+    public void cachedTraceBuild() {
+        TraceCache cache = builder.getTraceCache();
+        JsonObject[] results = new JsonObject[3];
+        for (int i = 0; i < results.length; i++) {
+            // same call site each time, only the outer message changes for the last one
+            results[i] = builder.build("ERROR", null, makeException(i < 2 ? "foo" : "bar"), null);
+            if (i == 0) {
+                assertEquals(0, cache.getHitCount());
+                assertEquals(2, cache.getMissCount());
+            }
+        }
+
+        // second build hits both traces, third only hits the cause
+        assertEquals(3, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(results[0].get("data").asObject().get("body"), results[1].get("data").asObject().get("body"));
+        assertEquals("bar", results[2].get("data").asObject().get("body").asObject()
+                                      .get("trace_chain").asArray().get(1).asObject()
+                                      .get("exception").asObject().getString("message", null));
+    }
+
+    private static Exception deepException(int depth) {
+        if (depth > 0) {
+            return deepException(depth - 1);
+        }
+        return new RuntimeException("outer", new IllegalStateException("root cause"));
+    }
+
+    @Test
+    public void budgetedTraceBuild() {
+        builder.setTraceBudget(16 * 1024, 50);
+        for (int i = 0; i < 2; i++) {
+            // second build is served from the cache
+            JsonObject result = builder.build("ERROR", null, deepException(1000), null);
+            JsonArray traceChain = result.get("data").asObject().get("body").asObject()
+                                         .get("trace_chain").asArray();
+
+            assertTrue(traceChain.toString().length() <= 16 * 1024);
+            JsonObject rootTrace = traceChain.get(0).asObject();
+            JsonArray rootFrames = rootTrace.get("frames").asArray();
+            // every frame of the cause is shared with the enclosing exception
+            assertEquals(1, rootFrames.size());
+            assertTrue(rootFrames.get(0).asObject().getString("method", "").contains("in common"));
+            assertEquals("root cause", rootTrace.get("exception").asObject().getString("message", null));
+
+            JsonArray outerFrames = traceChain.get(1).asObject().get("frames").asArray();
+            assertTrue(outerFrames.size() <= 51);
+            assertEquals("deepException", outerFrames.get(outerFrames.size() - 1).asObject().getString("method", null));
+            assertTrue(outerFrames.toString().contains("frames omitted"));
+        }
+        assertEquals(1, builder.getTraceCache().getHitCount());
+    }
+
+    @Test
+    public void budgetShortensRawFirst() {
+        Exception e = makeException("foo");
+        int unbudgetedSize = builder.build("ERROR", null, e, null).toString().length();
+        builder.setTraceBudget(unbudgetedSize / 2, 1000);
+        JsonArray traceChain = builder.build("ERROR", null, e, null).get("data").asObject().get("body").asObject()
+                                      .get("trace_chain").asArray();
+
+        assertTrue(traceChain.toString().length() <= unbudgetedSize / 2);
+        // frames survive, raw text is what gave way
+        JsonObject outerTrace = traceChain.get(1).asObject();
+        assertEquals(e.getStackTrace().length, outerTrace.get("frames").asArray().size());
+        String raw = outerTrace.getString("raw", null);
+        assertTrue(raw == null || raw.length() < NotificationBuilder.rawStackTrace(e).length());
+    }
+
+    private String write(String message, RollbarAttributeProvider attributes, double sampleRate) {
+        Utf8JsonWriter writer = new Utf8JsonWriter();
+        builder.write(writer, "ERROR", message, null, attributes, 1000000L, null, sampleRate);
+        return new String(writer.getBuffer(), 0, writer.size(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void encodedAttributesMatchGetters() {
+        RollbarAttributes attributes = new RollbarAttributes.Builder()
+                                           .framework("fooFramework")
+                                           .url("foorl")
+                                           .httpMethod("POST")
+                                           .header("fooKey", "fooValue")
+                                           .param("fooParam", "fooParamValue")
+                                           .requestId("fooRequest")
+                                           .customField("fooField", "fooFieldValue")
+                                           .username("fooName")
+                                           .userAgent("fooAgent")
+                                           .build();
+        String expected = write("foo", attributes, 0.5);
+
+        // first write used the getters, later ones the encoded members
+        assertEquals(expected, write("foo", attributes, 0.5));
+        assertEquals(expected, write("foo", attributes, 0.5));
+        JsonObject data = Json.parse(expected).asObject().get("data").asObject();
+        assertEquals("fooParamValue", data.get("request").asObject().get("POST").asObject()
+                                          .getString("fooParam", null));
+        assertEquals("fooFieldValue", data.get("custom").asObject().getString("fooField", null));
+        assertEquals(0.5, data.get("custom").asObject().getDouble("sample_rate", 0), 0);
+        assertEquals("fooName", data.get("person").asObject().getString("username", null));
+
+        RollbarAttributes empty = new RollbarAttributes.Builder().build();
+        String expectedEmpty = write(null, empty, 1);
+        assertEquals(expectedEmpty, write(null, empty, 1));
+        assertNull(Json.parse(expectedEmpty).asObject().get("data").asObject().get("custom"));
+    }
+
+    @Test
+    public void attributesCopy() {
+        Map<String, String> customFields = new HashMap<String, String>();
+        customFields.put("fooField", "fooFieldValue");
+        RollbarAttributes copy = RollbarAttributes.copyOf(new RollbarAttributeAdapter() {
+            @Override
+            public String getUserId() {
+                return "fooId";
+            }
+
+            @Override
+            public Map<String, String> getCustomFields() {
+                return customFields;
+            }
+        });
+
+        assertSame(copy, RollbarAttributes.copyOf(copy));
+        assertEquals(RollbarAttributeAdapter.DEFAULT_PLATFORM, copy.getPlatform());
+        assertEquals("fooId", copy.getUserId());
+        assertEquals(customFields, copy.getCustomFields());
+        assertNull(copy.getHeaders());
+
+        RollbarAttributes extended = new RollbarAttributes.Builder(copy).customField("other", "otherValue").build();
+        assertEquals("fooId", extended.getUserId());
+        assertEquals(2, extended.getCustomFields().size());
+        assertEquals(1, copy.getCustomFields().size());
+    }
 }
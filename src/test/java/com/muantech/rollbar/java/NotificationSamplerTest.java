@@ -0,0 +1,74 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.junit.Test;
+
+import com.muantech.rollbar.java.RollbarNotifier.Level;
+
+public class NotificationSamplerTest {
+    @Test
+    public void ratesByLevelAndThrowable() {
+        NotificationSampler sampler = new NotificationSampler();
+        sampler.setLevelRate(Level.INFO, 0.1);
+        sampler.setThrowableRate(IOException.class, 0.5);
+        sampler.setThrowableRate(RuntimeException.class, 0.25);
+
+        assertEquals(0.1, sampler.getSampleRate(Level.INFO, null), 0);
+        assertEquals(1.0, sampler.getSampleRate(Level.ERROR, null), 0);
+        assertEquals(1.0, sampler.getSampleRate(Level.ERROR, new Exception()), 0);
+        assertEquals(0.5, sampler.getSampleRate(Level.ERROR, new FileNotFoundException()), 0);
+        // most specific configured class wins
+        sampler.setThrowableRate(UncheckedIOException.class, 0.75);
+        assertEquals(0.75, sampler.getSampleRate(Level.INFO, new UncheckedIOException(new IOException())), 0);
+        assertEquals(0.25, sampler.getSampleRate(Level.INFO, new IllegalStateException()), 0);
+    }
+
+    @Test
+    public void randomSamplingCounts() {
+        NotificationSampler sampler = new NotificationSampler();
+        int kept = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (sampler.sample(0.2, null)) {
+                kept++;
+            }
+        }
+
+        assertTrue(kept > 1_500 && kept < 2_500);
+        assertEquals(kept, sampler.getKeptCount());
+        assertEquals(10_000 - kept, sampler.getDroppedCount());
+        assertTrue(sampler.sample(1, null));
+        assertFalse(sampler.sample(0, null));
+    }
+
+    @Test
+    public void requestIdSamplingIsConsistent() {
+        NotificationSampler sampler = new NotificationSampler();
+        sampler.setMode(NotificationSampler.Mode.REQUEST_ID);
+        int kept = 0;
+        for (int i = 0; i < 1_000; i++) {
+            String requestId = "request-" + i;
+            RollbarAttributeProvider attributes = new RollbarAttributeAdapter() {
+                @Override
+                public String getRequestId() {
+                    return requestId;
+                }
+            };
+            boolean first = sampler.sample(0.3, attributes);
+            assertEquals(first, sampler.sample(0.3, attributes));
+            // kept at a lower rate implies kept at a higher one
+            if (sampler.sample(0.1, attributes)) {
+                assertTrue(first);
+            }
+            if (first) {
+                kept++;
+            }
+        }
+
+        assertTrue(kept > 200 && kept < 400);
+    }
+}
@@ -0,0 +1,290 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class PooledHttpTransportTest {
+    private static final byte[] BODY = "{\"foo\":\"bar\"}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private URL url;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fixed", (exchange) -> {
+            drain(exchange.getRequestBody());
+            byte[] response = "{\"err\":0}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.createContext("/chunked", (exchange) -> {
+            drain(exchange.getRequestBody());
+            exchange.getResponseHeaders().add("Retry-After", "7");
+            exchange.getResponseHeaders().add("X-Rate-Limit-Remaining", "5");
+            exchange.sendResponseHeaders(429, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("slow ".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                out.write("down".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/fixed");
+    }
+
+    @After
+    public void cleanup() {
+        server.stop(0);
+        server = null;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        try {
+            while (in.read() != -1) {
+                // ignore body
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void connectionReused() throws IOException {
+        PooledHttpTransport transport = new PooledHttpTransport();
+        try {
+            for (int i = 0; i < 5; i++) {
+                Transport.Response response =
+                    transport.send("POST", url, Collections.emptyMap(), BODY, 0, BODY.length);
+                assertEquals(200, response.getStatusCode());
+                assertEquals("{\"err\":0}", response.getBody());
+            }
+
+            assertEquals(1, transport.getConnectionsOpened());
+            assertEquals(4, transport.getConnectionsReused());
+            assertEquals(1, transport.getIdleConnectionCount());
+        } finally {
+            transport.close();
+        }
+        assertEquals(0, transport.getIdleConnectionCount());
+    }
+
+    @Test
+    public void chunkedResponse() throws IOException {
+        PooledHttpTransport transport = new PooledHttpTransport();
+        try {
+            URL chunkedUrl = new URL(url, "/chunked");
+            for (int i = 0; i < 2; i++) {
+                Transport.Response response =
+                    transport.send("POST", chunkedUrl, Collections.emptyMap(), BODY, 0, BODY.length);
+                assertEquals(429, response.getStatusCode());
+                assertEquals("7", response.getHeader("Retry-After"));
+                assertEquals("slow down", response.getBody());
+            }
+            assertEquals(1, transport.getConnectionsOpened());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void headerLookupIgnoresDefaultLocale() throws IOException {
+        Locale previous = Locale.getDefault();
+        PooledHttpTransport transport = new PooledHttpTransport();
+        try {
+            // lower casing "I" with the turkish locale gives a dotless i
+            Locale.setDefault(new Locale("tr", "TR"));
+            Transport.Response response = transport.send("POST", new URL(url, "/chunked"), Collections.emptyMap(),
+                                                         BODY, 0, BODY.length);
+            assertEquals("5", response.getHeader("X-Rate-Limit-Remaining"));
+            assertEquals("5", response.getHeader("X-RATE-LIMIT-REMAINING"));
+        } finally {
+            Locale.setDefault(previous);
+            transport.close();
+        }
+    }
+
+    @Test
+    public void connectionCountsInMetricsSnapshot() throws IOException {
+        RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test");
+        try {
+            notifier.setTransport(new PooledHttpTransport());
+            notifier.notify("foo");
+            notifier.notify("bar");
+
+            MetricsSnapshot snapshot = notifier.getMetricsSnapshot();
+            assertEquals(1, snapshot.getConnectionsOpened());
+            assertEquals(1, snapshot.getConnectionsReused());
+            assertEquals(1, snapshot.getIdleConnectionCount());
+        } finally {
+            notifier.close();
+        }
+    }
+
+    @Test
+    public void idleConnectionEvicted() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport(4, 0, 5000);
+        try {
+            transport.send("POST", url, Collections.emptyMap(), BODY, 0, BODY.length);
+            Thread.sleep(50);
+            transport.send("POST", url, Collections.emptyMap(), BODY, 0, BODY.length);
+
+            assertEquals(2, transport.getConnectionsOpened());
+            assertEquals(0, transport.getConnectionsReused());
+            assertTrue(transport.getConnectionsEvicted() >= 1);
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void staleConnectionRetried() throws IOException {
+        PooledHttpTransport transport = new PooledHttpTransport();
+        try {
+            transport.send("POST", url, Collections.emptyMap(), BODY, 0, BODY.length);
+            // restart the server so the pooled connection is closed on the remote side
+            int port = server.getAddress().getPort();
+            server.stop(0);
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+            server.createContext("/fixed", (exchange) -> {
+                drain(exchange.getRequestBody());
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            });
+            server.start();
+
+            Transport.Response response =
+                transport.send("POST", url, Collections.emptyMap(), BODY, 0, BODY.length);
+            assertEquals(200, response.getStatusCode());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void responseTimeoutNotRetried() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        server.createContext("/slow", (exchange) -> {
+            drain(exchange.getRequestBody());
+            if (requests.incrementAndGet() > 1) {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        URL slowUrl = new URL(url, "/slow");
+        PooledHttpTransport transport = new PooledHttpTransport(4, 30_000, 200);
+        try {
+            transport.send("POST", slowUrl, Collections.emptyMap(), BODY, 0, BODY.length);
+            try {
+                // sent on the pooled connection, which the server may already have processed
+                transport.send("POST", slowUrl, Collections.emptyMap(), BODY, 0, BODY.length);
+                fail("Exception should have thrown");
+            } catch (SocketTimeoutException expected) {
+                // expected
+            }
+            assertEquals(2, requests.get());
+            assertEquals(1, transport.getConnectionsOpened());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void proxySelectorHonoured() throws Exception {
+        List<String> requestLines = new CopyOnWriteArrayList<String>();
+        ProxySelector previousSelector = ProxySelector.getDefault();
+        try (ServerSocket proxyServer = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"))) {
+            Thread proxyThread = new Thread(() -> {
+                while (! proxyServer.isClosed()) {
+                    try (Socket socket = proxyServer.accept()) {
+                        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                                     StandardCharsets.ISO_8859_1));
+                        String requestLine = in.readLine();
+                        requestLines.add(requestLine);
+                        String line;
+                        while ((line = in.readLine()) != null && ! line.isEmpty()) {
+                            // skip headers
+                        }
+                        String response = requestLine.startsWith("CONNECT") ?
+                            "HTTP/1.1 407 Proxy Authentication Required\r\nContent-Length: 0\r\n\r\n" :
+                            "HTTP/1.1 200 OK\r\nContent-Length: 0\r\nConnection: close\r\n\r\n";
+                        socket.getOutputStream().write(response.getBytes(StandardCharsets.ISO_8859_1));
+                        socket.getOutputStream().flush();
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }
+            });
+            proxyThread.setDaemon(true);
+            proxyThread.start();
+            Proxy proxy = new Proxy(Proxy.Type.HTTP, proxyServer.getLocalSocketAddress());
+            ProxySelector.setDefault(new ProxySelector() {
+                @Override
+                public List<Proxy> select(URI uri) {
+                    return Collections.singletonList(proxy);
+                }
+
+                @Override
+                public void connectFailed(URI uri, SocketAddress address, IOException e) {
+                    // ignored
+                }
+            });
+
+            PooledHttpTransport transport = new PooledHttpTransport();
+            try {
+                Transport.Response response = transport.send("POST", new URL("http://rollbar.invalid/api/1/item/"),
+                                                             Collections.emptyMap(), BODY, 0, BODY.length);
+                assertEquals(200, response.getStatusCode());
+                assertEquals("POST http://rollbar.invalid/api/1/item/ HTTP/1.1", requestLines.get(0));
+
+                try {
+                    transport.send("POST", new URL("https://rollbar.invalid/api/1/item/"),
+                                   Collections.emptyMap(), BODY, 0, BODY.length);
+                    fail("Exception should have thrown");
+                } catch (IOException expected) {
+                    // no credentials for the proxy
+                }
+                assertEquals("CONNECT rollbar.invalid:443 HTTP/1.1", requestLines.get(1));
+                assertEquals(0, transport.getConnectionsOpened());
+            } finally {
+                transport.close();
+            }
+        } finally {
+            ProxySelector.setDefault(previousSelector);
+        }
+    }
+}
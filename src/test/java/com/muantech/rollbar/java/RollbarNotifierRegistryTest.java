@@ -0,0 +1,140 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class RollbarNotifierRegistryTest {
+    private HttpServer server;
+    private URL url;
+    private List<String> requestBodies;
+    private volatile CountDownLatch releaseLatch;
+
+    @Before
+    public void setup() throws IOException {
+        requestBodies = new CopyOnWriteArrayList<String>();
+        releaseLatch = new CountDownLatch(0);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", (exchange) -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                int b;
+                while ((b = in.read()) != -1) {
+                    body.write(b);
+                }
+            }
+            try {
+                releaseLatch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            requestBodies.add(new String(body.toByteArray(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/api/1/item/");
+    }
+
+    @After
+    public void cleanup() {
+        server.stop(0);
+        server = null;
+    }
+
+    @Test
+    public void notifiersShareTransport() throws Exception {
+        try (RollbarNotifierRegistry registry = new RollbarNotifierRegistry(url, 100, 1, 10)) {
+            RollbarNotifier first = registry.getNotifier("tkn1", "test");
+            RollbarNotifier second = registry.getNotifier("tkn2", "test");
+            assertSame(first, registry.getNotifier("tkn1", "test"));
+            assertSame(registry.getTransport(), first.getTransport());
+            assertSame(registry.getTransport(), second.getTransport());
+
+            first.notify("foo");
+            second.notify("bar");
+            assertTrue(registry.flush(10_000));
+
+            assertEquals(2, requestBodies.size());
+            assertEquals(1, requestBodies.stream().filter((b) -> b.contains("\"tkn1\"")).count());
+            assertEquals(1, requestBodies.stream().filter((b) -> b.contains("\"tkn2\"")).count());
+            assertEquals(2, registry.getMetricsSnapshot().getStatusCodeCounts().get(200).longValue());
+
+            second.close();
+            assertEquals(1, registry.getNotifierCount());
+        }
+    }
+
+    @Test
+    public void noisyNotifierLimitedToQuota() throws Exception {
+        releaseLatch = new CountDownLatch(1);
+        try (RollbarNotifierRegistry registry = new RollbarNotifierRegistry(url, 100, 1, 2)) {
+            RollbarNotifier noisy = registry.getNotifier("noisy", "test");
+            RollbarNotifier quiet = registry.getNotifier("quiet", "test");
+
+            noisy.notify("in flight");
+            // wait for the sender thread to take the first notification
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (registry.getMetricsSnapshot().getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            for (int i = 0; i < 5; i++) {
+                noisy.notify("queued " + i);
+            }
+            quiet.notify("quiet");
+            releaseLatch.countDown();
+            assertTrue(registry.flush(10_000));
+
+            // the one in flight, two queued within the quota, and the quiet one
+            assertEquals(4, requestBodies.size());
+            assertEquals(3, registry.getMetricsSnapshot().getDroppedCounts()
+                                    .get(NotifierMetrics.DropReason.QUEUE_FULL).longValue());
+        }
+    }
+
+    @Test
+    public void notifiersRacingCloseAreClosed() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            RollbarNotifierRegistry registry = new RollbarNotifierRegistry(url, 100, 1, 10);
+            CountDownLatch started = new CountDownLatch(1);
+            Thread creator = new Thread(() -> {
+                started.countDown();
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        registry.getNotifier("tkn" + i, "test");
+                    }
+                } catch (IllegalStateException e) {
+                    // closed
+                }
+            });
+            creator.start();
+            started.await();
+            registry.close();
+            creator.join();
+
+            // closed notifiers remove themselves
+            assertEquals(0, registry.getNotifierCount());
+            try {
+                registry.getNotifier("tkn", "test");
+                fail("Exception should have thrown");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+}
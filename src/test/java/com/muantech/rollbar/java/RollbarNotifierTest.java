@@ -0,0 +1,622 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+import com.muantech.rollbar.java.RollbarNotifier.Level;
+import com.muantech.rollbar.java.RollbarNotifier.OverflowPolicy;
+import com.sun.net.httpserver.HttpServer;
+
+public class RollbarNotifierTest {
+    private HttpServer server;
+    private String url;
+    private AtomicInteger requestCount;
+    private List<String> requestBodies;
+    private Queue<Integer> statusCodes;
+    private volatile CountDownLatch releaseLatch;
+    private volatile String responseBody;
+
+    @Before
+    public void setup() throws IOException {
+        requestCount = new AtomicInteger();
+        requestBodies = new CopyOnWriteArrayList<String>();
+        statusCodes = new ConcurrentLinkedQueue<Integer>();
+        releaseLatch = new CountDownLatch(0);
+        responseBody = null;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", (exchange) -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                int b;
+                while ((b = in.read()) != -1) {
+                    body.write(b);
+                }
+            }
+            requestBodies.add(new String(body.toByteArray(), StandardCharsets.UTF_8));
+            try {
+                releaseLatch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            requestCount.incrementAndGet();
+            Integer statusCode = statusCodes.poll();
+            if (statusCode != null && statusCode == 429) {
+                exchange.getResponseHeaders().add("Retry-After", "0");
+            }
+            String response = responseBody;
+            if (response == null) {
+                exchange.sendResponseHeaders(statusCode == null ? 200 : statusCode, -1);
+            } else {
+                byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(statusCode == null ? 200 : statusCode, responseBytes.length);
+                exchange.getResponseBody().write(responseBytes);
+            }
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/1/item/";
+    }
+
+    @After
+    public void cleanup() {
+        server.stop(0);
+        server = null;
+    }
+
+    @Test
+    public void syncNotify() throws IOException {
+        RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test");
+        notifier.notify("foo");
+
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    public void asyncNotifyAndFlush() throws Exception {
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.enableAsyncDelivery(100, 2, OverflowPolicy.BLOCK, 1000);
+            for (int i = 0; i < 10; i++) {
+                notifier.notify("foo");
+            }
+
+            assertTrue(notifier.flush(10_000));
+            assertEquals(10, requestCount.get());
+            assertEquals(0, notifier.getDroppedNotificationCount());
+        }
+    }
+
+    @Test
+    public void asyncNotifyDoesNotBlockOnSlowEndpoint() throws Exception {
+        releaseLatch = new CountDownLatch(1);
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.enableAsyncDelivery(2, 1, OverflowPolicy.DROP_NEWEST, 0);
+            for (int i = 0; i < 10; i++) {
+                notifier.notify("foo");
+            }
+
+            // one in flight, two queued, the rest dropped
+            assertTrue(notifier.getDroppedNotificationCount() >= 7);
+            releaseLatch.countDown();
+            assertTrue(notifier.flush(10_000));
+        }
+    }
+
+    @Test
+    public void batchedBulkNotify() throws Exception {
+        AtomicInteger batchedItems = new AtomicInteger();
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.enableAsyncDelivery(100, 1, OverflowPolicy.BLOCK, 1000);
+            notifier.enableBatching(5, 10_000, new URL(url + "batch/"));
+            notifier.setBatchListener((itemCount, bodyBytes, latencyMillis) -> {
+                assertTrue(bodyBytes > 0);
+                batchedItems.addAndGet(itemCount);
+            });
+            for (int i = 0; i < 12; i++) {
+                notifier.notify("foo");
+            }
+
+            assertTrue(notifier.flush(10_000));
+            // two full batches plus the partial one released by flush
+            assertEquals(3, requestCount.get());
+            assertEquals(12, batchedItems.get());
+        }
+    }
+
+    @Test
+    public void rateLimitedNotify() throws Exception {
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.enableRateLimiting(3, 1500, 5);
+            for (int i = 0; i < 20; i++) {
+                notifier.notify(new IllegalStateException("storm"));
+            }
+            notifier.notify("unrelated");
+
+            assertEquals(4, requestCount.get());
+
+            // wait for the window to close and the summary to be sent
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (requestCount.get() < 5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(5, requestCount.get());
+            String summary = requestBodies.get(4);
+            assertTrue(summary, summary.contains("17 occurrences suppressed"));
+            assertTrue(summary, summary.contains(IllegalStateException.class.getName()));
+        }
+    }
+
+    @Test
+    public void asyncRetryOnTimer() throws Exception {
+        statusCodes.add(503);
+        statusCodes.add(429);
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.setRetryPolicy(new ExponentialBackoffRetryPolicy(5, 10, 100));
+            notifier.enableAsyncDelivery(10, 1, OverflowPolicy.BLOCK, 1000);
+            notifier.notify("foo");
+
+            assertTrue(notifier.flush(10_000));
+            assertEquals(3, requestCount.get());
+        }
+    }
+
+    @Test
+    public void asyncRetryKeepsBodyWhileSenderBufferReused() throws Exception {
+        statusCodes.add(503);
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.setRetryPolicy(new ExponentialBackoffRetryPolicy(2, 100, 100));
+            notifier.enableAsyncDelivery(10, 1, OverflowPolicy.BLOCK, 1000);
+            notifier.notify("foo");
+            // built by the same sender thread while the first notification waits to retry
+            notifier.notify("bar");
+
+            assertTrue(notifier.flush(10_000));
+            assertEquals(3, requestCount.get());
+            assertTrue(requestBodies.get(0).contains("\"foo\""));
+            assertTrue(requestBodies.get(1).contains("\"bar\""));
+            assertEquals(requestBodies.get(0), requestBodies.get(2));
+        }
+    }
+
+    @Test
+    public void sampledNotificationsReportRate() throws Exception {
+        RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test");
+        NotificationSampler sampler = new NotificationSampler();
+        sampler.setLevelRate(Level.INFO, 0.5);
+        sampler.setLevelRate(Level.DEBUG, 0);
+        notifier.setSampler(sampler);
+        for (int i = 0; i < 20; i++) {
+            notifier.notify(Level.INFO, "foo");
+        }
+        notifier.notify(Level.DEBUG, "dropped");
+        notifier.notify(Level.ERROR, "kept");
+
+        assertEquals(sampler.getKeptCount(), requestCount.get());
+        assertEquals(sampler.getDroppedCount(),
+                     notifier.getMetricsSnapshot().getDroppedCounts().get(NotifierMetrics.DropReason.SAMPLED).longValue());
+        for (String body : requestBodies) {
+            JsonObject custom = Json.parse(body).asObject().get("data").asObject().get("custom").asObject();
+            if (body.contains("\"kept\"")) {
+                assertNull(custom.get("sample_rate"));
+            } else {
+                assertEquals(0.5, custom.getDouble("sample_rate", 0), 0);
+            }
+        }
+    }
+
+    @Test
+    public void notifyAsyncReportsOutcome() throws Exception {
+        responseBody = "{\"err\": 0, \"result\": {\"id\": null, \"uuid\": \"abc123\"}}";
+        statusCodes.add(503);
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.setRetryPolicy(new ExponentialBackoffRetryPolicy(3, 1, 10));
+            NotificationSampler sampler = new NotificationSampler();
+            sampler.setLevelRate(Level.DEBUG, 0);
+            notifier.setSampler(sampler);
+            notifier.enableAsyncDelivery(10, 1, OverflowPolicy.BLOCK, 1000);
+
+            DeliveryResult delivered = notifier.notifyAsync("foo").get(10, TimeUnit.SECONDS);
+            assertEquals(DeliveryResult.Outcome.DELIVERED, delivered.getOutcome());
+            assertEquals(200, delivered.getStatusCode());
+            assertEquals(2, delivered.getAttemptCount());
+            assertEquals("abc123", delivered.getItemUuid());
+
+            statusCodes.add(422);
+            DeliveryResult rejected = notifier.notifyAsync(new IllegalStateException()).get(10, TimeUnit.SECONDS);
+            assertEquals(DeliveryResult.Outcome.REJECTED, rejected.getOutcome());
+            assertEquals(422, rejected.getStatusCode());
+            assertNull(rejected.getItemUuid());
+
+            DeliveryResult sampled = notifier.notifyAsync(Level.DEBUG, "dropped").get(10, TimeUnit.SECONDS);
+            assertEquals(DeliveryResult.Outcome.DROPPED, sampled.getOutcome());
+            assertEquals(NotifierMetrics.DropReason.SAMPLED, sampled.getDropReason());
+            assertEquals(0, sampled.getAttemptCount());
+            assertEquals(3, requestCount.get());
+        }
+    }
+
+    @Test
+    public void notifyAsyncCompletesWhenRacingClose() throws Exception {
+        for (int round = 0; round < 10; round++) {
+            RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test");
+            notifier.enableAsyncDelivery(1000, 2, OverflowPolicy.DROP_NEWEST, 0);
+            List<Future<DeliveryResult>> results = new CopyOnWriteArrayList<Future<DeliveryResult>>();
+            CountDownLatch started = new CountDownLatch(1);
+            Thread submitter = new Thread(() -> {
+                started.countDown();
+                for (int i = 0; i < 200; i++) {
+                    results.add(notifier.notifyAsync("foo " + i));
+                }
+            });
+            submitter.start();
+            started.await();
+            notifier.close();
+            submitter.join();
+
+            // whether sent, dropped on overflow or discarded by close, every result is reported
+            for (Future<DeliveryResult> result : results) {
+                assertNotNull(result.get(10, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void notificationSubscriberLimitsInFlight() throws Exception {
+        releaseLatch = new CountDownLatch(1);
+        AtomicLong demand = new AtomicLong();
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.enableAsyncDelivery(100, 2, OverflowPolicy.BLOCK, 1000);
+            NotificationSubscriber subscriber = new NotificationSubscriber(notifier, 2);
+            subscriber.onSubscribe(demand::addAndGet);
+
+            int published = 0;
+            while (published < 10) {
+                long deadline = System.currentTimeMillis() + 10_000;
+                while (demand.get() == 0 && System.currentTimeMillis() < deadline) {
+                    if (published == 2) {
+                        // nothing more is requested until the first events are acknowledged
+                        assertEquals(2, subscriber.getInFlightCount());
+                        releaseLatch.countDown();
+                    }
+                    Thread.sleep(5);
+                }
+                demand.decrementAndGet();
+                subscriber.onNext(new NotificationEvent(Level.INFO, "event " + published, null, null));
+                published++;
+            }
+            subscriber.onComplete();
+
+            subscriber.getTermination().get(10, TimeUnit.SECONDS);
+            assertEquals(10, subscriber.getDeliveredCount());
+            assertEquals(0, subscriber.getInFlightCount());
+            assertEquals(10, requestCount.get());
+        }
+    }
+
+    @Test
+    public void notificationSubscriberRequestsSerially() throws Exception {
+        AtomicInteger requesting = new AtomicInteger();
+        AtomicInteger overlapped = new AtomicInteger();
+        AtomicLong requested = new AtomicLong();
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.enableAsyncDelivery(100, 4, OverflowPolicy.BLOCK, 1000);
+            NotificationSubscriber subscriber = new NotificationSubscriber(notifier, 40);
+            subscriber.onSubscribe((n) -> {
+                if (requesting.incrementAndGet() > 1) {
+                    overlapped.incrementAndGet();
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                requested.addAndGet(n);
+                requesting.decrementAndGet();
+            });
+
+            for (int i = 0; i < 40; i++) {
+                subscriber.onNext(new NotificationEvent(Level.INFO, "event " + i, null, null));
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (requested.get() < 80 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            subscriber.onComplete();
+
+            subscriber.getTermination().get(10, TimeUnit.SECONDS);
+            assertEquals(80, requested.get());
+            assertEquals(0, overlapped.get());
+        }
+    }
+
+    @Test
+    public void notificationSubscriberTerminatesWhenRequestThrows() throws Exception {
+        AtomicInteger requestCalls = new AtomicInteger();
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.enableAsyncDelivery(100, 1, OverflowPolicy.BLOCK, 1000);
+            NotificationSubscriber subscriber = new NotificationSubscriber(notifier, 1);
+            subscriber.onSubscribe((n) -> {
+                if (requestCalls.incrementAndGet() > 1) {
+                    throw new IllegalStateException("upstream failure");
+                }
+            });
+
+            subscriber.onNext(new NotificationEvent(Level.INFO, "event", null, null));
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (requestCalls.get() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            subscriber.onComplete();
+
+            subscriber.getTermination().get(10, TimeUnit.SECONDS);
+            assertEquals(1, subscriber.getDeliveredCount());
+            assertEquals(0, subscriber.getInFlightCount());
+        }
+    }
+
+    @Test
+    public void virtualThreadDelivery() throws Exception {
+        boolean virtualThreadsAvailable = Double.parseDouble(System.getProperty("java.specification.version")) >= 21;
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.enableVirtualThreadDelivery(100, 10, OverflowPolicy.BLOCK, 1000, 1);
+            assertEquals(virtualThreadsAvailable, notifier.isUsingVirtualThreads());
+            for (int i = 0; i < 20; i++) {
+                notifier.notify("foo " + i);
+            }
+
+            assertTrue(notifier.flush(10_000));
+            assertEquals(20, requestCount.get());
+        }
+    }
+
+    @Test
+    public void syncRetryGivesUp() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            statusCodes.add(500);
+        }
+        RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test");
+        notifier.setRetryPolicy(new ExponentialBackoffRetryPolicy(3, 1, 10));
+        notifier.notify("foo");
+
+        assertEquals(3, requestCount.get());
+    }
+
+    @Test
+    public void syncRetryKeepsBodyWhenNotifiedFromCallback() throws Exception {
+        statusCodes.add(500);
+        RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test");
+        notifier.setRetryPolicy(new ExponentialBackoffRetryPolicy(3, 1, 10));
+        AtomicInteger retries = new AtomicInteger();
+        notifier.setMetrics(new NotifierMetrics() {
+            @Override
+            public void payloadBuilt(long buildNanos, int payloadBytes) {
+                // ignored
+            }
+
+            @Override
+            public void requestCompleted(int statusCode, long latencyNanos) {
+                // ignored
+            }
+
+            @Override
+            public void retryScheduled() {
+                if (retries.getAndIncrement() == 0) {
+                    // notified while the outer payload is still waiting to be retried
+                    notifier.notify("inner notification");
+                }
+            }
+
+            @Override
+            public void notificationDropped(NotifierMetrics.DropReason reason) {
+                // ignored
+            }
+        });
+        notifier.notify("outer notification");
+
+        assertEquals(3, requestCount.get());
+        assertTrue(requestBodies.get(0).contains("outer notification"));
+        assertTrue(requestBodies.get(1).contains("inner notification"));
+        assertEquals(requestBodies.get(0), requestBodies.get(2));
+    }
+
+    @Test
+    public void circuitBreakerTrialRecordedWhenTransportThrows() throws Exception {
+        AtomicInteger throwingSends = new AtomicInteger();
+        PooledHttpTransport delegate = new PooledHttpTransport();
+        List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+        RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test");
+        notifier.setExceptionHandler(errors::add);
+        notifier.setTransport(new Transport() {
+            @Override
+            public Response send(String method, URL url, Map<String, String> headers,
+                                 byte[] body, int offset, int length) throws IOException {
+                if (throwingSends.getAndDecrement() > 0) {
+                    throw new IllegalStateException("broken transport");
+                }
+                return delegate.send(method, url, headers, body, offset, length);
+            }
+
+            @Override
+            public void close() {
+                delegate.close();
+            }
+        });
+        notifier.setRetryPolicy(new ExponentialBackoffRetryPolicy(1, 1, 10));
+        CircuitBreaker breaker = new CircuitBreaker(1, 10);
+        notifier.setCircuitBreaker(breaker);
+        statusCodes.add(500);
+        notifier.notify("foo");
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(20);
+        throwingSends.set(1);
+        notifier.notify("foo");
+        // the trial threw, which counts as a failure rather than leaving the breaker half open
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, errors.size());
+
+        Thread.sleep(20);
+        notifier.notify("foo");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(2, requestCount.get());
+        notifier.close();
+    }
+
+    @Test
+    public void undeliverableSpooledAndReplayed() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            statusCodes.add(500);
+        }
+        File directory = File.createTempFile("rollbar-spool", "");
+        directory.delete();
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.setRetryPolicy(new ExponentialBackoffRetryPolicy(3, 1, 10));
+            notifier.enableSpool(directory, 64 * 1024, 4, false, 50);
+            notifier.notify("foo");
+
+            assertEquals(1, notifier.getSpool().getAppendedCount());
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (notifier.getSpool().getDeliveredCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, notifier.getSpool().getDeliveredCount());
+            assertEquals(4, requestCount.get());
+            assertEquals(requestBodies.get(0), requestBodies.get(3));
+        } finally {
+            for (File f : directory.listFiles()) {
+                f.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void metricsSnapshot() throws Exception {
+        statusCodes.add(500);
+        RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test");
+        notifier.setRetryPolicy(new ExponentialBackoffRetryPolicy(3, 1, 10));
+        AtomicInteger forwardedRequests = new AtomicInteger();
+        notifier.setMetrics(new NotifierMetrics() {
+            @Override
+            public void payloadBuilt(long buildNanos, int payloadBytes) {
+                // ignored
+            }
+
+            @Override
+            public void requestCompleted(int statusCode, long latencyNanos) {
+                forwardedRequests.incrementAndGet();
+            }
+
+            @Override
+            public void retryScheduled() {
+                // ignored
+            }
+
+            @Override
+            public void notificationDropped(NotifierMetrics.DropReason reason) {
+                // ignored
+            }
+        });
+        notifier.notify("foo");
+
+        MetricsSnapshot snapshot = notifier.getMetricsSnapshot();
+        assertEquals(1, snapshot.getNotificationCount());
+        assertTrue(snapshot.getPayloadBytes() > 0);
+        assertEquals(1, snapshot.getBuildLatency().getCount());
+        assertEquals(2, snapshot.getRequestCount());
+        assertEquals(Long.valueOf(1), snapshot.getStatusCodeCounts().get(500));
+        assertEquals(Long.valueOf(1), snapshot.getStatusCodeCounts().get(200));
+        assertEquals(2, snapshot.getSendLatency().getCount());
+        assertEquals(1, snapshot.getRetryCount());
+        assertEquals(Long.valueOf(0), snapshot.getDroppedCounts().get(NotifierMetrics.DropReason.UNDELIVERABLE));
+        assertEquals(2, forwardedRequests.get());
+    }
+
+    @Test
+    public void asyncCapturesAttributesOnNotify() throws Exception {
+        releaseLatch = new CountDownLatch(1);
+        Map<String, String> customFields = new HashMap<String, String>();
+        customFields.put("phase", "captured");
+        RollbarAttributeProvider attributes = new RollbarAttributeAdapter() {
+            @Override
+            public Map<String, String> getCustomFields() {
+                return customFields;
+            }
+        };
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.enableAsyncDelivery(10, 1, OverflowPolicy.BLOCK, 1000);
+            // first notification holds the only sender thread, so the second is built later
+            notifier.notify("first", attributes);
+            notifier.notify("second", attributes);
+            customFields.put("phase", "modified");
+            releaseLatch.countDown();
+
+            assertTrue(notifier.flush(10_000));
+            assertEquals(2, requestBodies.size());
+            for (String body : requestBodies) {
+                assertTrue(body, body.contains("\"phase\":\"captured\""));
+            }
+        }
+    }
+
+    @Test
+    public void nullAttributeValuesSameSyncAndAsync() throws Exception {
+        Map<String, String> customFields = new HashMap<String, String>();
+        customFields.put("present", "value");
+        customFields.put("cleared", null);
+        RollbarAttributeProvider attributes = new RollbarAttributeAdapter() {
+            @Override
+            public Map<String, String> getCustomFields() {
+                return customFields;
+            }
+        };
+        try (RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test")) {
+            notifier.notify("foo", attributes);
+            notifier.enableAsyncDelivery(10, 1, OverflowPolicy.BLOCK, 1000);
+            notifier.notify("foo", attributes);
+            assertTrue(notifier.flush(10_000));
+        }
+
+        assertEquals(2, requestBodies.size());
+        JsonObject syncCustom = Json.parse(requestBodies.get(0)).asObject().get("data").asObject()
+                                    .get("custom").asObject();
+        JsonObject asyncCustom = Json.parse(requestBodies.get(1)).asObject().get("data").asObject()
+                                     .get("custom").asObject();
+        assertTrue(syncCustom.get("cleared").isNull());
+        assertEquals(syncCustom, asyncCustom);
+    }
+
+    @Test
+    public void callerLocationReported() throws Exception {
+        RollbarNotifier notifier = new RollbarNotifier(url, "tkn", "test");
+        notifier.enableCallerLocation();
+        notifier.notify(RollbarNotifier.Level.WARNING, "foo");
+
+        String body = requestBodies.get(0);
+        assertTrue(body, body.contains("\"frame\":{\"class_name\":\"" + RollbarNotifierTest.class.getName() + "\""));
+        assertTrue(body, body.contains("\"method\":\"callerLocationReported\""));
+    }
+}
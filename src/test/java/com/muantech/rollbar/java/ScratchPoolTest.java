@@ -0,0 +1,62 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ScratchPoolTest {
+    @Test
+    public void releasedObjectReused() throws InterruptedException {
+        AtomicInteger created = new AtomicInteger();
+        ScratchPool<Object> pool = new ScratchPool<Object>(2, () -> {
+            created.incrementAndGet();
+            return new Object();
+        }, null);
+
+        Object first = pool.acquire();
+        pool.release(first);
+        assertSame(first, pool.acquire());
+
+        // a new thread each time, as with virtual thread delivery
+        pool.release(first);
+        Object[] acquired = new Object[1];
+        Thread thread = new Thread(() -> {
+            acquired[0] = pool.acquire();
+            pool.release(acquired[0]);
+        });
+        thread.start();
+        thread.join();
+        assertSame(first, acquired[0]);
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void nestedAcquireGetsAnotherObject() {
+        ScratchPool<Object> pool = new ScratchPool<Object>(2, Object::new, null);
+        Object outer = pool.acquire();
+        Object inner = pool.acquire();
+
+        assertNotSame(outer, inner);
+        pool.release(inner);
+        pool.release(outer);
+    }
+
+    @Test
+    public void discardedWhenFull() {
+        List<Object> discarded = new ArrayList<Object>();
+        ScratchPool<Object> pool = new ScratchPool<Object>(2, Object::new, discarded::add);
+        Object first = pool.acquire();
+        Object second = pool.acquire();
+        Object third = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        assertEquals(1, discarded.size());
+        assertSame(third, discarded.get(0));
+    }
+}
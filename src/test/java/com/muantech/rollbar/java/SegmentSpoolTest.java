@@ -0,0 +1,139 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentSpoolTest {
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("rollbar-spool", "");
+        directory.delete();
+    }
+
+    @After
+    public void cleanup() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void append(SegmentSpool spool, String s) {
+        byte[] payload = bytes(s);
+        assertTrue(spool.append(payload, 0, payload.length));
+    }
+
+    @Test
+    public void appendPeekAndDeliver() throws IOException {
+        SegmentSpool spool = new SegmentSpool(directory, 1024, 4, false);
+        append(spool, "one");
+        append(spool, "two");
+
+        assertArrayEquals(bytes("one"), spool.peek());
+        // not delivered yet, so the same record is returned again
+        assertArrayEquals(bytes("one"), spool.peek());
+        spool.markDelivered();
+        assertArrayEquals(bytes("two"), spool.peek());
+        spool.markDelivered();
+        assertNull(spool.peek());
+        assertEquals(2, spool.getDeliveredCount());
+        spool.close();
+    }
+
+    @Test
+    public void undeliveredRecordsSurviveReopen() throws IOException {
+        SegmentSpool spool = new SegmentSpool(directory, 1024, 4, true);
+        append(spool, "one");
+        append(spool, "two");
+        spool.peek();
+        spool.markDelivered();
+        spool.close();
+
+        spool = new SegmentSpool(directory, 1024, 4, false);
+        assertArrayEquals(bytes("two"), spool.peek());
+        spool.markDelivered();
+        assertNull(spool.peek());
+        // fully delivered segment from the previous run is removed
+        assertEquals(0, spool.getSegmentCount());
+        spool.close();
+    }
+
+    @Test
+    public void tornRecordIgnoredOnReopen() throws IOException {
+        SegmentSpool spool = new SegmentSpool(directory, 1024, 4, false);
+        append(spool, "one");
+        append(spool, "two");
+        spool.close();
+
+        // corrupt a payload byte of the second record so its crc no longer matches
+        File segment = directory.listFiles((dir, name) -> name.endsWith(".seg"))[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(16 + 9 + 3 + 9);
+            raf.write('x');
+        }
+
+        spool = new SegmentSpool(directory, 1024, 4, false);
+        assertArrayEquals(bytes("one"), spool.peek());
+        spool.markDelivered();
+        assertNull(spool.peek());
+        spool.close();
+    }
+
+    @Test
+    public void oldestSegmentEvicted() throws IOException {
+        SegmentSpool spool = new SegmentSpool(directory, 64, 2, false);
+        for (int i = 0; i < 6; i++) {
+            // 16 byte header + 9 byte record header leaves room for one 30 byte record per segment
+            append(spool, String.format("record-%023d", i));
+        }
+
+        assertEquals(2, spool.getSegmentCount());
+        assertEquals(4, spool.getEvictedSegmentCount());
+        assertArrayEquals(bytes(String.format("record-%023d", 4)), spool.peek());
+        spool.close();
+    }
+
+    @Test
+    public void oversizedRecordDropped() throws IOException {
+        SegmentSpool spool = new SegmentSpool(directory, 64, 2, false);
+        byte[] payload = new byte[64];
+
+        assertFalse(spool.append(payload, 0, payload.length));
+        assertEquals(1, spool.getDroppedCount());
+        spool.close();
+    }
+
+    @Test
+    public void directoryLockedWhileOpen() throws IOException {
+        SegmentSpool spool = new SegmentSpool(directory, 1024, 4, false);
+        append(spool, "one");
+        try {
+            new SegmentSpool(directory, 1024, 4, false);
+            fail("Exception should have thrown");
+        } catch (IOException expected) {
+            // expected
+        }
+        spool.close();
+
+        spool = new SegmentSpool(directory, 1024, 4, false);
+        assertArrayEquals(bytes("one"), spool.peek());
+        spool.close();
+    }
+}
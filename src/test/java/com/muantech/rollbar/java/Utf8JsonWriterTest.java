@@ -0,0 +1,59 @@
+package com.muantech.rollbar.java;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+
+public class Utf8JsonWriterTest {
+    private static String toString(Utf8JsonWriter writer) {
+        return new String(writer.getBuffer(), 0, writer.size(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void nestedStructure() {
+        Utf8JsonWriter writer = new Utf8JsonWriter();
+        writer.beginObject();
+        writer.name("a").value("b");
+        writer.name("n").value(-1234567890123L);
+        writer.name("z").value(0);
+        writer.name("arr").beginArray().value("x").beginObject().endObject().value((String) null).endArray();
+        writer.name("o").beginObject().name("k").value("v").endObject();
+        writer.endObject();
+
+        assertEquals("{\"a\":\"b\",\"n\":-1234567890123,\"z\":0,\"arr\":[\"x\",{},null],\"o\":{\"k\":\"v\"}}",
+                     toString(writer));
+    }
+
+    @Test
+    public void stringEscaping() {
+        String value = "quote\" slash\\ nl\n cr\r tab\t ctl\u0001 \u00e9\u4e2d\ud83d\ude00";
+        Utf8JsonWriter writer = new Utf8JsonWriter(4);
+        writer.beginObject().name("v").value(value).endObject();
+
+        JsonObject parsed = Json.parse(toString(writer)).asObject();
+        assertEquals(value, parsed.getString("v", null));
+
+        Utf8JsonWriter sequenceWriter = new Utf8JsonWriter(4);
+        sequenceWriter.beginObject().name("v").value(new StringBuilder(value)).endObject();
+        assertEquals(toString(writer), toString(sequenceWriter));
+        assertArrayEquals(("{\"v\":" + Json.value(value).toString() + "}").getBytes(StandardCharsets.UTF_8),
+                          writer.toByteArray());
+    }
+
+    @Test
+    public void rawValueAndReset() {
+        byte[] encoded = "{\"pre\":true}".getBytes(StandardCharsets.UTF_8);
+        Utf8JsonWriter writer = new Utf8JsonWriter();
+        writer.beginArray().rawValue(encoded, 0, encoded.length).rawValue(encoded, 0, encoded.length).endArray();
+        assertEquals("[{\"pre\":true},{\"pre\":true}]", toString(writer));
+
+        writer.reset();
+        writer.beginArray().endArray();
+        assertEquals("[]", toString(writer));
+    }
+}